@@ -9,10 +9,7 @@
  */
 package net.sourceforge.texlipse;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.IOException;
-import java.io.InputStream;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.List;
@@ -22,6 +19,9 @@ import java.util.StringTokenizer;
 
 import net.sourceforge.texlipse.properties.StringListFieldEditor;
 
+import org.eclipse.jface.util.IPropertyChangeListener;
+import org.eclipse.jface.util.PropertyChangeEvent;
+
 /**
  * Helper methods for environment variable handling.
  * 
@@ -34,6 +34,13 @@ public class PathUtils {
 	 */
 	private PathUtils() {}
 
+    // the environment variables of this process
+    private static Properties environment;
+    // the merged environments by preference name and added path
+    private static final Map<String, Map<String, String[]>> mergedEnvs =
+        new HashMap<String, Map<String, String[]>>();
+    private static boolean listening;
+
     /**
      * Merge the given environment variables to the additional environment variables
      * that are defined in the preferences. The variables defined in the preferences
@@ -193,7 +200,7 @@ public class PathUtils {
      */
     public static String getEnvPath(String bin) {
         
-        Properties prop = getEnv();
+        Properties prop = getEnvironment();
         String path = prop.getProperty(findPathKey(prop));
         if (path == null) {
             return null;
@@ -273,72 +280,74 @@ public class PathUtils {
     }
 
     /**
-	 * Read the operating system environment variables.
-	 * 
-	 * @see http://www.rgagnon.com/javadetails/java-0150.html
-	 * @return operating system environment variables and their values in a properties object
-	 *         or empty properties object if an error occurs
-	 */
-	public static Properties getEnv() {
-	    
-	    Properties envVars = new Properties();
-	    try {
-	        
-	        String os = System.getProperty("os.name").toLowerCase();
-	        Process p = null;
-	        Runtime r = Runtime.getRuntime();
-	        
-	        if (os.indexOf("windows 9") > -1) {
-	            p = r.exec("command.com /c set");
-	            PathUtils.loadEscaping(envVars, p.getInputStream());
-	        } else if ((os.indexOf("windows") > -1)) {
-	            p = r.exec("cmd.exe /c set");
-	            PathUtils.loadEscaping(envVars, p.getInputStream());
-	        } else {
-	            p = r.exec("env");
-	            envVars.load(p.getInputStream());
-	        }
-	        
-	        p.waitFor();
-	        
-	    } catch(Exception e) {
-	    }
-	    
-	    return envVars;
-	}
+     * Returns the environment variables of this process. The variables
+     * are read only once, so the returned copy is cheap to create.
+     * 
+     * @return operating system environment variables and their values in a properties object
+     */
+    public static Properties getEnv() {
+        Properties envVars = new Properties();
+        envVars.putAll(getEnvironment());
+        return envVars;
+    }
 
-	/**
-	 * Loads the given properties from the given input stream.
-	 * @param prop properties object
-	 * @param stream the stream
-	 * @throws IOException if a read error occurs
-	 */
-	private static void loadEscaping(Properties prop, InputStream stream) throws IOException {
-	    
-	    ByteArrayOutputStream bos = new ByteArrayOutputStream();
-	    while (true) {
-	        int b = stream.read();
-	        if (b == -1) {
-	            break;
-	        } else if (b == '\\') {
-	            // write extra backslash to escape them
-	            //bos.write('\\');
-	        }
-	        
-	        bos.write(b);
-	    }
-	    
-	    StringTokenizer st = new StringTokenizer(bos.toString(), "\r\n");
-	    while (st.hasMoreTokens()) {
-	        String token = st.nextToken();
-	        int index = token.indexOf('=');
-	        if (index > 0) {
-	            String key = token.substring(0, index);
-	            String value = token.substring(index+1);
-	            prop.setProperty(key, value);
-	        }
-	    }
-	}
+    /**
+     * @return the cached environment variables, which must not be modified
+     */
+    private static synchronized Properties getEnvironment() {
+        if (environment == null) {
+            Properties envVars = new Properties();
+            envVars.putAll(System.getenv());
+            environment = envVars;
+        }
+        return environment;
+    }
+
+    /**
+     * Returns the environment variables of this process merged with the
+     * variables defined in the given preference, as an array for the
+     * Process.exec() -method. The arrays are cached until the preference
+     * changes, so they must not be modified.
+     * 
+     * @param prefName preference name where to read additional environment variable map
+     * @param path directory to append to the "path" environment variable, or null
+     * @return merged environment variables
+     * @see #mergeEnvFromPrefs(Properties, String)
+     */
+    public static String[] getMergedEnv(String prefName, String path) {
+        synchronized (mergedEnvs) {
+            if (!listening) {
+                TexlipsePlugin.getDefault().getPreferenceStore().addPropertyChangeListener(
+                        new IPropertyChangeListener() {
+                    public void propertyChange(PropertyChangeEvent event) {
+                        synchronized (mergedEnvs) {
+                            mergedEnvs.remove(event.getProperty());
+                        }
+                    }
+                });
+                listening = true;
+            }
+            Map<String, String[]> envs = mergedEnvs.get(prefName);
+            if (envs == null) {
+                envs = new HashMap<String, String[]>();
+                mergedEnvs.put(prefName, envs);
+            }
+            String key = path != null ? path : "";
+            String[] env = envs.get(key);
+            if (env == null) {
+                Properties envProp = getEnv();
+                if (path != null) {
+                    String pathKey = findPathKey(envProp);
+                    String value = envProp.getProperty(pathKey);
+                    envProp.setProperty(pathKey, value != null
+                            ? value + File.pathSeparatorChar + path : path);
+                }
+                env = mergeEnvFromPrefs(envProp, prefName);
+                envs.put(key, env);
+            }
+            return env;
+        }
+    }
 
 	/**
 	 * Finds the property that represents the "path" environment variable.
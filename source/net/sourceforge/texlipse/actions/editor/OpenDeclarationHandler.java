@@ -105,7 +105,8 @@ public class OpenDeclarationHandler extends AbstractHandler {
         if (selection.getOffset() < comRegion.getOffset() + comRegion.getLength()) {
             //Cursor is over a command, not the argument, we first try to find the command in the user defined commands
             List<TexCommandEntry> entries = editor.getDocumentModel().getRefMana().getCompletionsCom(command.substring(1), TexCommandEntry.NORMAL_CONTEXT);
-            if (entries != null && entries.size() > 0 && entries.get(0).fileName != null) {
+            if (entries != null && entries.size() > 0 && entries.get(0).fileName != null
+                    && entries.get(0).key.startsWith(command.substring(1))) {
                 //the command is defined by the user
                 refEntry = entries.get(0);
             }
@@ -9,24 +9,52 @@
  */
 package net.sourceforge.texlipse.actions.editor;
 
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 import net.sourceforge.texlipse.actions.TexSelections;
 import net.sourceforge.texlipse.actions.TexlipseHandlerUtil;
+import net.sourceforge.texlipse.model.ProjectWordCounter;
+import net.sourceforge.texlipse.outline.TexProjectOutline;
+import net.sourceforge.texlipse.properties.TexlipseProperties;
 import net.sourceforge.texlipse.texparser.LatexWordCounter;
 
 import org.eclipse.core.commands.AbstractHandler;
 import org.eclipse.core.commands.ExecutionEvent;
 import org.eclipse.core.commands.ExecutionException;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.jface.dialogs.MessageDialog;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.widgets.Shell;
+import org.eclipse.ui.IEditorPart;
+import org.eclipse.ui.IEditorReference;
+import org.eclipse.ui.IFileEditorInput;
+import org.eclipse.ui.IWorkbenchPage;
+import org.eclipse.ui.IWorkbenchWindow;
+import org.eclipse.ui.PlatformUI;
 import org.eclipse.ui.texteditor.ITextEditor;
 
 
 /**
  * A LaTeX cord counter. Counts only normal words, \cite's
  * as one word and the words in the mandatory argument of the
- * sectioning commands.
+ * sectioning commands. Without a selection, the words of the whole
+ * document of the project are counted as well.
  */
 public class WordCountHandler extends AbstractHandler {
 
+    /**
+     * The maximum number of sections listed in the result
+     */
+    private static final int MAX_SECTIONS = 30;
+
     /**
      * {@inheritDoc}
      */
@@ -34,22 +62,129 @@ public class WordCountHandler extends AbstractHandler {
         ITextEditor textEditor = TexlipseHandlerUtil.getTextEditor(event);
         TexSelections selection = new TexSelections(textEditor);
         String selected = "";
+        boolean wholeDocument = false;
 
         if (selection.getRawSelLength() > 0) {
             selected = selection.getSelection();
         }
         else {
             selected = textEditor.getDocumentProvider().getDocument(textEditor.getEditorInput()).get();
+            wholeDocument = true;
         }
 
         LatexWordCounter counter = new LatexWordCounter(selected);
         int size = counter.countWords();
 
-        MessageDialog.openInformation(
-                textEditor.getSite().getShell(),
-                "Texlipse Plug-in",
-                "Approximate words: " + size);
+        StringBuilder message = new StringBuilder("Approximate words: " + size);
+        Shell shell = textEditor.getSite().getShell();
+        IProject project = TexlipseHandlerUtil.getProject(event);
+        if (wholeDocument && project != null
+                && TexlipseProperties.getProjectSourceFile(project) != null) {
+            // the message is shown when the whole document has been counted
+            scheduleProjectCount(message, project, shell);
+        }
+        else {
+            MessageDialog.openInformation(shell, "Texlipse Plug-in", message.toString());
+        }
         return null;
     }
 
+    /**
+     * Counts the words of the whole document of the project in a job,
+     * appends the total and the words of each section to the message and
+     * shows the message.
+     * 
+     * @param message The message
+     * @param project The project
+     * @param shell The shell of the message dialog
+     */
+    private void scheduleProjectCount(final StringBuilder message, IProject project, final Shell shell) {
+        Object sessionOutline = TexlipseProperties.getSessionProperty(project,
+                TexlipseProperties.SESSION_PROJECT_FULLOUTLINE);
+        TexProjectOutline outline = sessionOutline instanceof TexProjectOutline
+                ? (TexProjectOutline) sessionOutline : new TexProjectOutline(project);
+        final ProjectWordCounter projectCounter = new ProjectWordCounter(outline);
+        // the editors can only be read in the UI thread
+        final Map<IFile, String> documents = getOpenDocuments(project);
+        final Display display = shell.getDisplay();
+
+        Job countJob = new Job("Counting words") {
+            @Override
+            protected IStatus run(IProgressMonitor monitor) {
+                try {
+                    projectCounter.count(documents);
+                } catch (InterruptedException e) {
+                    return Status.CANCEL_STATUS;
+                }
+                if (monitor.isCanceled()) {
+                    return Status.CANCEL_STATUS;
+                }
+                appendProjectCount(message, projectCounter);
+                display.asyncExec(new Runnable() {
+                    public void run() {
+                        if (!shell.isDisposed()) {
+                            MessageDialog.openInformation(shell, "Texlipse Plug-in", message.toString());
+                        }
+                    }
+                });
+                return Status.OK_STATUS;
+            }
+        };
+        countJob.setUser(true);
+        countJob.schedule();
+    }
+
+    /**
+     * Returns the contents of the files of the project that are open in
+     * text editors, including the unsaved changes.
+     * 
+     * @param project The project
+     * @return The contents of the open files
+     */
+    private static Map<IFile, String> getOpenDocuments(IProject project) {
+        Map<IFile, String> documents = new HashMap<IFile, String>();
+        for (IWorkbenchWindow window : PlatformUI.getWorkbench().getWorkbenchWindows()) {
+            for (IWorkbenchPage page : window.getPages()) {
+                for (IEditorReference reference : page.getEditorReferences()) {
+                    // editors that have not been restored have no changes
+                    IEditorPart editor = reference.getEditor(false);
+                    if (editor instanceof ITextEditor
+                            && editor.getEditorInput() instanceof IFileEditorInput) {
+                        IFile file = ((IFileEditorInput) editor.getEditorInput()).getFile();
+                        IDocument document = ((ITextEditor) editor).getDocumentProvider()
+                                .getDocument(editor.getEditorInput());
+                        if (document != null && project.equals(file.getProject())) {
+                            documents.put(file, document.get());
+                        }
+                    }
+                }
+            }
+        }
+        return documents;
+    }
+
+    /**
+     * Appends the total and the words of each section of the counted
+     * document to the message.
+     * 
+     * @param message The message
+     * @param projectCounter The counter of the document
+     */
+    private static void appendProjectCount(StringBuilder message, ProjectWordCounter projectCounter) {
+        if (projectCounter.getFiles().size() < 2) {
+            return;
+        }
+
+        message.append("\n\nWhole document (" + projectCounter.getFiles().size()
+                + " files): " + projectCounter.getTotal());
+        List<ProjectWordCounter.SectionWords> sections = projectCounter.getSections();
+        for (int i = 0; i < sections.size() && i < MAX_SECTIONS; i++) {
+            ProjectWordCounter.SectionWords section = sections.get(i);
+            message.append("\n    " + section.getNode().getName() + ": " + section.getWords());
+        }
+        if (sections.size() > MAX_SECTIONS) {
+            message.append("\n    ...");
+        }
+    }
+
 }
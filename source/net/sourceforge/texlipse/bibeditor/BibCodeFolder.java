@@ -11,10 +11,12 @@ package net.sourceforge.texlipse.bibeditor;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
+import java.util.Set;
 
 import net.sourceforge.texlipse.TexlipsePlugin;
 import net.sourceforge.texlipse.model.ReferenceEntry;
@@ -60,6 +62,55 @@ public class BibCodeFolder {
         }
     }
     
+    /**
+     * Updates the code folds after some of the entries have been replaced.
+     * Only the folds of the replaced entries are changed.
+     * 
+     * @param outline All entries of the document
+     * @param oldEntries The entries that were replaced
+     * @param newEntries The entries that replaced them
+     */
+    public void update(List outline, List oldEntries, List newEntries) {
+        model = (ProjectionAnnotationModel)editor.getAdapter(ProjectionAnnotationModel.class);
+        if (model == null) {
+            return;
+        } else if (firstRun) {
+            this.addMarks(outline);
+            return;
+        }
+        
+        Set oldKeys = new HashSet();
+        for (Iterator iter = oldEntries.iterator(); iter.hasNext();) {
+            oldKeys.add(((ReferenceEntry) iter.next()).key);
+        }
+        Set newKeys = new HashSet();
+        Map additions = new HashMap();
+        for (Iterator iter = newEntries.iterator(); iter.hasNext();) {
+            ReferenceEntry re = (ReferenceEntry) iter.next();
+            newKeys.add(re.key);
+            // an entry, which keeps its key, keeps its fold
+            if (!oldKeys.contains(re.key)) {
+                additions.put(new BibProjectionAnnotation(re), re.position);
+            }
+        }
+        
+        List deletes = new ArrayList();
+        for (Iterator iter = model.getAnnotationIterator(); iter.hasNext();) {
+            BibProjectionAnnotation cAnnotation = (BibProjectionAnnotation) iter.next();
+            for (Iterator iter2 = oldEntries.iterator(); iter2.hasNext();) {
+                ReferenceEntry re = (ReferenceEntry) iter2.next();
+                if (cAnnotation.isSame(re) && !newKeys.contains(re.key)) {
+                    deletes.add(cAnnotation);
+                    break;
+                }
+            }
+        }
+        
+        BibProjectionAnnotation[] deleteArray = new BibProjectionAnnotation[deletes.size()];
+        deletes.toArray(deleteArray);
+        model.modifyAnnotations(deleteArray, additions, null);
+    }
+    
     /**
      * Manages adding and removing the folding marks from the editor.
      * 
@@ -15,9 +15,6 @@ import java.util.Map;
 import net.sourceforge.texlipse.bibparser.BibOutlineContainer;
 import net.sourceforge.texlipse.model.ReferenceEntry;
 
-import org.eclipse.jface.text.DefaultPositionUpdater;
-import org.eclipse.jface.text.IDocument;
-import org.eclipse.jface.text.IPositionUpdater;
 import org.eclipse.jface.viewers.ITreeContentProvider;
 import org.eclipse.jface.viewers.Viewer;
 
@@ -29,19 +26,15 @@ import org.eclipse.jface.viewers.Viewer;
  */
 public class BibContentProvider implements ITreeContentProvider {
     
-    private IPositionUpdater fPositionUpdater = new DefaultPositionUpdater(BibOutlinePage.SEGMENTS);
     private Map contentIndex = new HashMap();
     private BibOutlineContainer content;
     private String sortBy = BibOutlineContainer.SORTNATURAL;
-    private IDocument document;
     
     /**
-     * Creates a new content provider for the given document.
-     * 
-     * @param document The document associated with this editor view
+     * Creates a new content provider. The document positions of the
+     * entries are kept up to date by the document model.
      */
-    public BibContentProvider(IDocument document) {
-        this.document = document;
+    public BibContentProvider() {
     }
 
     /* (non-Javadoc)
@@ -59,9 +52,6 @@ public class BibContentProvider implements ITreeContentProvider {
                     content = changeSort(sortBy);
                 }
             }
-            if (document != null) {
-                document.addPositionUpdater(fPositionUpdater);
-            }
         }
     }
     
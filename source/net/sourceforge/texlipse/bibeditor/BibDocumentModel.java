@@ -11,9 +11,15 @@ package net.sourceforge.texlipse.bibeditor;
 
 import java.io.IOException;
 import java.io.StringReader;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import net.sourceforge.texlipse.TexlipsePlugin;
 import net.sourceforge.texlipse.bibparser.BibOutlineContainer;
@@ -29,16 +35,28 @@ import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.jface.text.BadLocationException;
 import org.eclipse.jface.text.BadPositionCategoryException;
+import org.eclipse.jface.text.DefaultPositionUpdater;
+import org.eclipse.jface.text.DocumentEvent;
 import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.IDocumentListener;
+import org.eclipse.jface.text.IPositionUpdater;
+import org.eclipse.jface.text.Position;
 import org.eclipse.ui.part.FileEditorInput;
 
 
 /**
  * Document model for the BibTeX -editor.
  * 
+ * The model keeps track of the changed part of the document, so that
+ * when the document is updated, only the entries that intersect the
+ * changes are parsed again and replaced in the entry list. The whole
+ * document is parsed, when the changes may affect the other entries
+ * (abbreviations, cross references or duplicate keys) or when there
+ * are errors in the document.
+ * 
  * @author Oskar Ojala
  */
-public class BibDocumentModel {
+public class BibDocumentModel implements IDocumentListener {
     
     private BibEditor editor;
     private List entryList;    
@@ -47,6 +65,21 @@ public class BibDocumentModel {
     
     private ReferenceContainer bibContainer;
     
+    private IDocument document;
+    private IPositionUpdater positionUpdater;
+    
+    // the changed part of the document since the last parse, or -1
+    private int changedStart = -1;
+    private int changedEnd;
+    
+    // the state of the last parse, which is kept up to date when
+    // only some of the entries are parsed again
+    private boolean parsed;
+    private boolean crossrefs;
+    private Map<String, Integer> keyCounts;
+    private List<ParseErrorMessage> warnings;
+    private List<ParseErrorMessage> tasks;
+    
     /**
      * Constructs a new document model.
      * 
@@ -73,33 +106,287 @@ public class BibDocumentModel {
      *             parsing
      */
     private void doParse() throws TexDocumentParseException {
+        parsed = false;
+        changedStart = -1;
         try {
-            BibParser parser = new BibParser(new StringReader(this.editor.getDocumentProvider().getDocument(this.editor.getEditorInput()).get()));
+            BibParser parser = new BibParser(new StringReader(document.get()));
             
             this.entryList = parser.getEntries();
             
             List<ParseErrorMessage> parseErrors = parser.getErrors();
-            List parseWarnings = parser.getWarnings();
-            List tasks = parser.getTasks();
             
-            MarkerHandler marker = MarkerHandler.getInstance();
-            marker.clearErrorMarkers(editor);
             if (parseErrors.size() > 0) {
+                MarkerHandler marker = MarkerHandler.getInstance();
+                marker.clearErrorMarkers(editor);
                 marker.createErrorMarkers(editor, parseErrors);                
                 throw new TexDocumentParseException("Fatal errors in file");
             }
-            if (parseWarnings.size() > 0) {
-                marker.createErrorMarkers(editor, parseWarnings);                
+            this.warnings = parser.getWarnings();
+            this.tasks = parser.getTasks();
+            updateMarkers();
+            
+            this.abbrevs = parser.getAbbrevs();
+            this.crossrefs = parser.hasCrossrefs();
+            this.keyCounts = new HashMap<String, Integer>(entryList.size() * 2);
+            for (Iterator iter = entryList.iterator(); iter.hasNext();) {
+                String key = ((ReferenceEntry) iter.next()).key;
+                Integer count = keyCounts.get(key);
+                keyCounts.put(key, Integer.valueOf(count != null ? count.intValue() + 1 : 1));
+            }
+            parsed = true;
+        } catch (IOException e) {
+            TexlipsePlugin.log("Can't read file.", e);
+            throw new TexDocumentParseException(e);
+        }
+    }
+    
+    /**
+     * Replaces the warning and task markers of the document with the
+     * current ones. Only the markers that have changed are recreated.
+     */
+    private void updateMarkers() {
+        MarkerHandler marker = MarkerHandler.getInstance();
+        marker.beginUpdate(editor, true);
+        try {
+            if (warnings.size() > 0) {
+                marker.createErrorMarkers(editor, warnings);                
             }
             if (tasks.size() > 0) {
                 marker.createTaskMarkers(editor, tasks);
             }
+        } finally {
+            marker.endUpdate(editor);
+        }
+    }
+    
+    /**
+     * Parses again the entries that intersect the changed part of the
+     * document and replaces them in the entry list, in the BibTeX-container
+     * and in the code folds. The parsed part is extended to the ends of
+     * unchanged entries, so it starts and ends outside any entry.
+     * 
+     * @return False if the changes can't be handled by parsing a part of
+     *  the document, so the whole document needs to be parsed
+     */
+    private boolean updateChangedEntries() {
+        if (changedStart < 0) {
+            // nothing has changed since the last parse, but the outline
+            // or the code folds may not have been created yet
+            if (this.editor.getOutlinePage() != null) {
+                this.updateOutline();
+            }
+            editor.updateCodeFolder(entryList, Collections.EMPTY_LIST, Collections.EMPTY_LIST);
+            return true;
+        }
+        if (crossrefs) {
+            return false;
+        }
+        
+        try {
+            // the last entry before the changes (first) and the first
+            // entry after them (last), whose ends are unchanged boundaries
+            int size = entryList.size();
+            int first = -1;
+            while (first + 1 < size && isBefore((ReferenceEntry) entryList.get(first + 1), changedStart)) {
+                first++;
+            }
+            int last = first + 1;
+            while (last < size && !isAfter((ReferenceEntry) entryList.get(last), changedEnd)) {
+                last++;
+            }
+            // an entry must not end on the line where the next one starts
+            while (first >= 0 && !endsLine(first)) {
+                first--;
+            }
+            while (last < size && !endsLine(last)) {
+                last++;
+            }
             
-            this.abbrevs = parser.getAbbrevs();
+            int start = 0;
+            if (first >= 0) {
+                Position pos = ((ReferenceEntry) entryList.get(first)).position;
+                start = pos.getOffset() + pos.getLength();
+            }
+            int end = document.getLength();
+            int oldEndLine = Integer.MAX_VALUE;
+            if (last < size - 1) {
+                ReferenceEntry re = (ReferenceEntry) entryList.get(last);
+                end = re.position.getOffset() + re.position.getLength();
+                oldEndLine = re.endLine;
+            } else {
+                last = size - 1;
+            }
+            if (start == 0 && end == document.getLength()) {
+                return false;
+            }
+            int startLine = document.getLineOfOffset(start);
+            if (document.getLineOffset(startLine) != start) {
+                return false;
+            }
+            startLine++;
+            int lineDelta = 0;
+            if (oldEndLine != Integer.MAX_VALUE) {
+                lineDelta = document.getLineOfOffset(end - 1) + 1 - oldEndLine;
+            }
+            
+            // the abbreviations are checked and expanded in the order of the
+            // file, so the part must not contain any definitions
+            Map<String, String> definedAbbrevs = new HashMap<String, String>();
+            for (Iterator iter = abbrevs.iterator(); iter.hasNext();) {
+                ReferenceEntry abbrev = (ReferenceEntry) iter.next();
+                if (abbrev.startLine >= startLine && abbrev.startLine <= oldEndLine) {
+                    return false;
+                } else if (abbrev.startLine < startLine) {
+                    definedAbbrevs.put(abbrev.key, abbrev.info);
+                }
+            }
+            
+            BibParser parser = new BibParser(new StringReader(document.get(start, end - start)));
+            parser.setDefinedAbbrevs(definedAbbrevs);
+            List newEntries = parser.getEntries();
+            if (newEntries == null || parser.getErrors().size() > 0
+                    || parser.hasCrossrefs() || parser.getAbbrevs().size() > 0) {
+                return false;
+            }
+            
+            // the keys are checked over the whole file, so they are
+            // only updated if they stay unique
+            List oldEntries = new ArrayList(entryList.subList(first + 1, last + 1));
+            Set<String> oldKeys = new HashSet<String>();
+            for (Iterator iter = oldEntries.iterator(); iter.hasNext();) {
+                String key = ((ReferenceEntry) iter.next()).key;
+                if (keyCounts.get(key).intValue() != 1) {
+                    return false;
+                }
+                oldKeys.add(key);
+            }
+            Set<String> newKeys = new HashSet<String>();
+            for (Iterator iter = newEntries.iterator(); iter.hasNext();) {
+                String key = ((ReferenceEntry) iter.next()).key;
+                if (!newKeys.add(key) || (keyCounts.containsKey(key) && !oldKeys.contains(key))) {
+                    return false;
+                }
+            }
+            for (String key : oldKeys) {
+                keyCounts.remove(key);
+            }
+            for (String key : newKeys) {
+                keyCounts.put(key, Integer.valueOf(1));
+            }
+            
+            // replace the entries and move the following ones
+            int lineOffset = startLine - 1;
+            for (Iterator iter = oldEntries.iterator(); iter.hasNext();) {
+                ReferenceEntry re = (ReferenceEntry) iter.next();
+                try {
+                    document.removePosition(BibOutlinePage.SEGMENTS, re.position);
+                } catch (BadPositionCategoryException bpce) {
+                    // do nothing
+                }
+            }
+            for (Iterator iter = newEntries.iterator(); iter.hasNext();) {
+                ReferenceEntry re = (ReferenceEntry) iter.next();
+                re.startLine += lineOffset;
+                re.endLine += lineOffset;
+                addDocumentPosition(re);
+            }
+            entryList.subList(first + 1, last + 1).clear();
+            entryList.addAll(first + 1, newEntries);
+            if (lineDelta != 0) {
+                for (int i = first + 1 + newEntries.size(); i < entryList.size(); i++) {
+                    ReferenceEntry re = (ReferenceEntry) entryList.get(i);
+                    re.startLine += lineDelta;
+                    re.endLine += lineDelta;
+                }
+                for (Iterator iter = abbrevs.iterator(); iter.hasNext();) {
+                    ReferenceEntry abbrev = (ReferenceEntry) iter.next();
+                    if (abbrev.startLine > oldEndLine) {
+                        abbrev.startLine += lineDelta;
+                    }
+                }
+            }
+            
+            warnings = replaceMessages(warnings, parser.getWarnings(),
+                    startLine, oldEndLine, lineDelta);
+            tasks = replaceMessages(tasks, parser.getTasks(),
+                    startLine, oldEndLine, lineDelta);
+            changedStart = -1;
+            updateMarkers();
+            
+            updateBibContainer(oldEntries, newEntries);
+            if (this.editor.getOutlinePage() != null) {
+                this.updateOutline();
+            }
+            editor.updateCodeFolder(entryList, oldEntries, newEntries);
+            return true;
         } catch (IOException e) {
             TexlipsePlugin.log("Can't read file.", e);
-            throw new TexDocumentParseException(e);
+        } catch (BadLocationException ble) {
+            TexlipsePlugin.log("BibDocumentModel.updateChangedEntries: bad position ", ble);
+        } catch (BadPositionCategoryException bpce) {
+            TexlipsePlugin.log("BibDocumentModel.updateChangedEntries: bad position category ", bpce);
+        }
+        return false;
+    }
+    
+    /**
+     * Tests whether the entry ends before the given offset and is unchanged.
+     * An entry ending at the offset may have been cut by the change.
+     */
+    private static boolean isBefore(ReferenceEntry re, int offset) {
+        return !re.position.isDeleted()
+            && re.position.getOffset() + re.position.getLength() < offset;
+    }
+    
+    /**
+     * Tests whether the entry starts after the given offset and is unchanged.
+     */
+    private static boolean isAfter(ReferenceEntry re, int offset) {
+        return !re.position.isDeleted() && re.position.getOffset() >= offset;
+    }
+    
+    /**
+     * Tests whether the next entry starts on a later line than the line
+     * where the entry at the given index ends.
+     */
+    private boolean endsLine(int index) {
+        return index + 1 >= entryList.size()
+            || ((ReferenceEntry) entryList.get(index)).endLine
+               < ((ReferenceEntry) entryList.get(index + 1)).startLine;
+    }
+    
+    /**
+     * Replaces the messages on the given lines with the messages of
+     * the parsed part and moves the messages after these lines.
+     * 
+     * @param messages The messages of the document
+     * @param partMessages The messages of the parsed part, whose first line
+     *  is <code>startLine</code>
+     * @param startLine The first line of the parsed part
+     * @param oldEndLine The last line of the parsed part before the changes
+     * @param lineDelta The number of lines added by the changes
+     * @return The messages of the document
+     */
+    private static List<ParseErrorMessage> replaceMessages(List<ParseErrorMessage> messages,
+            List<ParseErrorMessage> partMessages, int startLine, int oldEndLine, int lineDelta) {
+        List<ParseErrorMessage> result = new ArrayList<ParseErrorMessage>(messages.size()
+                + partMessages.size());
+        for (ParseErrorMessage msg : messages) {
+            if (msg.getLine() < startLine) {
+                result.add(msg);
+            }
         }
+        for (ParseErrorMessage msg : partMessages) {
+            result.add(new ParseErrorMessage(msg.getLine() + startLine - 1, msg.getPos(),
+                    msg.getLength(), msg.getMsg(), msg.getSeverity()));
+        }
+        for (ParseErrorMessage msg : messages) {
+            if (msg.getLine() > oldEndLine) {
+                result.add(lineDelta == 0 ? msg : new ParseErrorMessage(msg.getLine() + lineDelta,
+                        msg.getPos(), msg.getLength(), msg.getMsg(), msg.getSeverity()));
+            }
+        }
+        return result;
     }
     
     /**
@@ -139,6 +426,31 @@ public class BibDocumentModel {
         }
     }
     
+    /**
+     * Replaces the given entries in the BibTeX-container.
+     * 
+     * @param oldEntries The entries that were replaced
+     * @param newEntries The entries that replaced them
+     */
+    private void updateBibContainer(List oldEntries, List newEntries) {
+        if (bibContainer == null) {
+            updateBibContainer();
+            return;
+        }
+        IProject project = editor.getProject();
+        if (project == null) return;
+        
+        IResource resource = ((FileEditorInput)editor.getEditorInput()).getFile();
+        boolean changed = bibContainer.updateRefSource(
+                resource.getFullPath().removeFirstSegments(1).toString(),
+                entryList, oldEntries, newEntries);
+        if (changed) {
+            TexlipseProperties.setSessionProperty(project,
+                    TexlipseProperties.BIBFILES_CHANGED,
+                    new Boolean(true));
+        }
+    }
+    
     /**
      * Updates the outline view when outline.doSave is called.
      */
@@ -153,8 +465,6 @@ public class BibDocumentModel {
      * for outline navigation and code folding.
      */
     private void updateDocumentPositions() {
-        IDocument document = editor.getDocumentProvider().getDocument(editor.getEditorInput());
-        
         try {
             document.removePositionCategory(BibOutlinePage.SEGMENTS);
         } catch (BadPositionCategoryException bpce) {
@@ -189,20 +499,8 @@ public class BibDocumentModel {
                 document.addPosition(BibOutlinePage.SEGMENTS, prev.position);                    
             }
             */
-            // This hack is needed because Eclipse doesn't allow us to get 
-            // the offset of the last line in the document
-            if (entryList.isEmpty()) return;
-            int lastLine = document.getNumberOfLines();
-            ReferenceEntry rel = (ReferenceEntry) entryList.get(entryList.size() - 1);
-            if (rel.endLine == lastLine) {
-                rel.endLine--;
-            }
             for (Iterator iter = entryList.iterator(); iter.hasNext();) {
-                ReferenceEntry re = (ReferenceEntry) iter.next();
-                int beginOffset = document.getLineOffset(re.startLine - 1);
-                int length = document.getLineOffset(re.endLine) - beginOffset;
-                re.setPosition(beginOffset, length);
-                document.addPosition(BibOutlinePage.SEGMENTS, re.position);
+                addDocumentPosition((ReferenceEntry) iter.next());
             }
         } catch (BadPositionCategoryException bpce) {
             TexlipsePlugin.log("BibDocumentModel.updateDocumentPositions: bad position category ", bpce);
@@ -211,13 +509,96 @@ public class BibDocumentModel {
         }
     }
     
+    /**
+     * Sets the document position of the entry to cover the lines of
+     * the entry and adds it to the document.
+     * 
+     * @param re The entry
+     */
+    private void addDocumentPosition(ReferenceEntry re)
+            throws BadLocationException, BadPositionCategoryException {
+        int beginOffset = document.getLineOffset(re.startLine - 1);
+        // Eclipse doesn't allow us to get the offset of the line
+        // after the last line in the document
+        int endOffset = re.endLine < document.getNumberOfLines()
+            ? document.getLineOffset(re.endLine) : document.getLength();
+        re.setPosition(beginOffset, endOffset - beginOffset);
+        document.addPosition(BibOutlinePage.SEGMENTS, re.position);
+    }
+    
+    /**
+     * Starts tracking the changes and the entry positions of the document
+     * of the editor.
+     */
+    private void connectDocument() {
+        IDocument doc = editor.getDocumentProvider().getDocument(editor.getEditorInput());
+        if (doc == document) {
+            return;
+        }
+        if (document != null) {
+            document.removeDocumentListener(this);
+            document.removePositionUpdater(positionUpdater);
+        }
+        document = doc;
+        parsed = false;
+        positionUpdater = new DefaultPositionUpdater(BibOutlinePage.SEGMENTS);
+        document.addPositionUpdater(positionUpdater);
+        document.addDocumentListener(this);
+    }
+    
+    /**
+     * Stops tracking the changes and the entry positions of the document.
+     * Called when the editor is disposed.
+     */
+    public void dispose() {
+        if (document != null) {
+            document.removeDocumentListener(this);
+            document.removePositionUpdater(positionUpdater);
+            document = null;
+            positionUpdater = null;
+        }
+    }
+    
+    /* (non-Javadoc)
+     * @see org.eclipse.jface.text.IDocumentListener#documentAboutToBeChanged(org.eclipse.jface.text.DocumentEvent)
+     */
+    public void documentAboutToBeChanged(DocumentEvent event) {
+    }
+    
+    /* (non-Javadoc)
+     * @see org.eclipse.jface.text.IDocumentListener#documentChanged(org.eclipse.jface.text.DocumentEvent)
+     */
+    public void documentChanged(DocumentEvent event) {
+        int offset = event.getOffset();
+        int removedEnd = offset + event.getLength();
+        int insertedEnd = offset + (event.getText() != null ? event.getText().length() : 0);
+        if (changedStart < 0) {
+            changedStart = offset;
+            changedEnd = insertedEnd;
+        } else {
+            // move the end of the earlier changes
+            if (changedEnd >= removedEnd) {
+                changedEnd += insertedEnd - removedEnd;
+            } else if (changedEnd > offset) {
+                changedEnd = insertedEnd;
+            }
+            changedStart = Math.min(changedStart, offset);
+            changedEnd = Math.max(changedEnd, insertedEnd);
+        }
+    }
+    
     /**
      * Updates the document model. This includes parsing the document
      * and retrieving updated outline and abbreviation informaiton as
-     * well as updating these into the editor.
+     * well as updating these into the editor. If possible, only the
+     * changed entries are parsed.
      */
     public void update() {
+        connectDocument();
         try {
+            if (parsed && updateChangedEntries()) {
+                return;
+            }
             doParse();
             this.updateDocumentPositions();
             updateBibContainer();
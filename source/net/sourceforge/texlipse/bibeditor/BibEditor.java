@@ -68,6 +68,8 @@ public class BibEditor extends TextEditor {
     public void dispose() {
         if (outlinePage != null)
             outlinePage = null;
+        if (documentModel != null)
+            documentModel.dispose();
         super.dispose();
     }
         
@@ -184,6 +186,17 @@ public class BibEditor extends TextEditor {
         this.folder.update(outlineTree);
     }
     
+    /**
+     * Updates the code folds of the replaced entries.
+     * 
+     * @param outlineTree The outline data structure containing the document positions
+     * @param oldEntries The entries that were replaced
+     * @param newEntries The entries that replaced them
+     */
+    public void updateCodeFolder(List outlineTree, List oldEntries, List newEntries) {
+        this.folder.update(outlineTree, oldEntries, newEntries);
+    }
+    
     /**
      * @return The outline page of this editor.
      */
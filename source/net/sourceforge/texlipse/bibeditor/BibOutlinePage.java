@@ -88,7 +88,7 @@ public class BibOutlinePage extends ContentOutlinePage {
         createActions();
         
         TreeViewer viewer = getTreeViewer();        
-        viewer.setContentProvider(new BibContentProvider(editor.getDocumentProvider().getDocument(editor.getEditorInput())));
+        viewer.setContentProvider(new BibContentProvider());
         viewer.setLabelProvider(new BibLabelProvider());
         viewer.addSelectionChangedListener(this);
         
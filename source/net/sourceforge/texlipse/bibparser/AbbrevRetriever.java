@@ -24,6 +24,8 @@ import net.sourceforge.texlipse.bibparser.node.AStrbraceStringEntry;
 import net.sourceforge.texlipse.bibparser.node.AStrparenStringEntry;
 import net.sourceforge.texlipse.bibparser.node.AValueBValOrSid;
 import net.sourceforge.texlipse.bibparser.node.AValueQValOrSid;
+import net.sourceforge.texlipse.bibparser.node.TIdentifier;
+import net.sourceforge.texlipse.bibparser.node.TStringLiteral;
 import net.sourceforge.texlipse.model.ReferenceEntry;
 
 
@@ -53,15 +55,21 @@ public final class AbbrevRetriever extends DepthFirstAdapter {
     public void outABibtex(ABibtex node) {
     }
     
+    private void inAnAbbrev(TIdentifier tid, TStringLiteral tsl) {
+        ReferenceEntry abbrev = new ReferenceEntry(tid.getText(), tsl.getText());
+        abbrev.startLine = tid.getLine();
+        abbrevs.add(abbrev);
+    }
+    
     public void inAStrbraceStringEntry(AStrbraceStringEntry node) {
-        abbrevs.add(new ReferenceEntry(node.getIdentifier().getText(), node.getStringLiteral().getText()));
+        inAnAbbrev(node.getIdentifier(), node.getStringLiteral());
     }
     
     public void outAStrbraceStringEntry(AStrbraceStringEntry node) {
     }
 
     public void inAStrparenStringEntry(AStrparenStringEntry node) {
-        abbrevs.add(new ReferenceEntry(node.getIdentifier().getText(), node.getStringLiteral().getText()));
+        inAnAbbrev(node.getIdentifier(), node.getStringLiteral());
     }
 
     public void outAStrparenStringEntry(AStrparenStringEntry node) {
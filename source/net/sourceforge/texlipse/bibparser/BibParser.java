@@ -16,6 +16,7 @@ import java.io.PushbackReader;
 import java.io.Reader;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 import net.sourceforge.texlipse.bibparser.lexer.LexerException;
 import net.sourceforge.texlipse.bibparser.node.Start;
@@ -43,6 +44,9 @@ public class BibParser {
     private List tasks;
     private Start ast;
     
+    private Map<String, String> definedAbbrevs;
+    private boolean hasCrossrefs;
+    
     /**
      * Constructs a new BibTeX parser.
      * 
@@ -84,11 +88,13 @@ public class BibParser {
             Parser p = new Parser(l);
             this.ast = p.parse();
             
-            EntryRetriever er = new EntryRetriever();
+            EntryRetriever er = definedAbbrevs != null
+                ? new EntryRetriever(definedAbbrevs) : new EntryRetriever();
             ast.apply(er);
             er.finishParse();
             warnings = er.getWarnings();
             tasks = er.getTasks();
+            hasCrossrefs = er.hasCrossrefs();
             
             // FIXME
             // Search for files of the referenced material to be able to display
@@ -120,6 +126,24 @@ public class BibParser {
         return null;
     }
     
+    /**
+     * Sets the abbreviations that are defined before the parsed text. This
+     * is used when only a part of a file is parsed, and must be called
+     * before getEntries().
+     * 
+     * @param definedAbbrevs The abbreviations (abbreviation -> expansion)
+     */
+    public void setDefinedAbbrevs(Map<String, String> definedAbbrevs) {
+        this.definedAbbrevs = definedAbbrevs;
+    }
+    
+    /**
+     * @return True if some of the parsed entries has a crossref field
+     */
+    public boolean hasCrossrefs() {
+        return hasCrossrefs;
+    }
+    
     /**
      * @return Returns the abbreviations (<code>ReferenceEntry</code>)
      */
@@ -88,6 +88,7 @@ public final class EntryRetriever extends DepthFirstAdapter {
     private static final Map<String, String> predefAbbrevs = new HashMap<String, String>();
     private Map<String, String> abbrevs;
     private Map<String, List<EntryText>> crossrefs; // String->List(EntryText)
+    private boolean hasCrossrefs;
     
     /**
      * A list of required fields for the different BibTeX entries
@@ -145,6 +146,17 @@ public final class EntryRetriever extends DepthFirstAdapter {
         this.crossrefs = new HashMap<String, List<EntryText>>();
     }
     
+    /**
+     * Creates a retriever for a part of a file.
+     * 
+     * @param definedAbbrevs The abbreviations defined before the part
+     *  (abbreviation -> expansion)
+     */
+    public EntryRetriever(Map<String, String> definedAbbrevs) {
+        this();
+        this.abbrevs.putAll(definedAbbrevs);
+    }
+    
     /**
      * @return The entries as a list of <code>ReferenceEntry</code>s
      */
@@ -166,6 +178,13 @@ public final class EntryRetriever extends DepthFirstAdapter {
         return tasks;
     }
 
+    /**
+     * @return True if some entry has a crossref field
+     */
+    public boolean hasCrossrefs() {
+        return hasCrossrefs;
+    }
+
     /**
      * Finish the parse by setting all remaining warnings
      */
@@ -412,6 +431,7 @@ public final class EntryRetriever extends DepthFirstAdapter {
             currEntry.year = fieldValue;
         } else if ("crossref".equals(currField)) {
             crossref = fieldValue;
+            hasCrossrefs = true;
         }
         
         // Test for empty fields
@@ -12,6 +12,9 @@ package net.sourceforge.texlipse.builder;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
 
 import net.sourceforge.texlipse.PathUtils;
 import net.sourceforge.texlipse.TexlipsePlugin;
@@ -20,8 +23,13 @@ import net.sourceforge.texlipse.builder.factory.RunnerDescription;
 import net.sourceforge.texlipse.properties.TexlipseProperties;
 
 import org.eclipse.core.resources.IMarker;
+import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IWorkspace;
+import org.eclipse.core.resources.IWorkspaceRunnable;
+import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.ui.texteditor.MarkerUtilities;
@@ -42,6 +50,20 @@ public abstract class AbstractProgramRunner implements ProgramRunner {
 
     // the currently running program
     private ExternalProgram extrun;
+
+    /**
+     * The state of a marker update of one project.
+     */
+    private static class MarkerUpdate {
+        // the build markers by resource, type, line and message
+        private final Map<String, IMarker> markers = new HashMap<String, IMarker>();
+        // the markers of the update, which have not been reported again
+        private final Set<IMarker> obsoleteMarkers = new HashSet<IMarker>();
+    }
+
+    // the running marker updates by project
+    private static final Map<IProject, MarkerUpdate> markerUpdates =
+        new HashMap<IProject, MarkerUpdate>();
     
     /**
      * Create a new program runner.
@@ -132,6 +154,19 @@ public abstract class AbstractProgramRunner implements ProgramRunner {
      * @return true, if error messages were found in the output, false otherwise
      */
     protected abstract boolean parseErrors(IResource resource, String output);
+
+    /**
+     * Returns a listener that analyzes the standard output of the program
+     * while it runs. The lines passed to the listener are not included in
+     * the output given to <code>parseErrors()</code>.
+     * 
+     * @param resource the input file to be processed
+     * @return the listener, or null to analyze the whole output after
+     *  the program has finished (default)
+     */
+    protected OutputListener getOutputListener(IResource resource) {
+        return null;
+    }
     
     /**
      * Check to see if this program is ready for operation.
@@ -152,7 +187,7 @@ public abstract class AbstractProgramRunner implements ProgramRunner {
      * @throws CoreException if the external program is not found
      *                       or if there was an error during the build
      */
-    public void run(IResource resource) throws CoreException {
+    public void run(final IResource resource) throws CoreException {
         
         File sourceDir = resource.getLocation().toFile().getParentFile();
         
@@ -175,6 +210,7 @@ public abstract class AbstractProgramRunner implements ProgramRunner {
             console = getProgramName();
         }
         extrun.setup(command, sourceDir, console);
+        extrun.setOutputListener(getOutputListener(resource));
         
         String output = null;
         try {
@@ -193,7 +229,16 @@ public abstract class AbstractProgramRunner implements ProgramRunner {
             extrun.stop();
         }
 
-        if (parseErrors(resource, output)) {
+        // create all markers in one workspace operation
+        final String finalOutput = output;
+        final boolean[] errors = new boolean[1];
+        IWorkspace workspace = ResourcesPlugin.getWorkspace();
+        workspace.run(new IWorkspaceRunnable() {
+            public void run(IProgressMonitor monitor) throws CoreException {
+                errors[0] = parseErrors(resource, finalOutput);
+            }
+        }, workspace.getRuleFactory().markerRule(resource), IWorkspace.AVOID_UPDATE, null);
+        if (errors[0]) {
             throw new BuilderCoreException(TexlipsePlugin.stat("Errors during build. See the problems dialog."));
         }
     }
@@ -231,22 +276,116 @@ public abstract class AbstractProgramRunner implements ProgramRunner {
     	if (lineNumber != null) {
     		lineNr = lineNumber;
     	}
+    	synchronized (AbstractProgramRunner.class) {
+    	    MarkerUpdate update = markerUpdates.get(resource.getProject());
+    	    if (update != null) {
+    	        String key = getMarkerKey(resource, markerType, lineNr, message);
+    	        IMarker marker = update.markers.get(key);
+    	        if (marker != null) {
+    	            // the marker already exists, keep it
+    	            update.obsoleteMarkers.remove(marker);
+    	            return;
+    	        }
+    	        try {
+    	            marker = resource.createMarker(markerType);
+    	            marker.setAttributes(getMarkerAttributes(lineNumber, message, severity));
+    	            update.markers.put(key, marker);
+    	        } catch (CoreException e) {
+    	            throw new RuntimeException(e);
+    	        }
+    	        return;
+    	    }
+    	}
     	IMarker marker = AbstractProgramRunner.findMarker(resource, lineNr, message, markerType);
     	if (marker == null) {
     		try {
-    			HashMap map = new HashMap();
-    			map.put(IMarker.MESSAGE, message);
-    			map.put(IMarker.SEVERITY, new Integer (severity));
-
-    			if (lineNumber != null)
-    				map.put(IMarker.LINE_NUMBER, lineNumber);
-
-    			MarkerUtilities.createMarker(resource, map, markerType);
+    			MarkerUtilities.createMarker(resource,
+    			        getMarkerAttributes(lineNumber, message, severity), markerType);
     		} catch (CoreException e) {
     			throw new RuntimeException(e);
     		}
     	}
     }
+
+    /**
+     * Creates the attributes of a build marker.
+     *
+     * @param lineNumber line number, or null
+     * @param message error message
+     * @param severity Severity of the error
+     * @return the attributes
+     */
+    @SuppressWarnings("unchecked")
+    private static Map getMarkerAttributes(Integer lineNumber, String message, int severity) {
+        HashMap map = new HashMap();
+        map.put(IMarker.MESSAGE, message);
+        map.put(IMarker.SEVERITY, new Integer (severity));
+
+        if (lineNumber != null)
+            map.put(IMarker.LINE_NUMBER, lineNumber);
+        return map;
+    }
+
+    /**
+     * Returns the key, under which a marker is found during a marker update.
+     *
+     * @param resource the resource of the marker
+     * @param markerType the type of the marker
+     * @param lineNr the line number, or -1
+     * @param message the message
+     * @return the key
+     */
+    private static String getMarkerKey(IResource resource, String markerType,
+            int lineNr, String message) {
+        return resource.getFullPath().toString() + '\n' + markerType + '\n' + lineNr + '\n' + message;
+    }
+
+    /**
+     * Starts a marker update of the given project. Until the update is ended,
+     * the build markers of the project are not deleted and recreated, instead
+     * markers which are reported again are kept and only new markers are created.
+     *
+     * @param project the project
+     * @see #endMarkerUpdate(IProject)
+     */
+    public static synchronized void beginMarkerUpdate(IProject project) {
+        MarkerUpdate update = new MarkerUpdate();
+        try {
+            String[] types = {TexlipseBuilder.MARKER_TYPE, TexlipseBuilder.LAYOUT_WARNING_TYPE};
+            for (String type : types) {
+                for (IMarker marker : project.findMarkers(type, false, IResource.DEPTH_INFINITE)) {
+                    String key = getMarkerKey(marker.getResource(), type,
+                            marker.getAttribute(IMarker.LINE_NUMBER, -1),
+                            marker.getAttribute(IMarker.MESSAGE, ""));
+                    // of duplicate markers only the last one can be kept
+                    update.markers.put(key, marker);
+                    update.obsoleteMarkers.add(marker);
+                }
+            }
+        } catch (CoreException e) {
+            TexlipsePlugin.log("Reading build markers", e);
+        }
+        markerUpdates.put(project, update);
+    }
+
+    /**
+     * Ends the current marker update of the given project. The markers which
+     * have not been reported again since the update was started are deleted.
+     *
+     * @param project the project
+     * @see #beginMarkerUpdate(IProject)
+     */
+    public static synchronized void endMarkerUpdate(IProject project) {
+        MarkerUpdate update = markerUpdates.remove(project);
+        if (update != null && !update.obsoleteMarkers.isEmpty()) {
+            try {
+                ResourcesPlugin.getWorkspace().deleteMarkers(update.obsoleteMarkers.toArray(
+                        new IMarker[update.obsoleteMarkers.size()]));
+            } catch (CoreException e) {
+                TexlipsePlugin.log("Deleting build markers", e);
+            }
+        }
+    }
     
     /**
      * Create a layout warning marker to the given resource.
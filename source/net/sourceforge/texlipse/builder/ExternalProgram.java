@@ -15,7 +15,6 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.StringWriter;
-import java.util.Properties;
 
 import net.sourceforge.texlipse.PathUtils;
 import net.sourceforge.texlipse.TexlipsePlugin;
@@ -41,6 +40,9 @@ public class ExternalProgram {
 
     // output messages to this console
     private String consoleOutput;
+
+    // receives the standard output lines while the process runs
+    private OutputListener listener;
     
     /**
      * Creates a new command runner.
@@ -50,6 +52,7 @@ public class ExternalProgram {
         this.dir = null;
         this.process = null;
         this.consoleOutput = null;
+        this.listener = null;
     }
 
     /**
@@ -63,6 +66,19 @@ public class ExternalProgram {
         this.dir = dir;
         this.process = null;
         this.consoleOutput = console;
+        this.listener = null;
+    }
+
+    /**
+     * Sets a listener, which receives the lines of the standard output
+     * while the process is still running. The lines passed to the listener
+     * are not included in the text returned by <code>run()</code>.
+     * The listener is called from the thread executing <code>run()</code>.
+     * 
+     * @param listener the listener, or null to collect all output
+     */
+    public void setOutputListener(OutputListener listener) {
+        this.listener = listener;
     }
 
     /**
@@ -134,7 +150,8 @@ public class ExternalProgram {
      * 
      * @param wait if true, this method will block until
      *             the process has finished execution
-     * @return the text produced to standard output by the process
+     * @return the text produced to standard output by the process,
+     *         without the lines already passed to the output listener
      * @throws IOException 
      */
     protected String run(boolean wait, String[] queryMessage) throws IOException {
@@ -155,15 +172,9 @@ public class ExternalProgram {
             // Add builder program path to environmet variables.
             // This is needed at least on Mac OS X, where Eclipse overwrites
             // the "path" environment variable, and xelatex needs its directory in the path.
-            Properties envProp = PathUtils.getEnv();
             int index = command[0].lastIndexOf(File.separatorChar);
-            if (index > 0) {
-	            String commandPath = command[0].substring(0, index);
-	            String key = PathUtils.findPathKey(envProp);
-	            envProp.setProperty(key, envProp.getProperty(key) + File.pathSeparatorChar + commandPath);
-            }
-            
-            String[] env = PathUtils.mergeEnvFromPrefs(envProp, TexlipseProperties.BUILD_ENV_SETTINGS);
+            String commandPath = index > 0 ? command[0].substring(0, index) : null;
+            String[] env = PathUtils.getMergedEnv(TexlipseProperties.BUILD_ENV_SETTINGS, commandPath);
             process = rt.exec(command, env, dir);
             
         } else {
@@ -176,6 +187,7 @@ public class ExternalProgram {
         // scan the standard output stream
         final OutputScanner scanner = new OutputScanner(process.getInputStream(), 
                 process.getOutputStream(), queryMessage, consoleOutput);
+        scanner.setOutputListener(listener);
         
         // scan also the standard error stream
         final OutputScanner errorScanner = new OutputScanner(process.getErrorStream(), 
@@ -188,7 +200,9 @@ public class ExternalProgram {
                 }
             };
         };
-        final Thread outputThread = new Thread() {
+        // the standard output is scanned in this thread, so that the
+        // output listener can e.g. create markers while the program runs
+        final Runnable outputReader = new Runnable() {
             public void run() {
                 if (scanner.scanOutput()) {
                     thOutput.append(scanner.getText());
@@ -207,12 +221,11 @@ public class ExternalProgram {
             };
         };
 
-        outputThread.start();
         errorThread.start();
+        outputReader.run();
         try {
             // Wait until stream read has finished
             errorThread.join();
-            outputThread.join();
         } catch (InterruptedException e) {
             TexlipsePlugin.log("Output scanner interrupted", e);
             // Should not happen
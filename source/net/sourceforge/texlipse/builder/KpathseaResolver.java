@@ -0,0 +1,806 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2026 by the TeXlapse Team.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package net.sourceforge.texlipse.builder;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Finds files of the TeX installation the same way as kpsewhich, but
+ * without starting a process for every lookup.
+ * <p>
+ * The search paths are read from the <code>texmf.cnf</code> files, which
+ * are located like kpathsea does it, relative to the kpsewhich program or
+ * by the <code>TEXMFCNF</code> environment variable. The <code>ls-R</code>
+ * databases of the texmf trees are loaded once, and the directories of
+ * other trees are indexed when they are first searched. The results are
+ * cached for <code>CACHE_TIMEOUT</code> milliseconds, and everything is
+ * reloaded when a configuration file or a database has changed.
+ * <p>
+ * Only the file types used by TeXlipse are supported. If a lookup cannot
+ * be answered, e.g. because no <code>texmf.cnf</code> was found (like with
+ * MiKTeX), the caller should run kpsewhich instead.
+ *
+ * @see KpsewhichRunner
+ */
+public class KpathseaResolver {
+
+    /**
+     * The time in milliseconds between the checks for changed
+     * configuration files and databases
+     */
+    public static final long CHECK_INTERVAL = 5000;
+
+    /**
+     * The time in milliseconds for which the result of a lookup is kept
+     */
+    public static final long CACHE_TIMEOUT = 60000;
+
+    // the locations of texmf.cnf, when TEXMFCNF is not set
+    private static final String DEFAULT_TEXMFCNF = "/etc/texmf/web2c;"
+        + "{$SELFAUTOLOC,$SELFAUTOLOC/share/texmf-local/web2c,$SELFAUTOLOC/share/texmf-dist/web2c,"
+        + "$SELFAUTOLOC/share/texmf/web2c,$SELFAUTOLOC/texmf-local/web2c,$SELFAUTOLOC/texmf-dist/web2c,"
+        + "$SELFAUTOLOC/texmf/web2c,$SELFAUTODIR,$SELFAUTODIR/share/texmf-local/web2c,"
+        + "$SELFAUTODIR/share/texmf-dist/web2c,$SELFAUTODIR/share/texmf/web2c,"
+        + "$SELFAUTODIR/share/texlive/texmf-dist/web2c,$SELFAUTODIR/texmf-local/web2c,"
+        + "$SELFAUTODIR/texmf-dist/web2c,$SELFAUTODIR/texmf/web2c,$SELFAUTOGRANDPARENT/texmf-local/web2c,"
+        + "$SELFAUTOPARENT,$SELFAUTOPARENT/share/texmf-local/web2c,$SELFAUTOPARENT/share/texmf-dist/web2c,"
+        + "$SELFAUTOPARENT/share/texmf/web2c,$SELFAUTOPARENT/texmf-local/web2c,"
+        + "$SELFAUTOPARENT/texmf-dist/web2c,$SELFAUTOPARENT/texmf/web2c}";
+
+    private static final String CNF_NAME = "texmf.cnf";
+    private static final String[] DB_NAMES = {"ls-R", "ls-r"};
+
+    // the path variable of each supported file type
+    private static final Map<String, String> FORMATS = new HashMap<String, String>();
+    static {
+        String[] tex = {"tex", "sty", "cls", "clo", "def", "cfg", "fd", "ltx", "dtx", "ins",
+                "bbx", "cbx", "lbx"};
+        for (int i = 0; i < tex.length; i++) {
+            FORMATS.put(tex[i], "TEXINPUTS");
+        }
+        FORMATS.put("bib", "BIBINPUTS");
+        FORMATS.put("bst", "BSTINPUTS");
+        FORMATS.put("ist", "INDEXSTYLE");
+    }
+
+    private static final boolean WINDOWS = File.pathSeparatorChar == ';';
+
+    /**
+     * A cached lookup result.
+     */
+    private static class Result {
+        final String path;
+        final long time;
+
+        Result(String path, long time) {
+            this.path = path;
+            this.time = time;
+        }
+    }
+
+    /**
+     * The file names of a texmf tree, either from its ls-R database or
+     * from walking the directories.
+     */
+    private static class FileIndex {
+        // the root directory without a trailing slash
+        final String root;
+        // the directories containing a file or directory of the given name
+        final Map<String, List<String>> dirs = new HashMap<String, List<String>>();
+        final long time;
+
+        FileIndex(String root, long time) {
+            this.root = root;
+            this.time = time;
+        }
+
+        void add(String name, String dir) {
+            List<String> list = dirs.get(name);
+            if (list == null) {
+                list = new ArrayList<String>(1);
+                dirs.put(name, list);
+            }
+            list.add(dir);
+        }
+    }
+
+    private final File program;
+    private final Map<String, String> environment;
+
+    private long lastCheck;
+    private boolean loaded;
+    // the modification times of the configuration files and databases
+    private final Map<File, Long> stamps = new HashMap<File, Long>();
+    // the values of the configuration files, the first definition wins
+    private final Map<String, String> variables = new HashMap<String, String>();
+    private final List<FileIndex> databases = new ArrayList<FileIndex>();
+    private final Map<String, FileIndex> trees = new HashMap<String, FileIndex>();
+    private final Map<String, Result> results = new LinkedHashMap<String, Result>();
+
+    /**
+     * Creates a new resolver.
+     *
+     * @param program the kpsewhich program, which determines the location
+     *  of the configuration files, or null if unknown
+     * @param environment the environment variables of the processes
+     */
+    public KpathseaResolver(File program, Map<String, String> environment) {
+        this.program = program;
+        this.environment = environment;
+    }
+
+    /**
+     * Finds a file like <code>kpsewhich -progname=progname name</code>
+     * would.
+     *
+     * @param dir the working directory for relative search path elements
+     * @param name the name of the file
+     * @param progname the name of the program that reads the file
+     * @return the path of the file, an empty string if kpsewhich did not
+     *  find the file either, or null if the file could not be found
+     */
+    public synchronized String findFile(File dir, String name, String progname) {
+        check();
+        String key = getKey(dir, name, progname);
+        Result result = results.get(key);
+        if (result != null) {
+            if (System.currentTimeMillis() - result.time < CACHE_TIMEOUT) {
+                return result.path;
+            }
+            results.remove(key);
+        }
+        if (variables.isEmpty()) {
+            return null;
+        }
+
+        String path = search(dir, name, progname);
+        if (path != null) {
+            results.put(key, new Result(path, System.currentTimeMillis()));
+        }
+        return path;
+    }
+
+    /**
+     * Stores the result of a lookup that was made by kpsewhich, so that
+     * it is not repeated until the cache times out.
+     *
+     * @param dir the working directory
+     * @param name the name of the file
+     * @param progname the name of the program that reads the file
+     * @param path the path of the file, or an empty string if not found
+     */
+    public synchronized void putResult(File dir, String name, String progname, String path) {
+        results.put(getKey(dir, name, progname), new Result(path, System.currentTimeMillis()));
+    }
+
+    /**
+     * Returns the search path of a file type like
+     * <code>kpsewhich -show-path type</code> would.
+     *
+     * @param type the suffix of the file type, e.g. "bib"
+     * @param progname the name of the program that reads the files
+     * @return the elements of the search path, or null if unknown
+     */
+    public synchronized String[] getSearchPath(String type, String progname) {
+        check();
+        String var = FORMATS.get(type);
+        if (var == null || variables.isEmpty()) {
+            return null;
+        }
+        List<String> path = getPath(var, progname);
+        return path.toArray(new String[path.size()]);
+    }
+
+    /**
+     * Forgets all configuration values, databases and results.
+     */
+    public synchronized void clear() {
+        loaded = false;
+        stamps.clear();
+        variables.clear();
+        databases.clear();
+        trees.clear();
+        results.clear();
+    }
+
+    private static String getKey(File dir, String name, String progname) {
+        return progname + File.pathSeparatorChar + name + File.pathSeparatorChar
+            + (dir != null ? dir.getPath() : "");
+    }
+
+    /**
+     * Reloads the configuration, if the check interval has passed and a
+     * configuration file or a database has changed.
+     */
+    private void check() {
+        long now = System.currentTimeMillis();
+        if (loaded && now - lastCheck < CHECK_INTERVAL) {
+            return;
+        }
+        lastCheck = now;
+        if (loaded) {
+            boolean changed = false;
+            for (Map.Entry<File, Long> e : stamps.entrySet()) {
+                if (e.getKey().lastModified() != e.getValue().longValue()) {
+                    changed = true;
+                    break;
+                }
+            }
+            if (!changed) {
+                return;
+            }
+            clear();
+        }
+        load();
+    }
+
+    private void load() {
+        loaded = true;
+        if (program != null) {
+            File loc = program.getAbsoluteFile();
+            try {
+                loc = loc.getCanonicalFile();
+            } catch (IOException e) {
+                // use the absolute path
+            }
+            loc = loc.getParentFile();
+            setSelfVariable("SELFAUTOLOC", loc);
+            File autoDir = loc != null ? loc.getParentFile() : null;
+            setSelfVariable("SELFAUTODIR", autoDir);
+            File autoParent = autoDir != null ? autoDir.getParentFile() : null;
+            setSelfVariable("SELFAUTOPARENT", autoParent);
+            setSelfVariable("SELFAUTOGRANDPARENT", autoParent != null ? autoParent.getParentFile() : null);
+        }
+
+        String cnfPath = environment.get("TEXMFCNF");
+        if (cnfPath == null) {
+            cnfPath = DEFAULT_TEXMFCNF;
+        }
+        boolean found = false;
+        for (String dir : expandPath(expand(cnfPath, "", new HashSet<String>()))) {
+            File cnf = new File(stripPath(dir), CNF_NAME);
+            if (cnf.isFile()) {
+                try {
+                    readConfiguration(cnf);
+                    found = true;
+                } catch (IOException e) {
+                    // skip the unreadable file
+                }
+            }
+        }
+        if (!found) {
+            // kpsewhich has to be used
+            variables.clear();
+            return;
+        }
+
+        for (String root : getPath("TEXMFDBS", "")) {
+            root = stripPath(root.startsWith("!!") ? root.substring(2) : root);
+            for (int i = 0; i < DB_NAMES.length; i++) {
+                File db = new File(root, DB_NAMES[i]);
+                if (db.isFile()) {
+                    try {
+                        databases.add(readDatabase(db, root));
+                    } catch (IOException e) {
+                        // search the directories instead
+                    }
+                    break;
+                }
+            }
+        }
+    }
+
+    private void setSelfVariable(String name, File dir) {
+        if (dir != null) {
+            variables.put(name, toSlashes(dir.getPath()));
+        }
+    }
+
+    /**
+     * Reads the variable definitions of a texmf.cnf file.
+     */
+    private void readConfiguration(File cnf) throws IOException {
+        stamps.put(cnf, Long.valueOf(cnf.lastModified()));
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(cnf), "ISO-8859-1"));
+        try {
+            StringBuilder line = new StringBuilder();
+            String l;
+            while ((l = reader.readLine()) != null) {
+                if (line.length() > 0) {
+                    l = l.trim();
+                }
+                if (l.endsWith("\\")) {
+                    // continues on the next line
+                    line.append(l, 0, l.length() - 1);
+                    continue;
+                }
+                line.append(l);
+                parseDefinition(line.toString().trim());
+                line.setLength(0);
+            }
+            parseDefinition(line.toString().trim());
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Parses a line of the form <code>VAR[.progname] [=] value</code>.
+     */
+    private void parseDefinition(String line) {
+        if (line.length() == 0 || line.charAt(0) == '%' || line.charAt(0) == '#') {
+            return;
+        }
+        int i = 0;
+        while (i < line.length() && !Character.isWhitespace(line.charAt(i))
+                && line.charAt(i) != '=') {
+            i++;
+        }
+        String name = line.substring(0, i);
+        while (i < line.length() && Character.isWhitespace(line.charAt(i))) {
+            i++;
+        }
+        if (i < line.length() && line.charAt(i) == '=') {
+            i++;
+        }
+        String value = line.substring(i);
+        int comment = value.indexOf(" %");
+        if (comment >= 0) {
+            value = value.substring(0, comment);
+        }
+        value = value.trim();
+        if (name.length() > 0 && value.length() > 0 && !variables.containsKey(name)) {
+            variables.put(name, value);
+        }
+    }
+
+    /**
+     * Reads an ls-R database.
+     */
+    private FileIndex readDatabase(File db, String root) throws IOException {
+        stamps.put(db, Long.valueOf(db.lastModified()));
+        FileIndex index = new FileIndex(root, 0);
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(db), "ISO-8859-1"));
+        try {
+            String dir = root;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.length() == 0 || line.charAt(0) == '%') {
+                    continue;
+                }
+                if (line.endsWith(":")) {
+                    dir = line.substring(0, line.length() - 1);
+                    if (dir.startsWith("./")) {
+                        dir = root + dir.substring(1);
+                    } else if (dir.equals(".")) {
+                        dir = root;
+                    }
+                    dir = stripPath(dir);
+                } else {
+                    index.add(line, dir);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return index;
+    }
+
+    /**
+     * Looks up the file in the search path of its type.
+     *
+     * @return the path, or null if the type is unknown or the file was
+     *  not found
+     */
+    private String search(File dir, String name, String progname) {
+        File file = new File(name);
+        if (file.isAbsolute()) {
+            return file.isFile() ? name : null;
+        }
+        String baseName = name.substring(name.lastIndexOf('/') + 1);
+        String subDir = name.substring(0, name.length() - baseName.length());
+        int dot = baseName.lastIndexOf('.');
+        String suffix = dot >= 0 ? baseName.substring(dot + 1) : "tex";
+        String var = FORMATS.get(suffix);
+        if (var == null) {
+            return null;
+        }
+
+        List<String> names = new ArrayList<String>(2);
+        if (dot < 0) {
+            // like TeX, try the name with the default suffix first
+            names.add(baseName + ".tex");
+        }
+        names.add(baseName);
+
+        for (String element : getPath(var, progname)) {
+            boolean dbOnly = element.startsWith("!!");
+            if (dbOnly) {
+                element = element.substring(2);
+            }
+            boolean recursive = element.endsWith("//");
+            // the directories before and after each // in the element
+            String[] parts = stripPath(element).split("//");
+            for (String n : names) {
+                String found = searchElement(dir, parts, recursive, dbOnly, subDir, n);
+                if (found != null) {
+                    return found;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Looks up a file in one element of a search path.
+     *
+     * @param parts the directories of the element before and after each //
+     * @param recursive whether the element ends with //
+     */
+    private String searchElement(File workDir, String[] parts, boolean recursive, boolean dbOnly,
+            String subDir, String name) {
+        String path = parts[0];
+        for (FileIndex db : databases) {
+            if (isParent(db.root, path)) {
+                // a relevant database is the only place to look
+                return findInIndex(db, path, parts, recursive, subDir, name);
+            }
+        }
+        if (dbOnly) {
+            return null;
+        }
+
+        File base = new File(path);
+        boolean relative = !base.isAbsolute();
+        if (relative) {
+            if (workDir == null) {
+                return null;
+            }
+            base = new File(workDir, path);
+        }
+        String found;
+        if (recursive || parts.length > 1) {
+            found = findInIndex(getTree(base), toSlashes(base.getPath()), parts, recursive,
+                    subDir, name);
+        } else {
+            File file = new File(base, subDir + name);
+            found = file.isFile() ? toSlashes(file.getPath()) : null;
+        }
+        if (found != null && relative) {
+            // like kpsewhich, relative to the working directory
+            return path + found.substring(toSlashes(base.getPath()).length());
+        }
+        return found;
+    }
+
+    /**
+     * Looks up a file in the directories of an index that match a search
+     * path element.
+     *
+     * @param base the directory of the element before the first //
+     */
+    private static String findInIndex(FileIndex index, String base, String[] parts,
+            boolean recursive, String subDir, String name) {
+        List<String> dirs = index.dirs.get(name);
+        if (dirs == null) {
+            return null;
+        }
+        Pattern pattern = getPattern(base, parts, recursive, subDir);
+        for (String d : dirs) {
+            // like kpathsea, skip directories and stale database entries
+            if (pattern.matcher(d).matches() && new File(d, name).isFile()) {
+                return d + "/" + name;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns a pattern that matches the directories of a search path
+     * element. Each // matches the directory itself and all of its
+     * subdirectories.
+     */
+    private static Pattern getPattern(String base, String[] parts, boolean recursive,
+            String subDir) {
+        StringBuilder regex = new StringBuilder(Pattern.quote(base));
+        for (int i = 1; i < parts.length; i++) {
+            regex.append("(/.*)?/").append(Pattern.quote(parts[i]));
+        }
+        if (recursive) {
+            regex.append("(/.*)?");
+        }
+        if (subDir.length() > 0) {
+            regex.append('/').append(Pattern.quote(stripPath(subDir)));
+        }
+        return Pattern.compile(regex.toString());
+    }
+
+    /**
+     * Returns the index of a directory tree without a database.
+     */
+    private FileIndex getTree(File root) {
+        String key = toSlashes(root.getPath());
+        FileIndex tree = trees.get(key);
+        long now = System.currentTimeMillis();
+        if (tree == null || now - tree.time >= CACHE_TIMEOUT) {
+            tree = new FileIndex(key, now);
+            addTree(tree, root, key, new HashSet<String>());
+            trees.put(key, tree);
+        }
+        return tree;
+    }
+
+    private static void addTree(FileIndex tree, File dir, String path, Set<String> visited) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        try {
+            if (!visited.add(dir.getCanonicalPath())) {
+                // a link back to a parent
+                return;
+            }
+        } catch (IOException e) {
+            return;
+        }
+        for (int i = 0; i < files.length; i++) {
+            String name = files[i].getName();
+            tree.add(name, path);
+            if (files[i].isDirectory() && !name.startsWith(".")) {
+                addTree(tree, files[i], path + "/" + name, visited);
+            }
+        }
+    }
+
+    /**
+     * Returns the value of a search path variable, expanded and split
+     * into elements.
+     */
+    private List<String> getPath(String var, String progname) {
+        String value = getValue(var, progname, new HashSet<String>());
+        if (value == null) {
+            return Collections.emptyList();
+        }
+        List<String> path = new ArrayList<String>();
+        String home = environment.get(WINDOWS ? "USERPROFILE" : "HOME");
+        for (String element : expandPath(value)) {
+            element = element.trim();
+            if (element.length() == 0) {
+                continue;
+            }
+            if (element.endsWith("//")) {
+                element = stripPath(element) + "//";
+            }
+            String prefix = element.startsWith("!!") ? "!!" : "";
+            String rest = element.substring(prefix.length());
+            if (home != null && (rest.equals("~") || rest.startsWith("~/"))) {
+                element = prefix + toSlashes(home) + rest.substring(1);
+            }
+            path.add(element);
+        }
+        return path;
+    }
+
+    /**
+     * Returns the expanded value of a variable, taken from the environment
+     * first and from the configuration files second. Empty elements of an
+     * environment value are replaced with the configured value.
+     */
+    private String getValue(String var, String progname, Set<String> expanding) {
+        if (!expanding.add(var)) {
+            // recursive definition
+            return null;
+        }
+        try {
+            String env = null;
+            if (progname.length() > 0) {
+                env = environment.get(var + "." + progname);
+                if (env == null) {
+                    env = environment.get(var + "_" + progname);
+                }
+            }
+            if (env == null) {
+                env = environment.get(var);
+            }
+            String cnf = null;
+            if (progname.length() > 0) {
+                cnf = variables.get(var + "." + progname);
+            }
+            if (cnf == null) {
+                cnf = variables.get(var);
+            }
+            if (var.equals("progname")) {
+                cnf = progname;
+            }
+
+            String value = cnf != null ? expand(cnf, progname, expanding) : null;
+            if (env != null) {
+                env = expand(env, progname, expanding);
+                if (value != null) {
+                    env = fillEmptyElements(env, value);
+                }
+                value = env;
+            }
+            return value;
+        } finally {
+            expanding.remove(var);
+        }
+    }
+
+    private static String fillEmptyElements(String path, String fill) {
+        String sep = WINDOWS ? ";" : ":";
+        if (path.startsWith(sep)) {
+            path = fill + path;
+        }
+        if (path.endsWith(sep)) {
+            path = path + fill;
+        }
+        return path.replace(sep + sep, sep + fill + sep);
+    }
+
+    /**
+     * Replaces the variable references $VAR and ${VAR} in the given value.
+     */
+    private String expand(String value, String progname, Set<String> expanding) {
+        if (value.indexOf('$') < 0) {
+            return value;
+        }
+        StringBuilder sb = new StringBuilder(value.length() * 2);
+        int i = 0;
+        while (i < value.length()) {
+            char c = value.charAt(i);
+            if (c != '$' || i + 1 == value.length()) {
+                sb.append(c);
+                i++;
+                continue;
+            }
+            String var;
+            if (value.charAt(i + 1) == '{') {
+                int end = value.indexOf('}', i + 2);
+                if (end < 0) {
+                    sb.append(c);
+                    i++;
+                    continue;
+                }
+                var = value.substring(i + 2, end);
+                i = end + 1;
+            } else {
+                int end = i + 1;
+                while (end < value.length() && (Character.isLetterOrDigit(value.charAt(end))
+                        || value.charAt(end) == '_')) {
+                    end++;
+                }
+                var = value.substring(i + 1, end);
+                i = end;
+            }
+            String v = getValue(var, progname, expanding);
+            if (v != null) {
+                sb.append(v);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Splits a search path into its elements and expands the braces
+     * {a,b} in each of them.
+     */
+    private static List<String> expandPath(String path) {
+        List<String> elements = new ArrayList<String>();
+        for (String part : splitPath(path)) {
+            expandBraces(part, elements);
+        }
+        // the alternatives of braces may contain separators, too
+        List<String> result = new ArrayList<String>(elements.size());
+        for (String element : elements) {
+            result.addAll(splitPath(element));
+        }
+        return result;
+    }
+
+    /**
+     * Splits a path at the separators outside of braces.
+     */
+    private static List<String> splitPath(String path) {
+        List<String> parts = new ArrayList<String>();
+        int depth = 0;
+        int start = 0;
+        for (int i = 0; i < path.length(); i++) {
+            char c = path.charAt(i);
+            if (c == '{') {
+                depth++;
+            } else if (c == '}') {
+                depth--;
+            } else if (depth == 0 && (c == ';' || (c == ':' && !WINDOWS))) {
+                parts.add(path.substring(start, i));
+                start = i + 1;
+            }
+        }
+        parts.add(path.substring(start));
+        return parts;
+    }
+
+    private static void expandBraces(String s, List<String> result) {
+        int open = s.indexOf('{');
+        if (open < 0) {
+            result.add(s);
+            return;
+        }
+        int depth = 0;
+        int start = open + 1;
+        List<String> alternatives = new ArrayList<String>();
+        int close = -1;
+        for (int i = open; i < s.length() && close < 0; i++) {
+            char c = s.charAt(i);
+            if (c == '{') {
+                depth++;
+            } else if (c == '}') {
+                depth--;
+                if (depth == 0) {
+                    alternatives.add(s.substring(start, i));
+                    close = i;
+                }
+            } else if (c == ',' && depth == 1) {
+                alternatives.add(s.substring(start, i));
+                start = i + 1;
+            }
+        }
+        if (close < 0) {
+            // unbalanced, taken literally
+            result.add(s);
+            return;
+        }
+        String prefix = s.substring(0, open);
+        String suffix = s.substring(close + 1);
+        for (String alternative : alternatives) {
+            expandBraces(prefix + alternative + suffix, result);
+        }
+    }
+
+    /**
+     * Removes the trailing slashes of a path and uses forward slashes.
+     */
+    private static String stripPath(String path) {
+        path = toSlashes(path);
+        int end = path.length();
+        while (end > 1 && path.charAt(end - 1) == '/') {
+            end--;
+        }
+        return path.substring(0, end);
+    }
+
+    private static String toSlashes(String path) {
+        return WINDOWS ? path.replace('\\', '/') : path;
+    }
+
+    /**
+     * Checks if the directory is the given parent or one of its
+     * subdirectories.
+     */
+    private static boolean isParent(String parent, String dir) {
+        return dir.startsWith(parent) && (dir.length() == parent.length()
+                || dir.charAt(parent.length()) == '/' || parent.endsWith("/"));
+    }
+}
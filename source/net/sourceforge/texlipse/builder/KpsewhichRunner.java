@@ -10,7 +10,10 @@
 package net.sourceforge.texlipse.builder;
 
 import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
 
+import net.sourceforge.texlipse.PathUtils;
 import net.sourceforge.texlipse.TexlipsePlugin;
 import net.sourceforge.texlipse.properties.TexlipseProperties;
 
@@ -31,6 +34,9 @@ import net.sourceforge.texlipse.builder.factory.RunnerDescription;
  * kpathsea doesn't have input and output filetypes etc, but
  * this lets us integrate with other parts of TeXlipse with
  * minimal effort.
+ * <p>
+ * Files and search paths are looked up by a {@link KpathseaResolver}
+ * first, and kpsewhich is run only if it cannot answer.
  * 
  * @author Christopher Hoskin
  *
@@ -43,6 +49,11 @@ public class KpsewhichRunner implements ProgramRunner {
     // the currently running program
     private ExternalProgram extrun;
 
+    // the resolver for the current program path
+    private KpathseaResolver resolver;
+    private String resolverProgram;
+    private String[] resolverEnv;
+
     public KpsewhichRunner(RunnerDescription description) {
         super();
         this.description = description;
@@ -136,15 +147,46 @@ public class KpsewhichRunner implements ProgramRunner {
 	 * @return the path to the file or an empty string if no path was found
 	 */
 	public String getFile(IResource resource, String filename, String progname) throws CoreException {
+	    File dir = resource.getLocation().toFile().getParentFile();
+	    KpathseaResolver kpse = getResolver();
+	    String path = kpse.findFile(dir, filename, progname);
+	    if (path != null) {
+	        return path;
+	    }
 	    
         String[] command = {getProgramPath(),"-progname="+progname, filename};
         
 		String output = run(command, resource);
 		       
         String[] outList = output.split("\r\n|\r|\n");
+        kpse.putResult(dir, filename, progname, outList[0]);
 		return outList[0];
 	}
 	
+	/**
+	 * Returns the resolver for the current kpsewhich program. A new resolver
+	 * is created, if the program path or the environment has changed.
+	 * 
+	 * @return the resolver
+	 */
+	public synchronized KpathseaResolver getResolver() {
+	    String programPath = getProgramPath();
+	    String[] envp = PathUtils.getMergedEnv(TexlipseProperties.BUILD_ENV_SETTINGS, null);
+	    if (resolver == null || envp != resolverEnv || (programPath == null ? resolverProgram != null
+	            : !programPath.equals(resolverProgram))) {
+	        Map<String, String> env = new HashMap<String, String>();
+	        for (int i = 0; i < envp.length; i++) {
+	            int index = envp[i].indexOf('=');
+	            env.put(envp[i].substring(0, index), envp[i].substring(index + 1));
+	        }
+	        resolver = new KpathseaResolver(programPath != null && programPath.length() > 0
+	                ? new File(programPath) : null, env);
+	        resolverProgram = programPath;
+	        resolverEnv = envp;
+	    }
+	    return resolver;
+	}
+	
 	/**
 	 * Gets the paths Kpathsea will search for a particular type of file
 	 * @param resource Directory to run kpsewhich in
@@ -153,6 +195,15 @@ public class KpsewhichRunner implements ProgramRunner {
 	 * @throws CoreException Thrown if running kpsewhich throws an exception
 	 */
 	public Kpath[] getSearchPaths(IResource resource, String ext) throws CoreException {
+	    String[] path = getResolver().getSearchPath(ext, "kpsewhich");
+	    if (path != null) {
+	        Kpath[] kpaths = new Kpath[path.length];
+	        for (int i = 0; i < path.length; i++) {
+	            kpaths[i] = new Kpath(path[i]);
+	        }
+	        return kpaths;
+	    }
+	    
 		String[] command = {getProgramPath(), "-show-path", ext};
 		String output = run(command, resource);
 	    
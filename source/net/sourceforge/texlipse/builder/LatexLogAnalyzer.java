@@ -786,7 +786,35 @@ public class LatexLogAnalyzer {
      * @param text log output
      */
     public void parseText(final String text) {
+        beginLog();
+        parseLines(text);
+        endLog();
+    }
+
+    /**
+     * Prepares parsing a log, which is passed to <code>parseLine()</code>
+     * or <code>parseLines()</code> piece by piece, e.g. while the latex
+     * program is still running. Ignores the first line (version info).
+     */
+    public void beginLog() {
         skip = 1;
+    }
+
+    /**
+     * Finishes parsing the log started with <code>beginLog()</code>.
+     */
+    public void endLog() {
+        if (!fileStack.isEmpty()) {
+            parsingStackErrors = true;
+        }
+    }
+
+    /**
+     * Parses the given lines of log output text.
+     *
+     * @param text log output
+     */
+    public void parseLines(final String text) {
         int i = 0;
         // Not using the StringTokenizer, in order to consider empty lines.
         int next = text.indexOf('\n');
@@ -803,9 +831,6 @@ public class LatexLogAnalyzer {
         if (i < text.length()) {
             parseLine(text.substring(i));
         }
-        if (!fileStack.isEmpty()) {
-            parsingStackErrors = true;
-        }
     }
 
     /**
@@ -33,6 +33,9 @@ public class LatexRunner extends AbstractProgramRunner {
 
     private FlsAnalyzer flsAnalyzer;
 
+    // analyzes the log while latex is running
+    private LatexLogAnalyzer logAnalyzer;
+
     /**
      * Check if '-recorder' command argument is present for latex runner and
      * adjust cycle detector settings accordingly
@@ -63,6 +66,21 @@ public class LatexRunner extends AbstractProgramRunner {
         super.run(resource);
     }
 
+    /**
+     * Analyzes the output as it is produced, so that the markers appear
+     * while latex is running and the log does not need to be kept in memory.
+     */
+    protected OutputListener getOutputListener(IResource resource) {
+        final LatexLogAnalyzer analyzer = new LatexLogAnalyzer(resource);
+        analyzer.beginLog();
+        logAnalyzer = analyzer;
+        return new OutputListener() {
+            public void lineRead(String line) {
+                analyzer.parseLine(line);
+            }
+        };
+    }
+
     protected String[] getQueryString() {
         return new String[] { "\nPlease type another input file name:" , "\nEnter file name:" };
     }
@@ -71,13 +89,23 @@ public class LatexRunner extends AbstractProgramRunner {
      * Parse the output of the LaTeX program.
      * 
      * @param resource the input file that was processed
-     * @param output the output of the external program
+     * @param output the output of the external program not yet analyzed
      * @return true, if error messages were found in the output, false otherwise
      */
     protected boolean parseErrors(IResource resource, String output) {
         final IProject project = resource.getProject();
-        final LatexLogAnalyzer parser = new LatexLogAnalyzer(resource);
-        parser.parseText(output);
+        final LatexLogAnalyzer parser;
+        if (logAnalyzer != null) {
+            // continue with the rest of the output, i.e. the error stream
+            parser = logAnalyzer;
+            logAnalyzer = null;
+            parser.parseLines(output);
+            parser.endLog();
+        }
+        else {
+            parser = new LatexLogAnalyzer(resource);
+            parser.parseText(output);
+        }
 
         if (parser.hasParsingStackErrors()) {
             TexlipsePlugin.log("Error while parsing the LaTeX output. " +
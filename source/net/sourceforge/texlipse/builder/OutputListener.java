@@ -0,0 +1,27 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2026 by the TeXlapse Team.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package net.sourceforge.texlipse.builder;
+
+
+/**
+ * Receives the output of an external program line by line while
+ * the program is still running.
+ *
+ * @see ExternalProgram#setOutputListener(OutputListener)
+ */
+public interface OutputListener {
+
+    /**
+     * Called for every line the program writes to its standard output.
+     *
+     * @param line the line without the line terminator
+     */
+    public void lineRead(String line);
+}
@@ -51,6 +51,12 @@ public class OutputScanner {
     // output messages to console
     private String consoleOutput;
 
+    // receives the complete lines, if set
+    private OutputListener listener;
+
+    // the amount of scanned input kept when the lines go to a listener
+    private static final int MAX_KEPT_LENGTH = 4096;
+
     /**
      * Create new OutputProducer.
      * 
@@ -70,7 +76,19 @@ public class OutputScanner {
     }
 
     /**
-     * @return the contents of the buffer
+     * Sets the listener to pass the scanned lines to. The lines handed
+     * to the listener are not kept in the buffer, only as much of the
+     * input as is needed to detect the trigger strings.
+     *
+     * @param listener the listener, or null to keep all of the input
+     */
+    public void setOutputListener(OutputListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * @return the contents of the buffer, i.e. the input not passed
+     *  to the listener
      */
     public String getText() {
         return sb.toString();
@@ -130,20 +148,43 @@ public class OutputScanner {
                     }
                 }
                 
-                if (consoleOutput != null && (char)nextByte == '\n') {
+                if ((consoleOutput != null || listener != null) && (char)nextByte == '\n') {
                     
                     int lf = 1;
                     if (sb.length() >= 2 && sb.charAt(sb.length()-2) == '\r') { // fix for windows linefeeds
                         lf++;
                     }
                     // don't print the whole buffer as the printToConsole() outputs a linefeed
-                    BuilderRegistry.printToConsole(consoleOutput + "> " + sb.substring(startOfLine, sb.length()-lf));
+                    String line = sb.substring(startOfLine, sb.length()-lf);
+                    if (consoleOutput != null) {
+                        BuilderRegistry.printToConsole(consoleOutput + "> " + line);
+                    }
+                    if (listener != null) {
+                        listener.lineRead(line);
+                        // keep only the tail needed for the trigger strings and the query dialog
+                        if (sb.length() > MAX_KEPT_LENGTH) {
+                            int cut = sb.length() - MAX_KEPT_LENGTH;
+                            sb.delete(0, cut);
+                            okIndex = Math.max(0, okIndex - cut);
+                        }
+                    }
                     startOfLine = sb.length();
                 }
                 
             }
         } catch (IOException e) {
         }
+        if (listener != null) {
+            // the last line might not be terminated
+            if (startOfLine < sb.length()) {
+                int end = sb.length();
+                if (sb.charAt(end-1) == '\r') {
+                    end--;
+                }
+                listener.lineRead(sb.substring(startOfLine, end));
+            }
+            sb.setLength(0);
+        }
         return true;
     }
     
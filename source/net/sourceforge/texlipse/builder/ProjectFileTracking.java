@@ -1,6 +1,5 @@
 package net.sourceforge.texlipse.builder;
 
-import java.io.IOException;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -382,33 +381,16 @@ public class ProjectFileTracking {
             IProgressMonitor monitor) throws CoreException {
         ProjectFileCache cache = ProjectFileCache.getInstance(project);
         cache.restore(monitor);
-        Set<IPath> initialChanges = new HashSet<IPath>();
+        Map<IPath, Long> mergeNames = new HashMap<IPath, Long>();
         for (Entry<IPath, Long> fileEntry : buildDirNames.entrySet()) {
-            IPath path = fileEntry.getKey();
-            final String fileName = path.lastSegment();
+            final String fileName = fileEntry.getKey().lastSegment();
             if (hasMatchingExt(fileName, tempExts) || hasMatchingExt(fileName, addExts)) {
-                try {
-                    if (cache.mergeTrackedFile(path, fileEntry.getValue())) {
-                        initialChanges.add(path);
-                    }
-                }
-                catch (IOException e) {
-                    // Do not consider files which cannot be read
-                }
-            }
-        }
-        for (Entry<IPath, Long> fileEntry : buildTempNames.entrySet()) {
-            IPath path = fileEntry.getKey();
-            try {
-                if (cache.mergeTrackedFile(path, fileEntry.getValue())) {
-                    initialChanges.add(path);
-                }
-            }
-            catch (IOException e) {
-                // Do not consider files which cannot be read
+                mergeNames.put(fileEntry.getKey(), fileEntry.getValue());
             }
         }
-        return initialChanges;
+        mergeNames.putAll(buildTempNames);
+        // Files which cannot be read are not considered
+        return cache.mergeTrackedFiles(mergeNames);
     }
 
     /**
@@ -449,27 +431,20 @@ public class ProjectFileTracking {
             IProgressMonitor monitor) throws CoreException {
         container.refreshLocal(IProject.DEPTH_INFINITE, monitor);
         ProjectFileCache cache = ProjectFileCache.getInstance(project);
-        Set<IPath> newNames = new HashSet<IPath>();
         Map<IPath, Long> currentNames = new HashMap<IPath, Long>();
         // Scan for current files in the build folder
         recursiveScanFiles(container, currentNames, monitor);
+        Map<IPath, Long> trackedNames = new HashMap<IPath, Long>();
         for (Entry<IPath, Long> nameEntry : currentNames.entrySet()) {
-            // Check which of the files are new
-            IPath filePath = nameEntry.getKey();
-            Long modStamp = nameEntry.getValue();
-            final String fileName = filePath.lastSegment();
+            final String fileName = nameEntry.getKey().lastSegment();
             if (hasMatchingExt(fileName, tempExts) || hasMatchingExt(fileName, addExts)) {
-                try {
-                    if (cache.updateTrackedFile(filePath, modStamp)) {
-                        newNames.add(filePath);
-                    }
-                }
-                catch (IOException e) {
-                    // Do not consider files which cannot be read
-                }
+                trackedNames.put(nameEntry.getKey(), nameEntry.getValue());
             }
-            monitor.worked(1);
         }
+        // Only files with new modification stamps are read, in parallel;
+        // files which cannot be read are not considered
+        Set<IPath> newNames = cache.updateTrackedFiles(trackedNames);
+        monitor.worked(currentNames.size());
         return newNames;
     }
 
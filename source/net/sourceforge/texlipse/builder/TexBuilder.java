@@ -9,10 +9,16 @@
  */
 package net.sourceforge.texlipse.builder;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import net.sourceforge.texlipse.TexlipsePlugin;
 import net.sourceforge.texlipse.auxparser.AuxFileParser;
+import net.sourceforge.texlipse.builder.cache.ProjectFileCache;
 import net.sourceforge.texlipse.builder.factory.BuilderDescription;
 import net.sourceforge.texlipse.properties.TexlipseProperties;
 import net.sourceforge.texlipse.viewer.ViewerManager;
@@ -21,6 +27,7 @@ import org.eclipse.core.resources.IContainer;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.Platform;
 import org.eclipse.core.runtime.QualifiedName;
 import org.eclipse.jface.dialogs.MessageDialogWithToggle;
@@ -36,6 +43,9 @@ import org.eclipse.swt.widgets.Shell;
  */
 public class TexBuilder extends AbstractLatexBuilder implements AdaptableBuilder {
 
+    // the files written by latex, which are read again by the next run
+    private static final String[] AUX_FILE_EXTS = { ".aux", ".toc", ".lof", ".lot", ".out", ".nav", ".snm" };
+
     private boolean biblatexMode;
     private String biblatexBackend;
     private ProgramRunner bibtex;
@@ -218,7 +228,7 @@ public class TexBuilder extends AbstractLatexBuilder implements AdaptableBuilder
             TexlipseProperties.setSessionProperty(project, TexlipseProperties.BIBFILES_CHANGED, null);
             
             if (runIdx != null) {
-                makeIndex.run(resource);
+                runMakeIndex(resource, runIdx);
                 if (stopped)
                     return;
                 monitor.worked(10);
@@ -234,25 +244,8 @@ public class TexBuilder extends AbstractLatexBuilder implements AdaptableBuilder
                 monitor.worked(10);
             }
               
-            try {
-                latex.run(resource);
-            } catch (BuilderCoreException ex) {
-                //if (!error)
-                //    throw ex;
-            }
-            if (stopped)
-                return;
-            monitor.worked(10);
-            clearMarkers(project);
-            try {
-                latex.run(resource);
-            } catch (BuilderCoreException ex) {
-                //if (!error)
-                //    throw ex;
-            }
-            if (stopped)
+            if (!rerunLatex(resource, runIdx, 2))
                 return;
-            monitor.worked(10);
             
         } else if (rerun != null || runIdx != null || runNomencl != null) {
 
@@ -263,7 +256,7 @@ public class TexBuilder extends AbstractLatexBuilder implements AdaptableBuilder
             }*/
             
             if (runIdx != null) {
-                makeIndex.run(resource);
+                runMakeIndex(resource, runIdx);
                 if (stopped)
                     return;
                 monitor.worked(10);
@@ -279,18 +272,200 @@ public class TexBuilder extends AbstractLatexBuilder implements AdaptableBuilder
                 monitor.worked(10);
             }
             
+            if (!rerunLatex(resource, runIdx, 1))
+                return;
+            
+            TexlipseProperties.setSessionProperty(resource.getProject(), TexlipseProperties.SESSION_LATEX_RERUN, null);
+        }
+    }
+
+    /**
+     * Reruns latex after bibtex or makeindex. If the convergence mode is enabled
+     * in the preferences, latex is rerun until the auxiliary files are no longer
+     * changed by a run and latex does not ask for a rerun, but at most the
+     * maximum amount of build cycles. If a run changes the index file, makeindex
+     * is run again before the next run. Otherwise,
+     * latex is run the given number of times.
+     * 
+     * @param resource the resource to build
+     * @param idxFile the index file, or null if makeindex is not used
+     * @param runs the number of runs if the convergence mode is disabled
+     * @return false, if the build was stopped
+     * @throws CoreException if latex is not found
+     */
+    private boolean rerunLatex(IResource resource, IResource idxFile, int runs) throws CoreException {
+        final boolean converge = TexlipsePlugin.getDefault().getPreferenceStore()
+                .getBoolean(TexlipseProperties.BUILD_RERUN_CONVERGE);
+        Map<String, byte[]> hashes = null;
+        if (converge) {
+            runs = Math.max(1, TexlipsePlugin.getDefault().getPreferenceStore()
+                    .getInt(TexlipseProperties.BUILD_CYCLE_MAX));
+            hashes = getAuxFileHashes(resource);
+        }
+        for (int i = 0; i < runs; i++) {
+            // later runs replace the markers of the previous run
+            if (i > 0) {
+                AbstractProgramRunner.beginMarkerUpdate(resource.getProject());
+            }
+            if (converge) {
+                TexlipseProperties.setSessionProperty(resource.getProject(),
+                        TexlipseProperties.SESSION_LATEX_RERUN, null);
+            }
             try {
                 latex.run(resource);
             } catch (BuilderCoreException ex) {
                 //if (!error)
-                    //throw ex;
+                //    throw ex;
+            } finally {
+                if (i > 0) {
+                    AbstractProgramRunner.endMarkerUpdate(resource.getProject());
+                }
             }
             if (stopped)
-                return;
+                return false;
             monitor.worked(10);
             
-            TexlipseProperties.setSessionProperty(resource.getProject(), TexlipseProperties.SESSION_LATEX_RERUN, null);
+            if (converge) {
+                Map<String, byte[]> newHashes = getAuxFileHashes(resource);
+                Object rerun = TexlipseProperties.getSessionProperty(resource.getProject(),
+                        TexlipseProperties.SESSION_LATEX_RERUN);
+                boolean indexChanged = idxFile != null && isIndexChanged(idxFile);
+                if (rerun == null && !indexChanged
+                        && newHashes != null && equalHashes(hashes, newHashes)) {
+                    break;
+                }
+                hashes = newHashes;
+                if (indexChanged) {
+                    runMakeIndex(resource, idxFile);
+                    if (stopped)
+                        return false;
+                }
+            }
         }
+        return true;
+    }
+
+    /**
+     * Computes the hash values of the auxiliary files written by latex. These
+     * are the files in the build directory, i.e. the directory of the given
+     * resource, and the aux files of the files included from subdirectories,
+     * which latex writes to the same subdirectories of the build directory.
+     * Other subdirectories are not searched.
+     * 
+     * @param resource the resource to build
+     * @return the hash values by relative path, or null if a file could not be read
+     */
+    private static Map<String, byte[]> getAuxFileHashes(IResource resource) {
+        final Map<String, byte[]> hashes = new HashMap<String, byte[]>();
+        final IContainer buildDir = resource.getParent();
+        final File dir = buildDir.getLocation().toFile();
+        final File[] files = dir.listFiles();
+        if (files == null) {
+            return null;
+        }
+        for (File file : files) {
+            final String name = file.getName();
+            for (String ext : AUX_FILE_EXTS) {
+                if (name.endsWith(ext)) {
+                    if (file.isFile() && !addFileHash(file, name, hashes)) {
+                        return null;
+                    }
+                    break;
+                }
+            }
+        }
+        
+        // the input files of the last latex run
+        final IPath dirPath = buildDir.getProjectRelativePath();
+        for (IPath input : getInputFiles(resource.getProject())) {
+            if (input.segmentCount() > dirPath.segmentCount() + 1 && dirPath.isPrefixOf(input)
+                    && TexlipseProperties.INPUT_FORMAT_TEX.equals(input.getFileExtension())) {
+                final String name = input.removeFirstSegments(dirPath.segmentCount())
+                        .removeFileExtension().addFileExtension(TexlipseProperties.OUTPUT_FORMAT_AUX)
+                        .toString();
+                final File file = new File(dir, name);
+                if (file.isFile() && !addFileHash(file, name, hashes)) {
+                    return null;
+                }
+            }
+        }
+        return hashes;
+    }
+
+    /**
+     * Adds the hash value of the given file to the map.
+     * 
+     * @param file the file
+     * @param name the path of the file relative to the build directory
+     * @param hashes the map of hash values by relative path
+     * @return false, if the file could not be read
+     */
+    private static boolean addFileHash(File file, String name, Map<String, byte[]> hashes) {
+        try {
+            hashes.put(name, ProjectFileCache.getFileHash(file));
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Runs makeindex and remembers the hash value of the index file it has read.
+     * 
+     * @param resource the resource to build
+     * @param idxFile the index file
+     * @throws CoreException if makeindex is not found
+     */
+    private void runMakeIndex(IResource resource, IResource idxFile) throws CoreException {
+        final byte[] hash = getIndexHash(idxFile);
+        makeIndex.run(resource);
+        TexlipseProperties.setSessionProperty(resource.getProject(),
+                TexlipseProperties.SESSION_MAKEINDEX_IDX_HASH, hash);
+    }
+
+    /**
+     * Checks if makeindex has to be run for the given index file, i.e. if the
+     * index file has changed since the last makeindex run or there is no index
+     * written by makeindex.
+     * 
+     * @param idxFile the index file
+     * @return true, if makeindex has to be run
+     */
+    private static boolean isIndexChanged(IResource idxFile) {
+        final byte[] oldHash = (byte[]) TexlipseProperties.getSessionProperty(idxFile.getProject(),
+                TexlipseProperties.SESSION_MAKEINDEX_IDX_HASH);
+        final File indFile = idxFile.getLocation().removeFileExtension()
+                .addFileExtension(TexlipseProperties.OUTPUT_FORMAT_IDX).toFile();
+        if (oldHash == null || !indFile.exists()) {
+            return true;
+        }
+        return !Arrays.equals(oldHash, getIndexHash(idxFile));
+    }
+
+    /**
+     * @return the hash value of the index file, or null if it could not be read
+     */
+    private static byte[] getIndexHash(IResource idxFile) {
+        try {
+            return ProjectFileCache.getFileHash(idxFile.getLocation().toFile());
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return true, if both maps contain the same files with equal hash values
+     */
+    private static boolean equalHashes(Map<String, byte[]> oldHashes, Map<String, byte[]> newHashes) {
+        if (oldHashes == null || oldHashes.size() != newHashes.size()) {
+            return false;
+        }
+        for (Map.Entry<String, byte[]> entry : newHashes.entrySet()) {
+            if (!Arrays.equals(oldHashes.get(entry.getKey()), entry.getValue())) {
+                return false;
+            }
+        }
+        return true;
     }
 
     public void updateBuilder(IProject project) {
@@ -315,6 +490,7 @@ public class TexBuilder extends AbstractLatexBuilder implements AdaptableBuilder
      * @param source buildable resource inside project 
      * @return handle to index file or null if not found.
      *         Returns null also if the index file is older than the current output file
+     *         or has not changed since the last makeindex run
      */
     private IResource findIndex(IProject project, IResource source) {
         
@@ -335,6 +511,11 @@ public class TexBuilder extends AbstractLatexBuilder implements AdaptableBuilder
             return null;
         }
         
+        // makeindex would produce the same index again
+        if (!isIndexChanged(idxFile)) {
+            return null;
+        }
+        
         return idxFile;
     }
     
@@ -105,26 +105,32 @@ public class TexCycleBuilder extends AbstractLatexBuilder implements CycleBuilde
 
         cycleDetector.checkInitialLatexOutput(monitor);
         while (!cycleDetector.isDone() && (!haltOnInvalid || brokenRunners.isEmpty())) {
-            clearMarkers(project);
-            utilRunner = cycleDetector.getNextRunner();
-            while (utilRunner != null && (!haltOnInvalid || brokenRunners.isEmpty())) {
+            // each cycle replaces the markers of the previous one
+            AbstractProgramRunner.beginMarkerUpdate(project);
+            try {
+                utilRunner = cycleDetector.getNextRunner();
+                while (utilRunner != null && (!haltOnInvalid || brokenRunners.isEmpty())) {
+                    if (stopped) {
+                        return;
+                    }
+                    if (utilRunner.isValid()) {
+                        utilRunner.run(resource);
+                        monitor.worked(10);
+                        cycleDetector.checkRunnerOutput(monitor);
+                    }
+                    else {
+                        brokenRunners.add(utilRunner.getProgramName());
+                    }
+                    utilRunner = cycleDetector.getNextRunner();
+                }
                 if (stopped) {
                     return;
                 }
-                if (utilRunner.isValid()) {
-                    utilRunner.run(resource);
-                    monitor.worked(10);
-                    cycleDetector.checkRunnerOutput(monitor);
-                }
-                else {
-                    brokenRunners.add(utilRunner.getProgramName());
-                }
-                utilRunner = cycleDetector.getNextRunner();
+                latex.run(resource);
             }
-            if (stopped) {
-                return;
+            finally {
+                AbstractProgramRunner.endMarkerUpdate(project);
             }
-            latex.run(resource);
             monitor.worked(10);
             cycleDetector.checkLatexOutput(monitor);
         }
@@ -1,15 +1,26 @@
 package net.sourceforge.texlipse.builder.cache;
 
-import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IProject;
@@ -36,11 +47,29 @@ import org.eclipse.core.runtime.IProgressMonitor;
 public class ProjectFileCache {
 
     private static final String MD_ALGORITHM = "SHA-256";
-    private static final int BUFFER_SIZE = 8192;
+    private static final int BUFFER_SIZE = 65536;
+    // the read buffer and digest of each hashing thread
+    private static final ThreadLocal<ByteBuffer> buffers = new ThreadLocal<ByteBuffer>() {
+        protected ByteBuffer initialValue() {
+            return ByteBuffer.allocateDirect(BUFFER_SIZE);
+        }
+    };
+    private static final ThreadLocal<MessageDigest> digests = new ThreadLocal<MessageDigest>() {
+        protected MessageDigest initialValue() {
+            try {
+                return MessageDigest.getInstance(MD_ALGORITHM);
+            }
+            catch (NoSuchAlgorithmException e) {
+                // Should not occur if JRE is set up properly
+                return null;
+            }
+        }
+    };
     private static final Map<IProject, ProjectFileCache> instances =
             new HashMap<IProject, ProjectFileCache>();
 
     private final IProject project;
+    private final ProjectFileCacheWriter writer;
 
     private Map<IPath, ProjectFileInfo> trackedFiles;
     private Map<IPath, ProjectFileInfo> initialFiles;
@@ -70,24 +99,91 @@ public class ProjectFileCache {
      * @throws IOException if the file does not exist or cannot be read
      */
     private byte[] getFileHash(IPath hashFile) throws IOException {
+        IFile inIFile = project.getFile(hashFile);
+        return getFileHash(new File(inIFile.getLocationURI()));
+    }
+
+    /**
+     * Generates a hash value of the given file in the file system.
+     *
+     * @param inputFile the file
+     * @return byte array with file contents hash value
+     * @throws IOException if the file does not exist or cannot be read
+     */
+    public static byte[] getFileHash(File inputFile) throws IOException {
+        MessageDigest digest = digests.get();
+        if (digest == null) {
+            return null;
+        }
+        digest.reset();
+        // The file is read through a channel into a reused direct buffer. It is
+        // not mapped, because a mapped file cannot be rewritten by LaTeX on
+        // some platforms until the mapping has been garbage collected.
+        ByteBuffer buffer = buffers.get();
+        FileChannel channel = new FileInputStream(inputFile).getChannel();
         try {
-            MessageDigest digest = MessageDigest.getInstance(MD_ALGORITHM);
-            IFile inIFile = project.getFile(hashFile);
-            File inputFile = new File(inIFile.getLocationURI());
-            byte[] buffer = new byte[BUFFER_SIZE];
-            InputStream in =
-                    new BufferedInputStream(new FileInputStream(inputFile));
-            int l;
-            while ((l = in.read(buffer)) != -1) {
-                digest.update(buffer, 0, l);
+            buffer.clear();
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
             }
-            in.close();
-            return digest.digest();
         }
-        catch (NoSuchAlgorithmException e) {
-            // Should not occur if JRE is set up properly
-            return null;
+        finally {
+            channel.close();
+        }
+        return digest.digest();
+    }
+
+    /**
+     * Generates the hash values of the given files. The files are read in parallel,
+     * using at most one thread per processor. Files which cannot be read are left
+     * out of the result.
+     *
+     * @param names project relative file paths
+     * @return map of file paths to hash values
+     */
+    private Map<IPath, byte[]> getFileHashes(List<IPath> names) {
+        final Map<IPath, byte[]> hashes = new HashMap<IPath, byte[]>(names.size());
+        if (names.size() == 1) {
+            try {
+                hashes.put(names.get(0), getFileHash(names.get(0)));
+            }
+            catch (IOException e) {
+                // Do not consider files which cannot be read
+            }
+            return hashes;
+        }
+        else if (names.isEmpty()) {
+            return hashes;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.min(names.size(), Runtime.getRuntime().availableProcessors()));
+        List<Future<byte[]>> results = new ArrayList<Future<byte[]>>(names.size());
+        for (final IPath name : names) {
+            results.add(executor.submit(new Callable<byte[]>() {
+                public byte[] call() throws IOException {
+                    return getFileHash(name);
+                }
+            }));
         }
+        executor.shutdown();
+
+        for (int i = 0; i < names.size(); i++) {
+            try {
+                hashes.put(names.get(i), results.get(i).get());
+            }
+            catch (ExecutionException e) {
+                // Do not consider files which cannot be read
+            }
+            catch (InterruptedException e) {
+                executor.shutdownNow();
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        return hashes;
     }
 
     /**
@@ -114,6 +210,7 @@ public class ProjectFileCache {
         super();
         this.initialized = false;
         this.project = project;
+        this.writer = new ProjectFileCacheWriter(project);
         this.trackedFiles = new HashMap<IPath, ProjectFileInfo>();
     }
 
@@ -129,9 +226,13 @@ public class ProjectFileCache {
         if (!initialized) {
             initialFiles = new HashMap<IPath, ProjectFileInfo>();
             ProjectFileCacheReader reader = new ProjectFileCacheReader(project);
-            for (ProjectFileInfo info : reader.readFiles(monitor)) {
+            Collection<ProjectFileInfo> storedFiles = reader.readFiles(monitor);
+            for (ProjectFileInfo info : storedFiles) {
                 initialFiles.put(info.getName(), info);
             }
+            // Later saves only append the changes to this information
+            int records = reader.getRecordCount();
+            writer.setStoredFiles(records >= 0 ? storedFiles : null, records);
             initialized = true;
         }
         else {
@@ -141,75 +242,65 @@ public class ProjectFileCache {
     }
 
     /**
-     * Updates the set of tracked files with the given information. If the given modification
-     * stamp differs from the previously recorded information, this method also checks if the
-     * file's contents have changed.
+     * Updates the set of tracked files with the given information. The contents
+     * of the files, whose modification stamps differ from the previously recorded
+     * information, are hashed in parallel to check if they have changed.
      *
-     * @param name project relative file path
-     * @param modStamp current modification stamp of the file
-     * @return <code>true</code> only if the file contents have actually changed, or the file
-     *  is new; <code>false</code> if the file has not changed at all or shown to be identical
-     *  in contents.
-     * @throws IOException if attempts to calculate a new hash value have failed because the
-     *  file was not accessible. In this case, no update is made to the cached information either.
+     * @param files map of project relative file paths to current modification stamps
+     * @return set of files, whose contents have actually changed, or which are new.
+     *  Files which could not be read are neither included nor updated.
      */
-    public boolean updateTrackedFile(IPath name, Long modStamp) throws IOException {
-        ProjectFileInfo fileInfo = trackedFiles.get(name);
-        if (fileInfo != null) {
-            Long oldStamp = fileInfo.getModificationStamp();
-            if (oldStamp == null || !oldStamp.equals(modStamp)) {
-                final byte[] newHashVal = getFileHash(name);
-                final byte[] oldHashVal = fileInfo.getHashValue();
-                // If an IOException occurs above, make sure the modification stamp is not
-                // updated either
-                fileInfo.setModificationStamp(modStamp);
+    public Set<IPath> updateTrackedFiles(Map<IPath, Long> files) {
+        List<IPath> modified = new ArrayList<IPath>();
+        for (Entry<IPath, Long> fileEntry : files.entrySet()) {
+            ProjectFileInfo fileInfo = trackedFiles.get(fileEntry.getKey());
+            if (fileInfo == null || fileInfo.getModificationStamp() == null
+                    || !fileInfo.getModificationStamp().equals(fileEntry.getValue())) {
+                modified.add(fileEntry.getKey());
+            }
+        }
+
+        Set<IPath> changed = new HashSet<IPath>();
+        for (Entry<IPath, byte[]> hashEntry : getFileHashes(modified).entrySet()) {
+            IPath name = hashEntry.getKey();
+            byte[] newHashVal = hashEntry.getValue();
+            ProjectFileInfo fileInfo = trackedFiles.get(name);
+            if (fileInfo != null) {
+                fileInfo.setModificationStamp(files.get(name));
+                byte[] oldHashVal = fileInfo.getHashValue();
                 if (oldHashVal == null || !Arrays.equals(oldHashVal, newHashVal)) {
                     fileInfo.setHashValue(newHashVal);
-                    return true;
-                }
-                else {
-                    return false;
+                    changed.add(name);
                 }
             }
             else {
-                return false;
+                addTrackedFile(name, files.get(name), newHashVal);
+                changed.add(name);
             }
         }
-        else {
-            addTrackedFile(name, modStamp, getFileHash(name));
-            return true;
-        }
+        return changed;
     }
 
     /**
-     * Moves initial information from an earlier session or build cycle to a set
+     * Moves initial information from an earlier session or build cycle to the set
      * of currently-tracked files, and checks if files have been changed or modified since
      * then. This should take place before the first latex run-through starts in a build
      * cycle. File information not merged using this method is considered obsolete and
      * will be discarded upon the next restore.
      *
-     * @param name project relative file path
-     * @param currentModStamp the modification stamp from the current snapshot
-     * @return <code>true</code> only if the file contents have actually changed, or the file
-     *  is new; <code>false</code> if the file has not changed at all, or shown to be identical
-     *  in contents.
-     * @throws IOException if attempts to calculate a new hash value have failed because the
-     *  file was not accessible. In this case, the file remains in the initial set only.
+     * @param files map of project relative file paths to current modification stamps
+     * @return set of files, whose contents have actually changed, or which are new.
+     *  Files which could not be read are neither included nor updated.
      */
-    public boolean mergeTrackedFile(IPath name, Long currentModStamp)
-                throws IOException {
+    public Set<IPath> mergeTrackedFiles(Map<IPath, Long> files) {
+        for (IPath name : files.keySet()) {
             ProjectFileInfo initialInfo = initialFiles.get(name);
             if (initialInfo != null) {
-                // The file has been in the cache before; check if it is newer
                 trackedFiles.put(name, initialInfo);
-                return updateTrackedFile(name, currentModStamp);
-            }
-            else {
-                // The file has not been cached before
-                addTrackedFile(name, currentModStamp, getFileHash(name));
-                return true;
             }
         }
+        return updateTrackedFiles(files);
+    }
 
     /**
      * Makes the information in this cache persistent, so it can be restored between
@@ -219,7 +310,6 @@ public class ProjectFileCache {
      * @throws CoreException if an error occurs
      */
     public void save(IProgressMonitor monitor) throws CoreException {
-        ProjectFileCacheWriter writer = new ProjectFileCacheWriter(project);
         writer.writeFiles(trackedFiles.values(), monitor);
     }
 
@@ -232,7 +322,6 @@ public class ProjectFileCache {
     public void clear(IProgressMonitor monitor) {
         trackedFiles.clear();
         initialFiles = trackedFiles;
-        ProjectFileCacheWriter writer = new ProjectFileCacheWriter(project);
         writer.clear(monitor);
     }
 
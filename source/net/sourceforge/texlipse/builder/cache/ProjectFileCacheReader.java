@@ -1,9 +1,16 @@
 package net.sourceforge.texlipse.builder.cache;
 
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.parsers.SAXParser;
@@ -22,15 +29,20 @@ import org.xml.sax.helpers.DefaultHandler;
 
 
 /**
- * Reads information about project files from an XML file into a list.
+ * Reads information about project files from the binary cache file into a list.
+ * If there is no binary cache file, an XML cache file written by earlier
+ * versions is read instead.
  *
  * @author Matthias Erll
  *
  */
 public class ProjectFileCacheReader {
 
+    private static final int BUFFER_SIZE = 8192;
+
     private final IProject project;
     private Collection<ProjectFileInfo> files;
+    private int recordCount;
 
     /**
      * Converts the given string of hexadecimal values to a byte array,
@@ -126,6 +138,63 @@ public class ProjectFileCacheReader {
         parser.parse(in, getHandler());
     }
 
+    /**
+     * Replays the records of the given binary cache file.
+     *
+     * @param fn cache file
+     * @return true, if the whole file was read; false, if it was found to be
+     *  invalid or truncated
+     * @throws IOException if the file could not be read
+     */
+    private boolean readBinaryFileCache(File fn) throws IOException {
+        final Map<String, ProjectFileInfo> fileMap = new HashMap<String, ProjectFileInfo>();
+        boolean complete = false;
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(fn), BUFFER_SIZE));
+        try {
+            if (in.readInt() != ProjectFileInfo.FILE_BIN_MAGIC
+                    || in.readInt() != ProjectFileInfo.FILE_BIN_VERSION) {
+                return false;
+            }
+            int type;
+            while ((type = in.read()) != -1) {
+                String pathStr = in.readUTF();
+                if (type == ProjectFileInfo.FILE_BIN_PUT) {
+                    long modStamp = in.readLong();
+                    int hashLength = in.readShort();
+                    byte[] hashVal = null;
+                    if (hashLength >= 0) {
+                        hashVal = new byte[hashLength];
+                        in.readFully(hashVal);
+                    }
+                    IPath fileName = project.getFile(pathStr).getProjectRelativePath();
+                    ProjectFileInfo info = new ProjectFileInfo(fileName);
+                    if (modStamp != -1) {
+                        info.setModificationStamp(Long.valueOf(modStamp));
+                    }
+                    info.setHashValue(hashVal);
+                    fileMap.put(pathStr, info);
+                }
+                else if (type == ProjectFileInfo.FILE_BIN_REMOVE) {
+                    fileMap.remove(pathStr);
+                }
+                else {
+                    break;
+                }
+                recordCount++;
+            }
+            complete = type == -1;
+        }
+        catch (EOFException e) {
+            // Truncated by an interrupted write; keep the complete records
+        }
+        finally {
+            in.close();
+            files.addAll(fileMap.values());
+        }
+        return complete;
+    }
+
     /**
      * Constructor.
      *
@@ -137,9 +206,19 @@ public class ProjectFileCacheReader {
     }
 
     /**
-     * Reads the XML found in the project folder and returns a set of cached files. If no
-     * information from an earlier session was found, or it could not be processed, an empty
-     * collection is returned.
+     * Returns the number of records read from the binary cache file.
+     *
+     * @return number of records, or -1 if the cache file has to be rewritten
+     *  because it is missing, in XML format or damaged
+     */
+    public int getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * Reads the cache file found in the project folder and returns a set of cached files.
+     * If no information from an earlier session was found, or it could not be processed,
+     * an empty collection is returned.
      *
      * @param monitor progress monitor
      * @return collection (set) of stored file information
@@ -147,7 +226,24 @@ public class ProjectFileCacheReader {
      */
     public Collection<ProjectFileInfo> readFiles(IProgressMonitor monitor) throws CoreException {
         this.files = new HashSet<ProjectFileInfo>();
-        IFile cacheFile = project.getFile(".fileCache.xml");
+        this.recordCount = 0;
+        IFile binFile = project.getFile(ProjectFileInfo.FILE_BIN_NAME);
+        File fn = new File(binFile.getLocationURI());
+        if (fn.exists()) {
+            try {
+                if (!readBinaryFileCache(fn)) {
+                    recordCount = -1;
+                }
+            }
+            catch (IOException e) {
+                e.printStackTrace();
+                recordCount = -1;
+            }
+            return this.files;
+        }
+
+        recordCount = -1;
+        IFile cacheFile = project.getFile(ProjectFileInfo.FILE_XML_NAME);
         InputStream stream = null;
         try {
             cacheFile.refreshLocal(0, monitor);
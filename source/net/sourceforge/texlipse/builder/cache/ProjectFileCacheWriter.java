@@ -1,143 +1,188 @@
 package net.sourceforge.texlipse.builder.cache;
 
-import java.io.BufferedWriter;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Collection;
-
-import net.sourceforge.texlipse.builder.cache.ProjectFileInfo.FileProperty;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
 
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.IProgressMonitor;
 
 
 /**
- * Stores cached file information in an XML file in the project folder, so
+ * Stores cached file information in a binary file in the project folder, so
  * it can be restored between different TeXlipse sessions.
+ * <p>
+ * The file is a journal of records, each of which either stores or removes
+ * the information of one file. Changes are appended to the journal, which is
+ * rewritten as a compact snapshot once it has grown too long. A cache file
+ * in the old XML format is replaced on the first write.
  *
  * @author Matthias Erll
  */
 public class ProjectFileCacheWriter {
 
     private static final int BUFFER_SIZE = 8192;
-    private static final String XML_HEADER_STR = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>";
+    // the journal is compacted, if it has this many records per cached file
+    private static final int COMPACT_FACTOR = 4;
+    private static final int COMPACT_MIN_RECORDS = 256;
 
     private final IProject project;
-    private Collection<ProjectFileInfo> files;
+
+    /** The file information as found in the cache file, or null if unknown. */
+    private Map<IPath, ProjectFileInfo> storedFiles;
+    private int storedRecords;
 
     /**
-     * Converts the given byte array to a string of hexadecimal values,
-     * which can be clearly read in the XML file.
+     * Creates a copy of the given file information, which is not affected
+     * by later changes to the cache.
      *
-     * @param byteArray byte array
-     * @return string of hexadecimal values
+     * @param file file information
+     * @return copy
      */
-    private String byteArrayToHexString(final byte[] byteArray) {
-        int len = byteArray.length;
-        final char[] charArray = new char[len * 2];
-        for (int i = 0; i < len; i++) {
-            int b = (int) byteArray[i];
-            charArray[i * 2] = Character.forDigit(b >> 4 & 0x0f, 16);
-            charArray[i * 2 + 1] = Character.forDigit(b & 0x0f, 16);
-        }
-        return String.valueOf(charArray);
+    private static ProjectFileInfo copyInfo(final ProjectFileInfo file) {
+        ProjectFileInfo copy = new ProjectFileInfo(file.getName());
+        copy.setModificationStamp(file.getModificationStamp());
+        copy.setHashValue(file.getHashValue());
+        return copy;
     }
 
     /**
-     * Writes a simple open tag.
+     * Checks if two file information objects are identical.
      *
-     * @param out output writer
-     * @param tag tag name
-     * @throws IOException if writing the XML file failed
+     * @param a file information
+     * @param b file information
+     * @return true, if modification stamp and hash value are equal
      */
-    private void writeOpenTag(final BufferedWriter out, final String tag)
-            throws IOException {
-        out.write('<');
-        out.write(tag);
-        out.write('>');
+    private static boolean isEqualInfo(final ProjectFileInfo a, final ProjectFileInfo b) {
+        Long stampA = a.getModificationStamp();
+        Long stampB = b.getModificationStamp();
+        return (stampA == null ? stampB == null : stampA.equals(stampB))
+                && Arrays.equals(a.getHashValue(), b.getHashValue());
     }
 
     /**
-     * Writes an open tag with one additional attribute and value.
+     * Writes a record, which stores the information of one file.
      *
-     * @param out output writer
-     * @param tag tag name
-     * @param attributeName attribute name
-     * @param attributeValue attribute value
-     * @throws IOException if writing the XML file failed
+     * @param out output stream
+     * @param file file information
+     * @throws IOException if writing the file failed
      */
-    private void writeOpenTag(final BufferedWriter out, final String tag,
-            final String attributeName, final String attributeValue)
-                    throws IOException {
-        out.write('<');
-        out.write(tag);
-        out.write(' ');
-        out.write(attributeName);
-        out.write("=\"");
-        out.write(attributeValue);
-        out.write("\">");
+    private void writePutRecord(final DataOutputStream out, final ProjectFileInfo file)
+            throws IOException {
+        out.writeByte(ProjectFileInfo.FILE_BIN_PUT);
+        out.writeUTF(file.getName().toString());
+        Long modStamp = file.getModificationStamp();
+        out.writeLong(modStamp != null ? modStamp.longValue() : -1);
+        byte[] hashValue = file.getHashValue();
+        if (hashValue != null) {
+            out.writeShort(hashValue.length);
+            out.write(hashValue);
+        }
+        else {
+            out.writeShort(-1);
+        }
     }
 
     /**
-     * Writes a simple closing tag.
+     * Writes a record, which removes the information of one file.
      *
-     * @param out output writer
-     * @param tag tag name
-     * @throws IOException if writing the XML file failed
+     * @param out output stream
+     * @param name project relative file path
+     * @throws IOException if writing the file failed
      */
-    private void writeCloseTag(final BufferedWriter out, final String tag)
+    private void writeRemoveRecord(final DataOutputStream out, final IPath name)
             throws IOException {
-        out.write("</");
-        out.write(tag);
-        out.write('>');
+        out.writeByte(ProjectFileInfo.FILE_BIN_REMOVE);
+        out.writeUTF(name.toString());
     }
 
     /**
-     * Writes characters to the XML file, enclosed by tags.
+     * Writes all given files as a new journal, replacing the existing file.
      *
-     * @param out output writer
-     * @param tag tag name
-     * @param value characters
-     * @throws IOException if writing the XML file failed
+     * @param fn cache file
+     * @param files files
+     * @throws IOException if writing the file failed
      */
-    private void writeCharacters(final BufferedWriter out,
-            final String tag, final String value) throws IOException {
-        writeOpenTag(out, tag);
-        out.write(value);
-        writeCloseTag(out, tag);
+    private void writeSnapshot(final File fn, final Collection<ProjectFileInfo> files)
+            throws IOException {
+        final Map<IPath, ProjectFileInfo> newFiles =
+                new HashMap<IPath, ProjectFileInfo>(files.size());
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(fn), BUFFER_SIZE));
+        try {
+            out.writeInt(ProjectFileInfo.FILE_BIN_MAGIC);
+            out.writeInt(ProjectFileInfo.FILE_BIN_VERSION);
+            for (ProjectFileInfo file : files) {
+                if (file.getName() != null) {
+                    writePutRecord(out, file);
+                    newFiles.put(file.getName(), copyInfo(file));
+                }
+            }
+        }
+        finally {
+            out.close();
+        }
+        storedFiles = newFiles;
+        storedRecords = newFiles.size();
     }
 
     /**
-     * Writes the current file cache into the given output stream.
+     * Appends the differences between the given files and the stored
+     * information to the journal.
      *
-     * @param out output writer
-     * @throws IOException if writing the XML file failed
+     * @param fn cache file
+     * @param files files
+     * @return true, if anything was written
+     * @throws IOException if writing the file failed
      */
-    private void writeFileCache(BufferedWriter out) throws IOException {
-        out.write(XML_HEADER_STR);
-        writeOpenTag(out, ProjectFileInfo.FILE_XML_ROOT);
-
-        if (files != null) {
+    private boolean writeJournal(final File fn, final Collection<ProjectFileInfo> files)
+            throws IOException {
+        Set<IPath> removed = new HashSet<IPath>(storedFiles.keySet());
+        DataOutputStream out = null;
+        try {
             for (ProjectFileInfo file : files) {
-                if (file.getName() != null) {
-                    writeOpenTag(out, ProjectFileInfo.FILE_XML_ELEMENT,
-                            ProjectFileInfo.FILE_XML_NAME_ATTR, file.getName().toString());
-                    if (file.getModificationStamp() > 0) {
-                        writeCharacters(out, ProjectFileInfo.getXmlPropertyStr(
-                                FileProperty.MODSTAMP), file.getModificationStamp().toString());
-                    }
-                    if (file.getHashValue() != null) {
-                        writeCharacters(out, ProjectFileInfo.getXmlPropertyStr(
-                                FileProperty.HASHVALUE), byteArrayToHexString(file.getHashValue()));
+                if (file.getName() == null) {
+                    continue;
+                }
+                removed.remove(file.getName());
+                ProjectFileInfo stored = storedFiles.get(file.getName());
+                if (stored == null || !isEqualInfo(stored, file)) {
+                    if (out == null) {
+                        out = new DataOutputStream(new BufferedOutputStream(
+                                new FileOutputStream(fn, true), BUFFER_SIZE));
                     }
-                    writeCloseTag(out, ProjectFileInfo.FILE_XML_ELEMENT);
+                    writePutRecord(out, file);
+                    storedFiles.put(file.getName(), copyInfo(file));
+                    storedRecords++;
                 }
             }
+            for (IPath name : removed) {
+                if (out == null) {
+                    out = new DataOutputStream(new BufferedOutputStream(
+                            new FileOutputStream(fn, true), BUFFER_SIZE));
+                }
+                writeRemoveRecord(out, name);
+                storedFiles.remove(name);
+                storedRecords++;
+            }
+        }
+        finally {
+            if (out != null) {
+                out.close();
+            }
         }
-        writeCloseTag(out, ProjectFileInfo.FILE_XML_ROOT);
+        return out != null;
     }
 
     /**
@@ -150,17 +195,45 @@ public class ProjectFileCacheWriter {
         this.project = project;
     }
 
+    /**
+     * Sets the file information, which is currently stored in the cache
+     * file. Later writes only append the differences to this information.
+     *
+     * @param files stored files, or <code>null</code> if the contents of the
+     *  cache file are unknown and it has to be rewritten
+     * @param records number of records in the cache file
+     */
+    public void setStoredFiles(final Collection<ProjectFileInfo> files, int records) {
+        if (files != null) {
+            storedFiles = new HashMap<IPath, ProjectFileInfo>(files.size());
+            for (ProjectFileInfo file : files) {
+                storedFiles.put(file.getName(), copyInfo(file));
+            }
+            storedRecords = records;
+        }
+        else {
+            storedFiles = null;
+            storedRecords = 0;
+        }
+    }
+
     /**
      * Removes any previously-stored information on cached files.
      *
      * @param monitor progress monitor
      */
     public void clear(IProgressMonitor monitor) {
-        IFile cacheFile = project.getFile(".fileCache.xml");
+        storedFiles = null;
+        storedRecords = 0;
+        IFile cacheFile = project.getFile(ProjectFileInfo.FILE_BIN_NAME);
+        IFile xmlFile = project.getFile(ProjectFileInfo.FILE_XML_NAME);
         try {
             if (cacheFile.exists()) {
                 cacheFile.delete(true, monitor);
             }
+            if (xmlFile.exists()) {
+                xmlFile.delete(true, monitor);
+            }
         }
         catch (CoreException e) {
             // TODO Auto-generated catch block
@@ -169,8 +242,9 @@ public class ProjectFileCacheWriter {
     }
 
     /**
-     * Writes the given collection of files into an XML file, which is located in the project folder.
-     * Any previously-stored information is overwritten.
+     * Writes the given collection of files into a binary file, which is located in the
+     * project folder. Only the changes since the last write are appended, unless the
+     * file has to be compacted. Any previously-stored information is overwritten.
      *
      * @param files files
      * @param monitor progress monitor
@@ -179,34 +253,34 @@ public class ProjectFileCacheWriter {
      */
     public void writeFiles(final Collection<ProjectFileInfo> files, IProgressMonitor monitor)
             throws CoreException {
-        this.files = files;
-        IFile cacheFile = project.getFile(".fileCache.xml");
+        IFile cacheFile = project.getFile(ProjectFileInfo.FILE_BIN_NAME);
         File fn = new File(cacheFile.getLocationURI());
-        FileWriter fileWriter = null;
-        BufferedWriter out = null;
+        boolean snapshot = storedFiles == null || !fn.exists()
+                || storedRecords > Math.max(COMPACT_MIN_RECORDS, COMPACT_FACTOR * files.size());
         try {
-            fileWriter = new FileWriter(fn);
-            out = new BufferedWriter(fileWriter, BUFFER_SIZE);
-            writeFileCache(out);
+            if (snapshot) {
+                writeSnapshot(fn, files);
+            }
+            else if (!writeJournal(fn, files)) {
+                // Nothing has changed
+                return;
+            }
         }
         catch (IOException e) {
+            // Rewrite the whole file next time
+            storedFiles = null;
             e.printStackTrace();
         }
-        finally {
-            try {
-                if (out != null) {
-                    out.close();
-                }
-                if (fileWriter != null) {
-                    fileWriter.close();
-                }
-            }
-            catch (IOException e) {
+        cacheFile.refreshLocal(0, monitor);
+        if (snapshot && cacheFile.exists()) {
+            cacheFile.setHidden(true);
+            cacheFile.setDerived(true);
+            // The XML file from earlier versions has been replaced
+            IFile xmlFile = project.getFile(ProjectFileInfo.FILE_XML_NAME);
+            if (xmlFile.exists()) {
+                xmlFile.delete(true, monitor);
             }
         }
-        cacheFile.refreshLocal(0, monitor);
-        cacheFile.setHidden(true);
-        cacheFile.setDerived(true);
     }
 
 }
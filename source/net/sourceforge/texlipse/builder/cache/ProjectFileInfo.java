@@ -6,13 +6,20 @@ import org.eclipse.core.runtime.IPath;
 /**
  * Object for storing cached file information.
  * <p>
- * Also contains constants for the XML persistence.
+ * Also contains constants for the binary and XML persistence.
  *
  * @author Matthias Erll
  *
  */
 public class ProjectFileInfo {
 
+    public static final String FILE_BIN_NAME = ".fileCache.bin";
+    public static final int FILE_BIN_MAGIC = 0x54434643;
+    public static final int FILE_BIN_VERSION = 1;
+    public static final byte FILE_BIN_PUT = 1;
+    public static final byte FILE_BIN_REMOVE = 2;
+
+    public static final String FILE_XML_NAME = ".fileCache.xml";
     public static final String FILE_XML_ROOT = "files";
     public static final String FILE_XML_ELEMENT = "file";
     public static final String FILE_XML_NAME_ATTR = "name";
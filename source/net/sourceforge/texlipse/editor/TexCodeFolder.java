@@ -35,8 +35,9 @@ public class TexCodeFolder {
     private TexEditor editor;
     private ProjectionAnnotationModel model;
     
-//  private ArrayList<TexProjectionAnnotation> oldNodes;
-    private ArrayList oldNodes;
+    // the annotations of the previous update by node key
+    private Map<String, List<TexProjectionAnnotation>> oldNodes;
+    private Map<TexProjectionAnnotation, Position> newNodes;
 
     private boolean firstRun;
 
@@ -99,19 +100,55 @@ public class TexCodeFolder {
             environments = null; // frees up the memory
         } else {
             // save old nodes
-            oldNodes = new ArrayList();
+            oldNodes = new HashMap<String, List<TexProjectionAnnotation>>();
             for (Iterator iter = model.getAnnotationIterator(); iter.hasNext();) {
-                oldNodes.add((TexProjectionAnnotation) iter.next());
+                TexProjectionAnnotation tpa = (TexProjectionAnnotation) iter.next();
+                String key = getNodeKey(tpa.getNode());
+                List<TexProjectionAnnotation> same = oldNodes.get(key);
+                if (same == null) {
+                    same = new ArrayList<TexProjectionAnnotation>(1);
+                    oldNodes.put(key, same);
+                }
+                same.add(tpa);
             }
+            newNodes = new HashMap<TexProjectionAnnotation, Position>();
             
             markTreeNodes(outline);
             
-            TexProjectionAnnotation[] deletes = new TexProjectionAnnotation[oldNodes.size()];
-            oldNodes.toArray(deletes);
-            model.modifyAnnotations(deletes, null, null);
+            // the remaining old nodes are deleted
+            List<TexProjectionAnnotation> deletes = new ArrayList<TexProjectionAnnotation>();
+            for (List<TexProjectionAnnotation> same : oldNodes.values()) {
+                deletes.addAll(same);
+            }
+            if (deletes.size() > 0 || newNodes.size() > 0) {
+                model.modifyAnnotations(deletes.toArray(new TexProjectionAnnotation[deletes.size()]),
+                        newNodes, null);
+            }
+            oldNodes = null;
+            newNodes = null;
         }
     }
 
+    /**
+     * Returns a key, which is equal for nodes for which
+     * <code>TexProjectionAnnotation.likelySame</code> holds.
+     * 
+     * @param node The node
+     * @return The key of the node
+     */
+    private static String getNodeKey(OutlineNode node) {
+        Position pos = node.getPosition();
+        StringBuilder key = new StringBuilder(node.getName().length() + 24);
+        key.append(node.getType()).append(':');
+        if (pos != null) {
+            key.append(pos.getOffset()).append(':').append(pos.getLength());
+            if (pos.isDeleted()) {
+                key.append('d');
+            }
+        }
+        return key.append(':').append(node.getName()).toString();
+    }
+
     /**
      * Traverses the <code>documentTree</code> and updates each node's
      * corresponding marker.
@@ -132,21 +169,19 @@ public class TexCodeFolder {
     }
 
     /**
-     * Inspects a folding mark and if necessary adds a new mark.
+     * Inspects a folding mark and if necessary queues a new mark.
      * 
      * @param node The node to inspect
      */
     private void inspectAndAddMark(OutlineNode node) {
         Position pos = node.getPosition();
-        for (ListIterator iter = oldNodes.listIterator(); iter.hasNext();) {
-            TexProjectionAnnotation cAnnotation = (TexProjectionAnnotation) iter.next();
-            if (cAnnotation.likelySame(node)) {
-                oldNodes.remove(cAnnotation);
-                //model.modifyAnnotationPosition(cAnnotation, pos);
-                return;
-            }
+        List<TexProjectionAnnotation> same = oldNodes.get(getNodeKey(node));
+        if (same != null && !same.isEmpty()) {
+            // keep the existing mark
+            same.remove(same.size() - 1);
+            return;
         }
-        model.addAnnotation(new TexProjectionAnnotation(node), pos);
+        newNodes.put(new TexProjectionAnnotation(node), pos);
     }
 
     /**
@@ -304,6 +304,9 @@ public class TexEditor extends TextEditor {
      * @see org.eclipse.ui.IWorkbenchPart#dispose()
      */
     public void dispose() {
+        if (fAnnotationUpdater != null) {
+            fAnnotationUpdater.dispose();
+        }
         super.dispose();
     }
     
@@ -48,6 +48,13 @@ public class TexProjectionAnnotation extends ProjectionAnnotation {
         this.node = node;
     }
     
+	/**
+	 * @return The OutlineNode this annotation corresponds to
+	 */
+	public OutlineNode getNode() {
+		return node;
+	}
+
 	/**
 	 * @return The position data of this annotation
 	 */
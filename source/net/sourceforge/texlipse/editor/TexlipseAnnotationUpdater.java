@@ -9,6 +9,7 @@
  */
 package net.sourceforge.texlipse.editor;
 
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
@@ -17,6 +18,7 @@ import java.util.regex.Pattern;
 
 import net.sourceforge.texlipse.TexlipsePlugin;
 import net.sourceforge.texlipse.properties.TexlipseProperties;
+import net.sourceforge.texlipse.texparser.LatexEnvironmentIndex;
 import net.sourceforge.texlipse.texparser.LatexParserUtils;
 
 import org.eclipse.core.runtime.IProgressMonitor;
@@ -59,6 +61,7 @@ public class TexlipseAnnotationUpdater implements ISelectionChangedListener {
     private Job fUpdateJob;
     private final static String ANNOTATION_TYPE = "net.sourceforge.texlipse.defAnnotation";
     private boolean fEnabled;
+    private LatexEnvironmentIndex fEnvIndex;
 
     /**
      * Creates a new TexlipseAnnotationUpdater and adds itself to the TexEditor via
@@ -97,9 +100,9 @@ public class TexlipseAnnotationUpdater implements ISelectionChangedListener {
      * Updates the annotations. It first checks if the current selection is
      * already annotated, if not it clears all annotations and tries to detect
      * if the current selection is part of a \[a-zA-Z]*ref, \label, \begin{...}
-     * or \end{...} string. If the last is true, it searches with regular expressions
-     * to find the associated part(s) and highlights them (The last uses a non UI-Job
-     * which do not influence the responsiveness of the editor). 
+     * or \end{...} string. If the last is true, it looks up the associated part(s)
+     * in the positions of the last parse or the environment index and highlights them
+     * (The last uses a non UI-Job which do not influence the responsiveness of the editor). 
      * 
      * @param viewer
      */
@@ -152,6 +155,29 @@ public class TexlipseAnnotationUpdater implements ISelectionChangedListener {
                     if (r2 == null) return;
 
                     final String refName = line.substring(r2.getOffset(), r2.getOffset() + r2.getLength());
+                    //Use the positions found by the last parse, if there are any
+                    //and all of them still contain the reference
+                    if (fEditor instanceof TexEditor && ((TexEditor) fEditor).getDocumentModel() != null) {
+                        List<Position> positions = ((TexEditor) fEditor).getDocumentModel().getReferencePositions(refName);
+                        if (positions != null) {
+                            List<IRegion> regions = new ArrayList<IRegion>(positions.size());
+                            for (Position p : positions) {
+                                IRegion fi = getReferenceRegion(document, p, refName);
+                                if (fi == null) {
+                                    //Stale, search the document instead
+                                    regions = null;
+                                    break;
+                                }
+                                regions.add(fi);
+                            }
+                            if (regions != null) {
+                                for (IRegion fi : regions) {
+                                    createNewAnnotation(fi, "References", model);
+                                }
+                                return;
+                            }
+                        }
+                    }
                     //Create a job to update the annotations in the background
                     fUpdateJob = createMatchReferenceJob(document, model, refName);
                     fUpdateJob.setPriority(Job.DECORATE);
@@ -164,6 +190,32 @@ public class TexlipseAnnotationUpdater implements ISelectionChangedListener {
         }
     }
 
+    /**
+     * Returns the region of the \label or \*ref command, whose argument is at the given
+     * position.
+     * @param document
+     * @param p         The position of the argument
+     * @param refName   The name of the reference
+     * @return The region of the command including the argument, or null if the position
+     *         is not the argument of a \label or \*ref command with the reference anymore
+     * @throws BadLocationException
+     */
+    private IRegion getReferenceRegion(IDocument document, Position p, String refName)
+            throws BadLocationException {
+        if (p.isDeleted() || p.getOffset() + p.getLength() >= document.getLength()
+                || !refName.equals(document.get(p.getOffset(), p.getLength()))) {
+            return null;
+        }
+        final int lineNr = document.getLineOfOffset(p.getOffset());
+        final int lineOff = document.getLineOffset(lineNr);
+        final String line = document.get(lineOff, document.getLineLength(lineNr));
+        IRegion r = LatexParserUtils.getCommand(line, p.getOffset() - lineOff);
+        if (r == null) return null;
+        final String command = line.substring(r.getOffset(), r.getOffset() + r.getLength());
+        if (!command.endsWith("ref") && !"\\label".equals(command)) return null;
+        return new Region(lineOff + r.getOffset(), p.getOffset() + p.getLength() + 1 - lineOff - r.getOffset());
+    }
+
     /**
      * Creates and returns a background job which searches and highlights all \label and \*ref. 
      * @param document
@@ -207,27 +259,45 @@ public class TexlipseAnnotationUpdater implements ISelectionChangedListener {
             final String command, final IRegion startRegion, final String envName) {
         return new Job("Update Annotations") {
                 public IStatus run(IProgressMonitor monitor) {
-                    String text = document.get();
-                    boolean forward = false;
-                    if ("\\begin".equals(command)) forward = true;
-                    if (forward) {
-                        IRegion endRegion = LatexParserUtils.findMatchingEndEnvironment(text, envName, startRegion.getOffset());
-                        if (endRegion != null) {
-                            createNewAnnotation(endRegion, "Environment", model);
-                            createNewAnnotation(startRegion, "Environment", model);
-                        }
-                    } else {
-                        IRegion endRegion = LatexParserUtils.findMatchingBeginEnvironment(text, envName, startRegion.getOffset());
-                        if (endRegion != null) {
-                            createNewAnnotation(endRegion, "Environment", model);
-                            createNewAnnotation(startRegion, "Environment", model);
-                        }
+                    //The index pairs \begin and \end of the same environment
+                    IRegion endRegion = getEnvironmentIndex(document).findMatchingEnvironment(
+                            startRegion.getOffset());
+                    if (endRegion != null) {
+                        createNewAnnotation(endRegion, "Environment", model);
+                        createNewAnnotation(startRegion, "Environment", model);
                     }
                     return Status.OK_STATUS;
                 }
         };
     }
 
+    /**
+     * Returns the environment index of the given document. The index is
+     * replaced if the document of the editor has changed.
+     * @param document
+     * @return The index
+     */
+    private synchronized LatexEnvironmentIndex getEnvironmentIndex(IDocument document) {
+        if (fEnvIndex == null || fEnvIndex.getDocument() != document) {
+            if (fEnvIndex != null) {
+                fEnvIndex.dispose();
+            }
+            fEnvIndex = new LatexEnvironmentIndex(document);
+        }
+        return fEnvIndex;
+    }
+
+    /**
+     * Releases the environment index, which listens to the changes of the
+     * document. Called when the editor is disposed.
+     */
+    public synchronized void dispose() {
+        if (fEnvIndex != null) {
+            fEnvIndex.dispose();
+            fEnvIndex = null;
+        }
+    }
+
 
     /**
      * Tests if the selection is already annotated
@@ -39,6 +39,22 @@ public abstract class AbstractEntry implements Comparable {
      */
     public String fileName;
 
+    /**
+     * The lower case key and the key it was created from, replaced as a
+     * whole, so that threads reading the entry see a matching pair
+     */
+    private static final class LowerKey {
+        final String source;
+        final String lowerKey;
+
+        LowerKey(String source) {
+            this.source = source;
+            this.lowerKey = source.toLowerCase();
+        }
+    }
+
+    private volatile LowerKey lowerKey;
+
     /* (non-Javadoc)
      * @see java.lang.Comparable#compareTo(java.lang.Object)
      */
@@ -61,7 +77,16 @@ public abstract class AbstractEntry implements Comparable {
     }
     
     public String getkey(boolean lowerCase) {
-        if (lowerCase) return key.toLowerCase();
+        if (lowerCase) {
+            // the key is a public field, so check that the cache is current
+            String k = key;
+            LowerKey lk = lowerKey;
+            if (lk == null || lk.source != k) {
+                lk = new LowerKey(k);
+                lowerKey = lk;
+            }
+            return lk.lowerKey;
+        }
         return key;
     }
 }
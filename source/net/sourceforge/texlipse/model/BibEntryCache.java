@@ -0,0 +1,148 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2026 by the TeXlapse Team.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package net.sourceforge.texlipse.model;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * A workspace wide cache of parsed BibTeX files. The entries of a file are
+ * stored under the canonical path and the hash value of the file contents,
+ * so a bibliography shared by several projects is parsed only once. Only
+ * the entries of the latest contents of each file are kept.
+ * <p>
+ * The least recently used files are evicted when the total number of
+ * cached entries exceeds <code>MAX_ENTRIES</code>.
+ *
+ * @see TexDocumentModel
+ */
+public class BibEntryCache {
+
+    /**
+     * The maximum total number of entries in the cache
+     */
+    public static final int MAX_ENTRIES = 200000;
+
+    // the cached entries in access order, never modified after insertion
+    private static final LinkedHashMap<String, List<ReferenceEntry>> cache =
+        new LinkedHashMap<String, List<ReferenceEntry>>(16, 0.75f, true);
+    // the key of the cached entries by canonical path
+    private static final Map<String, String> keysByPath = new HashMap<String, String>();
+    private static int totalEntries = 0;
+
+    private BibEntryCache() {
+    }
+
+    /**
+     * Returns the cached entries of the given BibTeX file. The returned
+     * list contains copies of the cached entries, so the caller may modify
+     * them freely.
+     *
+     * @param file the BibTeX file
+     * @param hash the hash value of the current contents of the file
+     * @return the entries, or null if the file is not in the cache
+     */
+    public static synchronized List<ReferenceEntry> getEntries(File file, byte[] hash) {
+        if (hash == null) {
+            return null;
+        }
+        List<ReferenceEntry> entries = cache.get(getKey(getPath(file), hash));
+        if (entries == null) {
+            return null;
+        }
+        return copyEntries(entries);
+    }
+
+    /**
+     * Stores the entries of the given BibTeX file. The entries are copied,
+     * so later changes to the given list do not affect the cache.
+     *
+     * @param file the BibTeX file
+     * @param hash the hash value of the contents the entries were read from
+     * @param entries the entries
+     */
+    public static synchronized void putEntries(File file, byte[] hash, List<ReferenceEntry> entries) {
+        if (hash == null || entries.size() > MAX_ENTRIES) {
+            return;
+        }
+        String path = getPath(file);
+        String key = getKey(path, hash);
+        // the entries of the previous contents are not used again
+        String oldKey = keysByPath.put(path, key);
+        if (oldKey != null && !oldKey.equals(key)) {
+            remove(oldKey);
+        }
+        List<ReferenceEntry> old = cache.put(key, copyEntries(entries));
+        if (old != null) {
+            totalEntries -= old.size();
+        }
+        totalEntries += entries.size();
+
+        Iterator<Map.Entry<String, List<ReferenceEntry>>> iter = cache.entrySet().iterator();
+        while (totalEntries > MAX_ENTRIES && iter.hasNext()) {
+            Map.Entry<String, List<ReferenceEntry>> entry = iter.next();
+            totalEntries -= entry.getValue().size();
+            iter.remove();
+            keysByPath.values().remove(entry.getKey());
+        }
+    }
+
+    /**
+     * Removes the entries stored under the given key.
+     *
+     * @param key the cache key
+     */
+    private static void remove(String key) {
+        List<ReferenceEntry> old = cache.remove(key);
+        if (old != null) {
+            totalEntries -= old.size();
+        }
+    }
+
+    /**
+     * @param file the file
+     * @return the canonical path of the file, or the absolute path if
+     *  the canonical path cannot be determined
+     */
+    private static String getPath(File file) {
+        try {
+            return file.getCanonicalPath();
+        } catch (IOException e) {
+            return file.getAbsolutePath();
+        }
+    }
+
+    /**
+     * Builds the cache key of a file.
+     *
+     * @param path the path of the file
+     * @param hash the hash value of the file contents
+     * @return the key
+     */
+    private static String getKey(String path, byte[] hash) {
+        return path + File.pathSeparatorChar + new BigInteger(1, hash).toString(16);
+    }
+
+    private static List<ReferenceEntry> copyEntries(List<ReferenceEntry> entries) {
+        List<ReferenceEntry> copy = new ArrayList<ReferenceEntry>(entries.size());
+        for (ReferenceEntry entry : entries) {
+            copy.add((ReferenceEntry) entry.copy());
+        }
+        return copy;
+    }
+}
@@ -0,0 +1,498 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2026 by the TeXlapse Team.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package net.sourceforge.texlipse.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * An index for finding entries, whose key contains the search string
+ * (substring matches) or the characters of the search string in the same
+ * order (fuzzy matches, e.g. "sdeep" finds "smith2019deep"). Both kinds of
+ * matching are case insensitive. Entries, whose key starts with the search
+ * string, are not returned, since these are found by the binary search of
+ * <code>PartialRetriever</code>.
+ * <p>
+ * Substring matches are found through a trigram index. The entries are
+ * stored per source (e.g. a file), so changing one source only updates the
+ * entries of this source.
+ *
+ * @see ReferenceManager
+ */
+public class CompletionIndex<T extends AbstractEntry> {
+
+    /**
+     * Matches any group in <code>find</code>
+     */
+    public static final int ANY_GROUP = -1;
+
+    // the index is rebuilt, if it contains more removed entries than this
+    private static final int MIN_COMPACT = 1024;
+
+    private static final int SUBSTRING_MATCH = 1 << 20;
+    private static final int BOUNDARY_MATCH = 1 << 19;
+
+    /**
+     * A growable list of ints.
+     */
+    private static class IntList {
+        int[] values = new int[4];
+        int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                int[] newValues = new int[size * 2];
+                System.arraycopy(values, 0, newValues, 0, size);
+                values = newValues;
+            }
+            values[size++] = value;
+        }
+    }
+
+    /**
+     * A matching entry and its score.
+     */
+    private static class Match {
+        final int slot;
+        final int score;
+
+        Match(int slot, int score) {
+            this.slot = slot;
+            this.score = score;
+        }
+    }
+
+    private final boolean lowerCase;
+
+    // the entries by slot, removed entries are null
+    private List<T> entries;
+    private List<String> lowerKeys;
+    private long[] masks;
+    private int[] groups;
+    private int removed;
+    // the slots of every source
+    private Map<String, IntList> sources;
+    // the slots of the entries containing a trigram, in ascending order
+    private Map<Long, IntList> trigrams;
+
+    /**
+     * Creates a new, empty index.
+     *
+     * @param lowerCase If true, the prefix matches excluded from the results
+     * are case insensitive (like in <code>PartialRetriever</code>)
+     */
+    public CompletionIndex(boolean lowerCase) {
+        this.lowerCase = lowerCase;
+        this.sources = new HashMap<String, IntList>();
+        clear();
+    }
+
+    /**
+     * Returns the group of the entry. Only entries of the requested group
+     * are returned by <code>find</code>.
+     *
+     * @param entry The entry
+     * @return The group of the entry, 0 by default
+     */
+    protected int getGroup(T entry) {
+        return 0;
+    }
+
+    /**
+     * Adds the entries of a source into this index, replacing the previous
+     * entries of the source.
+     *
+     * @param key The key of the source
+     * @param refs The entries of the source
+     */
+    public synchronized void setSource(String key, List<? extends T> refs) {
+        removeSlots(sources.remove(key));
+        IntList slots = new IntList();
+        for (T entry : refs) {
+            slots.add(addEntry(entry));
+        }
+        sources.put(key, slots);
+        if (removed > MIN_COMPACT && removed > entries.size() - removed) {
+            compact();
+        }
+    }
+
+    /**
+     * Replaces some of the entries of a source, leaving the other entries
+     * of the source in place.
+     *
+     * @param key The key of the source
+     * @param oldRefs The entries to remove from the source
+     * @param newRefs The entries to add to the source
+     */
+    public synchronized void updateSource(String key, List<? extends T> oldRefs,
+            List<? extends T> newRefs) {
+        IntList slots = sources.get(key);
+        if (slots == null) {
+            slots = new IntList();
+            sources.put(key, slots);
+        }
+        if (oldRefs.size() > 0) {
+            Map<T, T> oldEntries = new IdentityHashMap<T, T>(oldRefs.size() * 2);
+            for (T entry : oldRefs) {
+                oldEntries.put(entry, entry);
+            }
+            int size = 0;
+            for (int i = 0; i < slots.size; i++) {
+                int slot = slots.values[i];
+                if (oldEntries.containsKey(entries.get(slot))) {
+                    entries.set(slot, null);
+                    removed++;
+                } else {
+                    slots.values[size++] = slot;
+                }
+            }
+            slots.size = size;
+        }
+        for (T entry : newRefs) {
+            slots.add(addEntry(entry));
+        }
+        if (removed > MIN_COMPACT && removed > entries.size() - removed) {
+            compact();
+        }
+    }
+
+    /**
+     * Removes the entries of a source from this index.
+     *
+     * @param key The key of the source
+     */
+    public synchronized void removeSource(String key) {
+        removeSlots(sources.remove(key));
+        if (removed > MIN_COMPACT && removed > entries.size() - removed) {
+            compact();
+        }
+    }
+
+    /**
+     * Searches for the entries containing the given string. The substring
+     * matches are returned first, followed by the fuzzy matches if there
+     * are less than <code>maxResults</code> substring matches. The results
+     * are ranked so that matches at word boundaries and at the beginning
+     * of the key come first.
+     *
+     * @param query The string to search for
+     * @param group The group of the entries, or <code>ANY_GROUP</code>
+     * @param maxResults The maximum number of results
+     * @return The matching entries
+     */
+    public synchronized List<T> find(String query, int group, int maxResults) {
+        String lQuery = query.toLowerCase();
+        String prefix = lowerCase ? lQuery : query;
+        PriorityQueue<Match> best = new PriorityQueue<Match>(16, new Comparator<Match>() {
+            public int compare(Match m1, Match m2) {
+                return -compareMatches(m1, m2);
+            }
+        });
+
+        if (lQuery.length() >= 3) {
+            IntList candidates = intersectTrigrams(lQuery);
+            for (int i = 0; candidates != null && i < candidates.size; i++) {
+                matchSubstring(candidates.values[i], lQuery, prefix, group, maxResults, best);
+            }
+        } else {
+            for (int slot = 0; slot < entries.size(); slot++) {
+                matchSubstring(slot, lQuery, prefix, group, maxResults, best);
+            }
+        }
+
+        if (best.size() < maxResults && lQuery.length() >= 2) {
+            long mask = getMask(lQuery);
+            for (int slot = 0; slot < entries.size(); slot++) {
+                if ((masks[slot] & mask) == mask && isCandidate(slot, prefix, group)
+                        && lowerKeys.get(slot).indexOf(lQuery) == -1) {
+                    String key = entries.get(slot).key;
+                    int score = getFuzzyScore(key, lQuery, true);
+                    if (score < 0) {
+                        // the earliest occurrences always match a subsequence
+                        score = getFuzzyScore(key, lQuery, false);
+                    }
+                    if (score >= 0) {
+                        offer(best, new Match(slot, score), maxResults);
+                    }
+                }
+            }
+        }
+
+        List<Match> matches = new ArrayList<Match>(best);
+        Collections.sort(matches, new Comparator<Match>() {
+            public int compare(Match m1, Match m2) {
+                return compareMatches(m1, m2);
+            }
+        });
+        List<T> result = new ArrayList<T>(matches.size());
+        for (Match m : matches) {
+            result.add(entries.get(m.slot));
+        }
+        return result;
+    }
+
+    /**
+     * Orders the matches by descending score and ascending key.
+     */
+    private int compareMatches(Match m1, Match m2) {
+        if (m1.score != m2.score) {
+            return m1.score > m2.score ? -1 : 1;
+        }
+        return lowerKeys.get(m1.slot).compareTo(lowerKeys.get(m2.slot));
+    }
+
+    /**
+     * Adds the match to the queue of the best matches, dropping the worst
+     * match if the queue is full.
+     */
+    private void offer(PriorityQueue<Match> best, Match match, int maxResults) {
+        if (best.size() < maxResults) {
+            best.add(match);
+        } else if (compareMatches(match, best.peek()) < 0) {
+            best.poll();
+            best.add(match);
+        }
+    }
+
+    /**
+     * Checks if the entry in the slot may be returned by <code>find</code>.
+     */
+    private boolean isCandidate(int slot, String prefix, int group) {
+        T entry = entries.get(slot);
+        if (entry == null || (group != ANY_GROUP && groups[slot] != group)) {
+            return false;
+        }
+        String key = lowerCase ? lowerKeys.get(slot) : entry.key;
+        return !key.startsWith(prefix);
+    }
+
+    private void matchSubstring(int slot, String lQuery, String prefix, int group,
+            int maxResults, PriorityQueue<Match> best) {
+        if (!isCandidate(slot, prefix, group)) {
+            return;
+        }
+        int pos = lowerKeys.get(slot).indexOf(lQuery);
+        if (pos == -1) {
+            return;
+        }
+        String key = entries.get(slot).key;
+        int score = SUBSTRING_MATCH - (Math.min(pos, 255) << 8) - Math.min(key.length(), 255);
+        if (isBoundary(key, pos)) {
+            score += BOUNDARY_MATCH;
+        }
+        offer(best, new Match(slot, score), maxResults);
+    }
+
+    /**
+     * Matches the characters of the query in order against the key and
+     * computes a score for the match. Characters matched at word boundaries
+     * (camel humps, after digits or punctuation) and runs of consecutive
+     * characters score higher, gaps lower the score.
+     *
+     * @param key The key of the entry
+     * @param lQuery The lower case query
+     * @param preferBoundary If true, a later occurrence of a character at a
+     * word boundary is preferred over the next occurrence
+     * @return The score (less than the score of any substring match), or
+     * -1 if the key does not contain the characters of the query
+     */
+    private static int getFuzzyScore(String key, String lQuery, boolean preferBoundary) {
+        int score = 1 << 16;
+        int last = -1;
+        for (int i = 0; i < lQuery.length(); i++) {
+            char c = lQuery.charAt(i);
+            int pos = -1;
+            for (int j = last + 1; j < key.length(); j++) {
+                if (Character.toLowerCase(key.charAt(j)) == c) {
+                    if (pos == -1) {
+                        pos = j;
+                    }
+                    if (!preferBoundary || j == last + 1 || isBoundary(key, j)) {
+                        pos = j;
+                        break;
+                    }
+                }
+            }
+            if (pos == -1) {
+                return -1;
+            }
+            if (pos == last + 1) {
+                score += 8;
+            } else {
+                score -= Math.min(pos - last - 1, 32);
+            }
+            if (isBoundary(key, pos)) {
+                score += 16;
+            }
+            last = pos;
+        }
+        return score - Math.min(key.length(), 255);
+    }
+
+    /**
+     * Checks if a word starts at the given position of the key.
+     */
+    private static boolean isBoundary(String key, int pos) {
+        if (pos == 0) {
+            return true;
+        }
+        char prev = key.charAt(pos - 1);
+        char c = key.charAt(pos);
+        if (!Character.isLetterOrDigit(prev)) {
+            return true;
+        }
+        if (Character.isUpperCase(c) && !Character.isUpperCase(prev)) {
+            return true;
+        }
+        return Character.isDigit(c) != Character.isDigit(prev);
+    }
+
+    /**
+     * Returns the slots of the entries containing all the trigrams of the
+     * query, or null if there are none.
+     */
+    private IntList intersectTrigrams(String lQuery) {
+        List<IntList> lists = new ArrayList<IntList>(lQuery.length() - 2);
+        for (int i = 0; i + 3 <= lQuery.length(); i++) {
+            IntList list = trigrams.get(Long.valueOf(getTrigram(lQuery, i)));
+            if (list == null) {
+                return null;
+            }
+            lists.add(list);
+        }
+        Collections.sort(lists, new Comparator<IntList>() {
+            public int compare(IntList l1, IntList l2) {
+                return l1.size - l2.size;
+            }
+        });
+
+        IntList result = lists.get(0);
+        for (int i = 1; i < lists.size() && result.size > 0; i++) {
+            IntList other = lists.get(i);
+            IntList common = new IntList();
+            int a = 0, b = 0;
+            while (a < result.size && b < other.size) {
+                int x = result.values[a];
+                int y = other.values[b];
+                if (x == y) {
+                    common.add(x);
+                    a++;
+                    b++;
+                } else if (x < y) {
+                    a++;
+                } else {
+                    b++;
+                }
+            }
+            result = common;
+        }
+        return result;
+    }
+
+    private static long getTrigram(String s, int i) {
+        return ((long) s.charAt(i) << 32) | ((long) s.charAt(i + 1) << 16) | s.charAt(i + 2);
+    }
+
+    /**
+     * Returns a bit mask of the characters of the string.
+     */
+    private static long getMask(String s) {
+        long mask = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c >= 'a' && c <= 'z') {
+                mask |= 1L << (c - 'a');
+            } else if (c >= '0' && c <= '9') {
+                mask |= 1L << (26 + c - '0');
+            } else {
+                mask |= 1L << (36 + c % 28);
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * Adds an entry to a new slot.
+     *
+     * @return the slot
+     */
+    private int addEntry(T entry) {
+        int slot = entries.size();
+        String lKey = entry.key.toLowerCase();
+        entries.add(entry);
+        lowerKeys.add(lKey);
+        if (slot == masks.length) {
+            long[] newMasks = new long[slot * 2];
+            System.arraycopy(masks, 0, newMasks, 0, slot);
+            masks = newMasks;
+            int[] newGroups = new int[slot * 2];
+            System.arraycopy(groups, 0, newGroups, 0, slot);
+            groups = newGroups;
+        }
+        masks[slot] = getMask(lKey);
+        groups[slot] = getGroup(entry);
+        for (int i = 0; i + 3 <= lKey.length(); i++) {
+            Long trigram = Long.valueOf(getTrigram(lKey, i));
+            IntList list = trigrams.get(trigram);
+            if (list == null) {
+                list = new IntList();
+                trigrams.put(trigram, list);
+            }
+            // a trigram may occur more than once in a key
+            if (list.size == 0 || list.values[list.size - 1] != slot) {
+                list.add(slot);
+            }
+        }
+        return slot;
+    }
+
+    /**
+     * Marks the given slots as removed. The trigram lists are cleaned
+     * up, when the index is compacted.
+     */
+    private void removeSlots(IntList slots) {
+        if (slots == null) {
+            return;
+        }
+        for (int i = 0; i < slots.size; i++) {
+            entries.set(slots.values[i], null);
+        }
+        removed += slots.size;
+    }
+
+    private void clear() {
+        entries = new ArrayList<T>();
+        lowerKeys = new ArrayList<String>();
+        masks = new long[64];
+        groups = new int[64];
+        trigrams = new HashMap<Long, IntList>();
+        removed = 0;
+    }
+
+    /**
+     * Rebuilds the index from the entries, which have not been removed.
+     */
+    private void compact() {
+        List<T> oldEntries = entries;
+        clear();
+        for (IntList slots : sources.values()) {
+            for (int i = 0; i < slots.size; i++) {
+                slots.values[i] = addEntry(oldEntries.get(slots.values[i]));
+            }
+        }
+    }
+}
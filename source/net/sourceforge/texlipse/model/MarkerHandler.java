@@ -9,15 +9,22 @@
  */
 package net.sourceforge.texlipse.model;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import net.sourceforge.texlipse.TexlipsePlugin;
 
 import org.eclipse.core.resources.IMarker;
 import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IWorkspace;
+import org.eclipse.core.resources.IWorkspaceRunnable;
+import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.jface.text.BadLocationException;
 import org.eclipse.jface.text.IDocument;
 import org.eclipse.ui.texteditor.ITextEditor;
@@ -33,6 +40,22 @@ public class MarkerHandler {
 
     private static MarkerHandler theInstance;
     
+    // the types of markers handled by a marker update
+    private static final String[] UPDATE_TYPES = {IMarker.PROBLEM, IMarker.TASK};
+    
+    /**
+     * The markers of a resource during a marker update.
+     */
+    private static class MarkerUpdate {
+        // the markers to be created, as attribute maps of each type
+        private final Map<String, List<Map<String, ? super Object>>> markers =
+            new HashMap<String, List<Map<String, ? super Object>>>();
+        // the types of the markers to be replaced
+        private final Set<String> replaceTypes = new HashSet<String>();
+    }
+    
+    private final Map<IResource, MarkerUpdate> updates = new HashMap<IResource, MarkerUpdate>();
+    
     private MarkerHandler() {
     }
 
@@ -98,9 +121,7 @@ public class MarkerHandler {
                 if (IMarker.TASK == markerType)
                     map.put(IMarker.PRIORITY, Integer.valueOf(msg.getSeverity()));
                 
-                MarkerUtilities.createMarker(resource, map, markerType);
-            } catch (CoreException ce) {
-                TexlipsePlugin.log("Creating marker", ce);
+                addMarker(resource, map, markerType);
             } catch (BadLocationException ble) {
                 TexlipsePlugin.log("Creating marker", ble);
             }
@@ -130,9 +151,7 @@ public class MarkerHandler {
                 map.put(IMarker.MESSAGE, "Key " + msg.getKey() + " is undefined");
                 map.put(IMarker.SEVERITY, Integer.valueOf(IMarker.SEVERITY_WARNING));
                 
-                MarkerUtilities.createMarker(resource, map, IMarker.PROBLEM);
-            } catch (CoreException ce) {
-                TexlipsePlugin.log("Creating marker", ce);
+                addMarker(resource, map, IMarker.PROBLEM);
             } catch (BadLocationException ble) {
                 TexlipsePlugin.log("Creating marker", ble);
             }
@@ -149,15 +168,11 @@ public class MarkerHandler {
         IResource resource = (IResource) editor.getEditorInput().getAdapter(IResource.class);
         if (resource == null) return;
         //IDocument document = editor.getDocumentProvider().getDocument(editor.getEditorInput());
-        try {
-            Map<String, ? super Object> map = new HashMap<String, Object>();
-            map.put(IMarker.MESSAGE, error);
-            map.put(IMarker.SEVERITY, Integer.valueOf(IMarker.SEVERITY_ERROR));
-            
-            MarkerUtilities.createMarker(resource, map, IMarker.PROBLEM);
-        } catch (CoreException ce) {
-            TexlipsePlugin.log("Creating marker", ce);
-        }
+        Map<String, ? super Object> map = new HashMap<String, Object>();
+        map.put(IMarker.MESSAGE, error);
+        map.put(IMarker.SEVERITY, Integer.valueOf(IMarker.SEVERITY_ERROR));
+        
+        addMarker(resource, map, IMarker.PROBLEM);
     }
 
     /**
@@ -171,6 +186,7 @@ public class MarkerHandler {
         // -> we should somehow inform the user
         IResource resource = (IResource) editor.getEditorInput().getAdapter(IResource.class);
         if (resource == null) return;
+        if (clearUpdate(resource, IMarker.PROBLEM)) return;
 
         try {
             // TODO what should we clear and when?
@@ -190,6 +206,7 @@ public class MarkerHandler {
      * @param resource The resource whose markers to clear
      */
     public void clearProblemMarkers(IResource resource) {
+        if (clearUpdate(resource, IMarker.PROBLEM)) return;
         try {
             resource.deleteMarkers(IMarker.PROBLEM, false, IResource.DEPTH_INFINITE);
         } catch (CoreException e) {
@@ -205,6 +222,7 @@ public class MarkerHandler {
     public void clearTaskMarkers(ITextEditor editor) {
         IResource resource = (IResource) editor.getEditorInput().getAdapter(IResource.class);
         if (resource == null) return;
+        if (clearUpdate(resource, IMarker.TASK)) return;
         try {
             resource.deleteMarkers(IMarker.TASK, false, IResource.DEPTH_INFINITE);
         } catch (CoreException e) {
@@ -212,6 +230,179 @@ public class MarkerHandler {
         }
     }
 
+    /**
+     * Starts a marker update of the file in the given editor. Until the update
+     * is ended, the problem and task markers of the file are collected instead
+     * of being created. Clearing the markers only discards the collected ones.
+     * 
+     * @param editor The editor whose markers to update
+     * @param replace Whether the existing markers are replaced by the collected
+     *  ones, or the collected markers are only added
+     * @see #endUpdate(ITextEditor)
+     */
+    public void beginUpdate(ITextEditor editor, boolean replace) {
+        IResource resource = (IResource) editor.getEditorInput().getAdapter(IResource.class);
+        if (resource == null) return;
+        MarkerUpdate update = new MarkerUpdate();
+        if (replace) {
+            for (String type : UPDATE_TYPES) {
+                update.replaceTypes.add(type);
+            }
+        }
+        synchronized (updates) {
+            updates.put(resource, update);
+        }
+    }
+
+    /**
+     * Ends the marker update of the file in the given editor. The collected
+     * markers are compared to the existing markers by type, position, severity
+     * and message, and only the differences are applied, in one workspace
+     * operation.
+     * 
+     * @param editor The editor whose markers to update
+     * @see #beginUpdate(ITextEditor, boolean)
+     */
+    public void endUpdate(ITextEditor editor) {
+        final IResource resource = (IResource) editor.getEditorInput().getAdapter(IResource.class);
+        if (resource == null) return;
+        final MarkerUpdate update;
+        synchronized (updates) {
+            update = updates.remove(resource);
+        }
+        if (update == null || !resource.exists()) return;
+        
+        IWorkspace workspace = ResourcesPlugin.getWorkspace();
+        try {
+            workspace.run(new IWorkspaceRunnable() {
+                public void run(IProgressMonitor monitor) throws CoreException {
+                    for (String type : UPDATE_TYPES) {
+                        applyUpdate(resource, type, update);
+                    }
+                }
+            }, workspace.getRuleFactory().markerRule(resource), IWorkspace.AVOID_UPDATE, null);
+        } catch (CoreException ce) {
+            TexlipsePlugin.log("Updating markers", ce);
+        }
+    }
+
+    /**
+     * Applies the collected markers of one type to the resource.
+     * 
+     * @param resource The resource
+     * @param type The marker type
+     * @param update The marker update
+     * @throws CoreException if the markers can not be read or changed
+     */
+    private void applyUpdate(IResource resource, String type, MarkerUpdate update)
+            throws CoreException {
+        // the existing markers by key
+        Map<String, List<IMarker>> existing = new HashMap<String, List<IMarker>>();
+        for (IMarker marker : resource.findMarkers(type, false, IResource.DEPTH_INFINITE)) {
+            String key = getMarkerKey(marker.getAttribute(IMarker.LINE_NUMBER, -1),
+                    marker.getAttribute(IMarker.CHAR_START, -1),
+                    marker.getAttribute(IMarker.CHAR_END, -1),
+                    marker.getAttribute(IMarker.SEVERITY, -1),
+                    marker.getAttribute(IMarker.PRIORITY, -1),
+                    marker.getAttribute(IMarker.MESSAGE, ""));
+            List<IMarker> same = existing.get(key);
+            if (same == null) {
+                same = new ArrayList<IMarker>(1);
+                existing.put(key, same);
+            }
+            same.add(marker);
+        }
+        
+        List<Map<String, ? super Object>> markers = update.markers.get(type);
+        if (markers != null) {
+            for (Map<String, ? super Object> map : markers) {
+                String key = getMarkerKey(getIntAttribute(map, IMarker.LINE_NUMBER),
+                        getIntAttribute(map, IMarker.CHAR_START),
+                        getIntAttribute(map, IMarker.CHAR_END),
+                        getIntAttribute(map, IMarker.SEVERITY),
+                        getIntAttribute(map, IMarker.PRIORITY),
+                        (String) map.get(IMarker.MESSAGE));
+                List<IMarker> same = existing.get(key);
+                if (same != null && !same.isEmpty()) {
+                    // keep the existing marker
+                    same.remove(same.size() - 1);
+                } else {
+                    MarkerUtilities.createMarker(resource, map, type);
+                }
+            }
+        }
+        
+        if (update.replaceTypes.contains(type)) {
+            List<IMarker> deletes = new ArrayList<IMarker>();
+            for (List<IMarker> same : existing.values()) {
+                deletes.addAll(same);
+            }
+            if (deletes.size() > 0) {
+                resource.getWorkspace().deleteMarkers(deletes.toArray(new IMarker[deletes.size()]));
+            }
+        }
+    }
+
+    private static int getIntAttribute(Map<String, ? super Object> map, String name) {
+        Object value = map.get(name);
+        return value instanceof Integer ? ((Integer) value).intValue() : -1;
+    }
+
+    private static String getMarkerKey(int line, int start, int end, int severity,
+            int priority, String message) {
+        return line + ":" + start + ":" + end + ":" + severity + ":" + priority + ":" + message;
+    }
+
+    /**
+     * Creates a marker, or collects it if a marker update of the resource is
+     * in progress.
+     * 
+     * @param resource The resource to create the marker to
+     * @param map The attributes of the marker
+     * @param markerType The type of the marker
+     */
+    private void addMarker(IResource resource, Map<String, ? super Object> map, String markerType) {
+        synchronized (updates) {
+            MarkerUpdate update = updates.get(resource);
+            if (update != null) {
+                List<Map<String, ? super Object>> markers = update.markers.get(markerType);
+                if (markers == null) {
+                    markers = new ArrayList<Map<String, ? super Object>>();
+                    update.markers.put(markerType, markers);
+                }
+                markers.add(map);
+                return;
+            }
+        }
+        try {
+            MarkerUtilities.createMarker(resource, map, markerType);
+        } catch (CoreException ce) {
+            TexlipsePlugin.log("Creating marker", ce);
+        }
+    }
+
+    /**
+     * Clears the collected markers of the given type, if a marker update of
+     * the resource is in progress. The existing markers of the type are then
+     * replaced when the update ends.
+     * 
+     * @param resource The resource
+     * @param markerType The type of the markers
+     * @return true if an update is in progress, false if the markers have
+     *  to be deleted
+     */
+    private boolean clearUpdate(IResource resource, String markerType) {
+        synchronized (updates) {
+            MarkerUpdate update = updates.get(resource);
+            if (update == null) {
+                return false;
+            }
+            update.markers.remove(markerType);
+            update.replaceTypes.add(markerType);
+            return true;
+        }
+    }
+
     /**
      * Creates an error marker on the given line
      * 
@@ -220,17 +411,13 @@ public class MarkerHandler {
      * @param lineNumber The line number to create the error on
      */
     public void createErrorMarker(IResource resource, String message, int lineNumber) {
-        try {
-            Map<String, ? super Object> map = new HashMap<String, Object>();
-            map.put(IMarker.LINE_NUMBER, Integer.valueOf(lineNumber));
-            map.put(IMarker.MESSAGE, message);
-            
-            map.put(IMarker.SEVERITY, Integer.valueOf(IMarker.SEVERITY_ERROR));
-            
-            MarkerUtilities.createMarker(resource, map, IMarker.PROBLEM);
-        } catch (CoreException ce) {
-            TexlipsePlugin.log("Creating marker", ce);
-        }
+        Map<String, ? super Object> map = new HashMap<String, Object>();
+        map.put(IMarker.LINE_NUMBER, Integer.valueOf(lineNumber));
+        map.put(IMarker.MESSAGE, message);
+        
+        map.put(IMarker.SEVERITY, Integer.valueOf(IMarker.SEVERITY_ERROR));
+        
+        addMarker(resource, map, IMarker.PROBLEM);
     }
     
 }
@@ -88,6 +88,39 @@ public class OutlineNode {
         return on;
     }
     
+    /**
+     * Checks if this copy of a node is up to date with the given node,
+     * i.e. has the same lines and shares its position.
+     * 
+     * @param n the node this node is a copy of
+     * @return true, if <code>updateCopy</code> would not change this node
+     */
+    public boolean isCopyOf(OutlineNode n) {
+        return n.beginLine == beginLine && n.endLine == endLine
+                && n.offsetOnLine == offsetOnLine && n.declarationLength == declarationLength
+                && n.position == position;
+    }
+
+    /**
+     * Updates this copy of a node with the data of the given node, which
+     * has the same name and type. Unlike <code>update</code>, the position
+     * of the given node is shared as in <code>copy</code>.
+     * 
+     * @param n the node this node is a copy of
+     * @return true, if an update was necessary
+     */
+    public boolean updateCopy(OutlineNode n) {
+        if (!isCopyOf(n)) {
+            beginLine = n.beginLine;
+            endLine = n.endLine;
+            offsetOnLine = n.offsetOnLine;
+            declarationLength = n.declarationLength;
+            position = n.position;
+            return true;
+        }
+        return false;
+    }
+
     /**
      * Adds a child to this node.
      * 
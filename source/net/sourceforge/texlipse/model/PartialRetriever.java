@@ -9,8 +9,11 @@
  */
 package net.sourceforge.texlipse.model;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
+import java.util.PriorityQueue;
 
 /**
  * This class provides methods for retrieving partial matches from arrays.
@@ -67,6 +70,57 @@ public abstract class PartialRetriever {
         }
     }
 
+    /**
+     * Merges the given sorted lists into one sorted list. The merge takes
+     * O(n log k) time for n entries in k lists. Entries which are equal
+     * according to the comparator keep the order of their lists.
+     * 
+     * @param lists The sorted lists
+     * @param comparator The comparator the lists are sorted with
+     * @return A new sorted list containing the entries of all lists
+     */
+    public static <T> List<T> mergeSorted(final List<? extends List<? extends T>> lists,
+            final Comparator<? super T> comparator) {
+        int size = 0;
+        for (List<? extends T> list : lists) {
+            size += list.size();
+        }
+        List<T> merged = new ArrayList<T>(size);
+        if (lists.size() == 1) {
+            merged.addAll(lists.get(0));
+            return merged;
+        }
+
+        // the heap holds the index of the list and the position in the list
+        final int[] positions = new int[lists.size()];
+        PriorityQueue<Integer> heap = new PriorityQueue<Integer>(Math.max(1, lists.size()),
+                new Comparator<Integer>() {
+            public int compare(Integer i1, Integer i2) {
+                int a = i1.intValue();
+                int b = i2.intValue();
+                int c = comparator.compare(lists.get(a).get(positions[a]),
+                        lists.get(b).get(positions[b]));
+                return c != 0 ? c : a - b;
+            }
+        });
+        for (int i = 0; i < lists.size(); i++) {
+            if (lists.get(i).size() > 0) {
+                heap.add(Integer.valueOf(i));
+            }
+        }
+        while (!heap.isEmpty()) {
+            Integer top = heap.poll();
+            int i = top.intValue();
+            List<? extends T> list = lists.get(i);
+            merged.add(list.get(positions[i]));
+            positions[i]++;
+            if (positions[i] < list.size()) {
+                heap.add(top);
+            }
+        }
+        return merged;
+    }
+
     /**
      * Search the given (sorted) array of entries for all entries,
      * for which the start of the key matches the given search string.
@@ -0,0 +1,481 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2026 by the TeXlapse Team.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package net.sourceforge.texlipse.model;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import net.sourceforge.texlipse.TexlipsePlugin;
+
+import org.eclipse.core.resources.IProject;
+
+
+/**
+ * A persistent index of the symbols extracted from the files of a project,
+ * i.e. the labels, commands and BibTeX data of the LaTeX files and the
+ * entries of the BibTeX files. Every file is stored with the hash value of
+ * its contents, so the symbols of a file can be reused in a later session
+ * as long as the file has not changed.
+ * <p>
+ * The index is stored in the working location of the project, which lies
+ * in the metadata area of the workspace.
+ *
+ * @see TexDocumentModel
+ */
+public class ProjectSymbolIndex {
+
+    private static final String INDEX_FILE = "symbolIndex.dat";
+    private static final int INDEX_MAGIC = 0x54535849;
+    // must be increased whenever the file format changes
+    private static final int INDEX_VERSION = 1;
+    private static final String MD_ALGORITHM = "SHA-256";
+
+    private static final Map<IProject, ProjectSymbolIndex> instances =
+        new HashMap<IProject, ProjectSymbolIndex>();
+
+    /**
+     * The symbols of a single LaTeX file.
+     */
+    public static class FileSymbols {
+        public List<ReferenceEntry> labels;
+        public List<TexCommandEntry> commands;
+        public String[] bibs;
+        public String bibstyle;
+        public String preamble;
+        public boolean biblatexMode;
+        public String biblatexBackend;
+    }
+
+    // a record of the index
+    private static class IndexEntry {
+        byte[] hash;
+        FileSymbols symbols;
+        List<ReferenceEntry> bibEntries;
+    }
+
+    private final IProject project;
+
+    // the LaTeX files by project relative path
+    private Map<String, IndexEntry> files;
+    // the BibTeX files by path
+    private Map<String, IndexEntry> bibFiles;
+    // the names of the files used in this session
+    private Set<String> usedFiles;
+    private Set<String> usedBibFiles;
+    private boolean loaded;
+    private boolean dirty;
+
+    /**
+     * Returns the index of the given project. The index is read from
+     * disk, when it is first used.
+     *
+     * @param project the project
+     * @return the index
+     */
+    public static synchronized ProjectSymbolIndex getInstance(IProject project) {
+        ProjectSymbolIndex index = instances.get(project);
+        if (index == null) {
+            index = new ProjectSymbolIndex(project);
+            instances.put(project, index);
+        }
+        return index;
+    }
+
+    /**
+     * Computes the hash value of the contents of a file.
+     *
+     * @param contents the file contents
+     * @return the hash value
+     */
+    public static byte[] getHash(String contents) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance(MD_ALGORITHM);
+            return digest.digest(contents.getBytes("UTF-8"));
+        } catch (NoSuchAlgorithmException e) {
+            // Should not occur if JRE is set up properly
+            return null;
+        } catch (UnsupportedEncodingException e) {
+            return null;
+        }
+    }
+
+    private ProjectSymbolIndex(IProject project) {
+        this.project = project;
+        this.files = new HashMap<String, IndexEntry>();
+        this.bibFiles = new HashMap<String, IndexEntry>();
+        this.usedFiles = new HashSet<String>();
+        this.usedBibFiles = new HashSet<String>();
+    }
+
+    /**
+     * Returns the symbols of a LaTeX file, if they are known for the
+     * given contents.
+     *
+     * @param name the project relative path of the file
+     * @param hash the hash value of the current contents
+     * @return a copy of the symbols, or null if the file has to be parsed
+     */
+    public synchronized FileSymbols getFileSymbols(String name, byte[] hash) {
+        load();
+        usedFiles.add(name);
+        IndexEntry entry = files.get(name);
+        if (entry == null || hash == null || !Arrays.equals(entry.hash, hash)) {
+            return null;
+        }
+        return copySymbols(entry.symbols);
+    }
+
+    /**
+     * Stores a copy of the symbols of a LaTeX file.
+     *
+     * @param name the project relative path of the file
+     * @param hash the hash value of the contents the symbols were extracted from
+     * @param symbols the symbols
+     */
+    public synchronized void putFileSymbols(String name, byte[] hash, FileSymbols symbols) {
+        load();
+        usedFiles.add(name);
+        if (hash == null) {
+            return;
+        }
+        IndexEntry entry = new IndexEntry();
+        entry.hash = hash;
+        entry.symbols = copySymbols(symbols);
+        files.put(name, entry);
+        dirty = true;
+    }
+
+    /**
+     * Returns the entries of a BibTeX file, if they are known for the
+     * given contents.
+     *
+     * @param path the path of the file
+     * @param hash the hash value of the current contents
+     * @return a copy of the entries, or null if the file has to be parsed
+     */
+    public synchronized List<ReferenceEntry> getBibEntries(String path, byte[] hash) {
+        load();
+        usedBibFiles.add(path);
+        IndexEntry entry = bibFiles.get(path);
+        if (entry == null || hash == null || !Arrays.equals(entry.hash, hash)) {
+            return null;
+        }
+        return copyReferences(entry.bibEntries);
+    }
+
+    /**
+     * Stores a copy of the entries of a BibTeX file. Nothing is stored,
+     * if the index already has the entries of the same contents.
+     *
+     * @param path the path of the file
+     * @param hash the hash value of the contents the entries were extracted from
+     * @param entries the entries
+     */
+    public synchronized void putBibEntries(String path, byte[] hash, List<ReferenceEntry> entries) {
+        load();
+        usedBibFiles.add(path);
+        if (hash == null) {
+            return;
+        }
+        IndexEntry old = bibFiles.get(path);
+        if (old != null && Arrays.equals(old.hash, hash)) {
+            return;
+        }
+        IndexEntry entry = new IndexEntry();
+        entry.hash = hash;
+        entry.bibEntries = copyReferences(entries);
+        bibFiles.put(path, entry);
+        dirty = true;
+    }
+
+    /**
+     * Copies the symbols, so that the containers may change the entries
+     * and lists without affecting the index.
+     */
+    private static FileSymbols copySymbols(FileSymbols symbols) {
+        FileSymbols copy = new FileSymbols();
+        copy.labels = copyReferences(symbols.labels);
+        copy.commands = new ArrayList<TexCommandEntry>(symbols.commands.size());
+        for (TexCommandEntry command : symbols.commands) {
+            TexCommandEntry c = new TexCommandEntry(command);
+            c.startLine = command.startLine;
+            c.position = command.position;
+            c.fileName = command.fileName;
+            copy.commands.add(c);
+        }
+        copy.bibs = symbols.bibs != null ? (String[]) symbols.bibs.clone() : null;
+        copy.bibstyle = symbols.bibstyle;
+        copy.preamble = symbols.preamble;
+        copy.biblatexMode = symbols.biblatexMode;
+        copy.biblatexBackend = symbols.biblatexBackend;
+        return copy;
+    }
+
+    private static List<ReferenceEntry> copyReferences(List<ReferenceEntry> refs) {
+        List<ReferenceEntry> copy = new ArrayList<ReferenceEntry>(refs.size());
+        for (ReferenceEntry ref : refs) {
+            copy.add((ReferenceEntry) ref.copy());
+        }
+        return copy;
+    }
+
+    /**
+     * Writes the index to disk, if it has changed. Files that have not been
+     * used in this session are dropped from the index.
+     */
+    public synchronized void save() {
+        if (!dirty) {
+            return;
+        }
+        files.keySet().retainAll(usedFiles);
+        bibFiles.keySet().retainAll(usedBibFiles);
+        File indexFile = getIndexFile();
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(indexFile)));
+            try {
+                out.writeInt(INDEX_MAGIC);
+                out.writeInt(INDEX_VERSION);
+                out.writeInt(files.size());
+                for (Map.Entry<String, IndexEntry> e : files.entrySet()) {
+                    writeString(out, e.getKey());
+                    writeHash(out, e.getValue().hash);
+                    writeSymbols(out, e.getValue().symbols);
+                }
+                out.writeInt(bibFiles.size());
+                for (Map.Entry<String, IndexEntry> e : bibFiles.entrySet()) {
+                    writeString(out, e.getKey());
+                    writeHash(out, e.getValue().hash);
+                    writeReferences(out, e.getValue().bibEntries);
+                }
+            } finally {
+                out.close();
+            }
+            dirty = false;
+        } catch (IOException e) {
+            TexlipsePlugin.log("Unable to write the symbol index of " + project.getName(), e);
+            indexFile.delete();
+        }
+    }
+
+    /**
+     * @return the file, where the index is stored
+     */
+    private File getIndexFile() {
+        return project.getWorkingLocation(TexlipsePlugin.getPluginId())
+            .append(INDEX_FILE).toFile();
+    }
+
+    /**
+     * Reads the index from disk, if this has not been done yet. A missing
+     * or damaged index is ignored.
+     */
+    private void load() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        File indexFile = getIndexFile();
+        if (!indexFile.isFile()) {
+            return;
+        }
+        Map<String, IndexEntry> newFiles = new HashMap<String, IndexEntry>();
+        Map<String, IndexEntry> newBibFiles = new HashMap<String, IndexEntry>();
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(
+                    new FileInputStream(indexFile)));
+            try {
+                if (in.readInt() != INDEX_MAGIC || in.readInt() != INDEX_VERSION) {
+                    return;
+                }
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    String name = readString(in);
+                    IndexEntry entry = new IndexEntry();
+                    entry.hash = readHash(in);
+                    entry.symbols = readSymbols(in, name);
+                    newFiles.put(name, entry);
+                }
+                count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    String path = readString(in);
+                    IndexEntry entry = new IndexEntry();
+                    entry.hash = readHash(in);
+                    entry.bibEntries = readReferences(in);
+                    newBibFiles.put(path, entry);
+                }
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            // a damaged index is rebuilt
+            return;
+        } catch (RuntimeException e) {
+            return;
+        }
+        files = newFiles;
+        bibFiles = newBibFiles;
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = s.getBytes("UTF-8");
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+
+    private static void writeHash(DataOutputStream out, byte[] hash) throws IOException {
+        out.writeInt(hash.length);
+        out.write(hash);
+    }
+
+    private static byte[] readHash(DataInputStream in) throws IOException {
+        byte[] hash = new byte[in.readInt()];
+        in.readFully(hash);
+        return hash;
+    }
+
+    private static void writeEntry(DataOutputStream out, AbstractEntry entry) throws IOException {
+        writeString(out, entry.key);
+        out.writeInt(entry.startLine);
+        if (entry.position != null) {
+            out.writeInt(entry.position.getOffset());
+            out.writeInt(entry.position.getLength());
+        } else {
+            out.writeInt(-1);
+            out.writeInt(-1);
+        }
+    }
+
+    private static void readEntry(DataInputStream in, AbstractEntry entry) throws IOException {
+        entry.key = readString(in);
+        entry.startLine = in.readInt();
+        int offset = in.readInt();
+        int length = in.readInt();
+        if (offset >= 0) {
+            entry.setPosition(offset, length);
+        }
+    }
+
+    private static void writeReferences(DataOutputStream out, List<ReferenceEntry> refs) throws IOException {
+        out.writeInt(refs.size());
+        for (ReferenceEntry ref : refs) {
+            writeEntry(out, ref);
+            writeString(out, ref.info);
+            out.writeInt(ref.endLine);
+            writeString(out, ref.author);
+            writeString(out, ref.journal);
+            writeString(out, ref.year);
+            writeString(out, ref.refFile != null ? ref.refFile.getPath() : null);
+        }
+    }
+
+    private static List<ReferenceEntry> readReferences(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        List<ReferenceEntry> refs = new ArrayList<ReferenceEntry>(count);
+        for (int i = 0; i < count; i++) {
+            ReferenceEntry ref = new ReferenceEntry(null);
+            readEntry(in, ref);
+            ref.info = readString(in);
+            ref.endLine = in.readInt();
+            ref.author = readString(in);
+            ref.journal = readString(in);
+            ref.year = readString(in);
+            String refFile = readString(in);
+            if (refFile != null) {
+                ref.refFile = new File(refFile);
+            }
+            refs.add(ref);
+        }
+        return refs;
+    }
+
+    private static void writeSymbols(DataOutputStream out, FileSymbols symbols) throws IOException {
+        writeReferences(out, symbols.labels);
+        out.writeInt(symbols.commands.size());
+        for (TexCommandEntry command : symbols.commands) {
+            writeEntry(out, command);
+            writeString(out, command.info);
+            out.writeInt(command.arguments);
+            out.writeInt(command.context);
+            writeString(out, command.depend);
+            out.writeInt(command.parameter.length);
+            for (int i = 0; i < command.parameter.length; i++) {
+                out.writeInt(command.parameter[i]);
+            }
+        }
+        out.writeInt(symbols.bibs.length);
+        for (int i = 0; i < symbols.bibs.length; i++) {
+            writeString(out, symbols.bibs[i]);
+        }
+        writeString(out, symbols.bibstyle);
+        writeString(out, symbols.preamble);
+        out.writeBoolean(symbols.biblatexMode);
+        writeString(out, symbols.biblatexBackend);
+    }
+
+    private static FileSymbols readSymbols(DataInputStream in, String name) throws IOException {
+        FileSymbols symbols = new FileSymbols();
+        symbols.labels = readReferences(in);
+        int count = in.readInt();
+        symbols.commands = new ArrayList<TexCommandEntry>(count);
+        for (int i = 0; i < count; i++) {
+            TexCommandEntry command = new TexCommandEntry(null, null, 0);
+            readEntry(in, command);
+            command.info = readString(in);
+            command.arguments = in.readInt();
+            command.context = in.readInt();
+            command.depend = readString(in);
+            command.parameter = new int[in.readInt()];
+            for (int j = 0; j < command.parameter.length; j++) {
+                command.parameter[j] = in.readInt();
+            }
+            symbols.commands.add(command);
+        }
+        symbols.bibs = new String[in.readInt()];
+        for (int i = 0; i < symbols.bibs.length; i++) {
+            symbols.bibs[i] = readString(in);
+        }
+        symbols.bibstyle = readString(in);
+        symbols.preamble = readString(in);
+        symbols.biblatexMode = in.readBoolean();
+        symbols.biblatexBackend = readString(in);
+        return symbols;
+    }
+}
@@ -0,0 +1,308 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2026 by the TeXlapse Team.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package net.sourceforge.texlipse.model;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import net.sourceforge.texlipse.TexlipsePlugin;
+import net.sourceforge.texlipse.outline.TexProjectOutline;
+import net.sourceforge.texlipse.properties.TexlipseProperties;
+import net.sourceforge.texlipse.texparser.LatexWordCounter;
+
+import org.eclipse.core.resources.IFile;
+
+/**
+ * Counts the words of a whole document, i.e. the main file of a project
+ * and all the files it includes. The files are counted in parallel and the
+ * results are cached by the contents of the files, so unchanged files are
+ * not counted again. Files open in an editor are counted from the contents
+ * of the editor, including the unsaved changes.
+ * <p>
+ * Besides the total, the words of each section of the document are
+ * available. The words of an included file belong to the section that
+ * contains the include command.
+ *
+ * @see LatexWordCounter
+ */
+public class ProjectWordCounter {
+
+    /**
+     * The maximum number of files in the cache
+     */
+    public static final int MAX_CACHED_FILES = 1000;
+
+    // the words per line of the counted files by the hash of their contents
+    private static final LinkedHashMap<String, int[]> cache =
+        new LinkedHashMap<String, int[]>(16, 0.75f, true);
+
+    /**
+     * The words of one section of the document.
+     */
+    public static class SectionWords {
+
+        private final OutlineNode node;
+        private final int words;
+
+        SectionWords(OutlineNode node, int words) {
+            this.node = node;
+            this.words = words;
+        }
+
+        /**
+         * @return The outline node of the section
+         */
+        public OutlineNode getNode() {
+            return node;
+        }
+
+        /**
+         * @return The number of words in the section
+         */
+        public int getWords() {
+            return words;
+        }
+    }
+
+    private final TexProjectOutline outline;
+    private List<IFile> files;
+    // the sums of the words up to each line of the files
+    private Map<IFile, int[]> lineSums;
+
+    /**
+     * Creates a new word counter for the document of a project.
+     *
+     * @param outline The outline of the project
+     */
+    public ProjectWordCounter(TexProjectOutline outline) {
+        this.outline = outline;
+    }
+
+    /**
+     * Counts the words of all files of the document. This can take a while
+     * for a large document, so it should not be called in the UI thread.
+     *
+     * @param documents The contents of the files open in editors, which are
+     * counted instead of the saved files
+     * @throws InterruptedException If the thread was interrupted while waiting
+     * for the counts
+     */
+    public void count(final Map<IFile, String> documents) throws InterruptedException {
+        files = outline.getIncludedFiles();
+        lineSums = new HashMap<IFile, int[]>(files.size() * 2);
+
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.max(1, Math.min(files.size(), Runtime.getRuntime().availableProcessors())));
+        List<Future<int[]>> results = new ArrayList<Future<int[]>>(files.size());
+        for (final IFile file : files) {
+            results.add(executor.submit(new Callable<int[]>() {
+                public int[] call() throws IOException {
+                    String contents = documents.get(file);
+                    if (contents == null) {
+                        contents = TexlipseProperties.getFileContents(file);
+                    }
+                    return countFile(contents);
+                }
+            }));
+        }
+        executor.shutdown();
+
+        try {
+            for (int i = 0; i < files.size(); i++) {
+                IFile file = files.get(i);
+                int[] words;
+                try {
+                    words = results.get(i).get();
+                } catch (ExecutionException e) {
+                    TexlipsePlugin.log("Unable to count the words of " + file.getFullPath(), e.getCause());
+                    continue;
+                }
+                if (words != null) {
+                    lineSums.put(file, words);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Counts the words of a file, or takes them from the cache.
+     *
+     * @param contents The contents of the file, or null if it could not be read
+     * @return The sums of the words up to each line or null if the file
+     * could not be counted
+     */
+    private static int[] countFile(String contents) {
+        if (contents == null) {
+            return null;
+        }
+        byte[] hash = ProjectSymbolIndex.getHash(contents);
+        String key = hash != null ? new BigInteger(1, hash).toString(16) : null;
+        if (key != null) {
+            synchronized (cache) {
+                int[] sums = cache.get(key);
+                if (sums != null) {
+                    return sums;
+                }
+            }
+        }
+
+        int[] words = new LatexWordCounter(contents).countWordsByLine();
+        if (words == null) {
+            return null;
+        }
+        int[] sums = new int[words.length + 1];
+        for (int i = 0; i < words.length; i++) {
+            sums[i + 1] = sums[i] + words[i];
+        }
+
+        if (key != null) {
+            synchronized (cache) {
+                cache.put(key, sums);
+                Iterator<int[]> iter = cache.values().iterator();
+                while (cache.size() > MAX_CACHED_FILES && iter.hasNext()) {
+                    iter.next();
+                    iter.remove();
+                }
+            }
+        }
+        return sums;
+    }
+
+    /**
+     * @return The counted files of the document, the main file first
+     */
+    public List<IFile> getFiles() {
+        return files;
+    }
+
+    /**
+     * @return The total number of words in the document
+     */
+    public int getTotal() {
+        int total = 0;
+        for (int[] sums : lineSums.values()) {
+            total += sums[sums.length - 1];
+        }
+        return total;
+    }
+
+    /**
+     * Returns the number of words in the given file, not including the
+     * files it includes.
+     *
+     * @param file The file
+     * @return The number of words or -1 if the file was not counted
+     */
+    public int getWords(IFile file) {
+        int[] sums = lineSums.get(file);
+        return sums != null ? sums[sums.length - 1] : -1;
+    }
+
+    /**
+     * Returns the number of words on the given lines of a file.
+     *
+     * @param file The file
+     * @param beginLine The first line (1 is the first line of the file)
+     * @param endLine The line after the last line, or a value not larger
+     * than <code>beginLine</code> for the end of the file
+     * @return The number of words or 0 if the file was not counted
+     */
+    public int getWords(IFile file, int beginLine, int endLine) {
+        int[] sums = lineSums.get(file);
+        if (sums == null) {
+            return 0;
+        }
+        int last = sums.length - 1;
+        int begin = Math.min(Math.max(beginLine - 1, 0), last);
+        int end = endLine > beginLine ? Math.min(endLine - 1, last) : last;
+        return sums[end] - sums[begin];
+    }
+
+    /**
+     * Returns the top level sections of the document with their number
+     * of words. The sections of included files are listed in place of the
+     * include command, unless the command is inside a section.
+     *
+     * @return The sections in document order
+     */
+    public List<SectionWords> getSections() {
+        List<SectionWords> sections = new ArrayList<SectionWords>();
+        if (files != null && files.size() > 0) {
+            Set<IFile> visited = new HashSet<IFile>();
+            visited.add(files.get(0));
+            addSections(files.get(0), outline.getOutline(files.get(0)), sections, visited);
+        }
+        return sections;
+    }
+
+    private void addSections(IFile file, List<OutlineNode> nodes, List<SectionWords> sections,
+            Set<IFile> visited) {
+        if (nodes == null) {
+            return;
+        }
+        for (OutlineNode node : nodes) {
+            if (isSection(node)) {
+                int words = getWords(file, node.getBeginLine(), node.getEndLine());
+                words += getIncludedWords(node.getChildren(), visited);
+                sections.add(new SectionWords(node, words));
+            } else if (node.getType() == OutlineNode.TYPE_INPUT) {
+                IFile includedFile = outline.findInclude(node.getName());
+                if (includedFile != null && visited.add(includedFile)) {
+                    addSections(includedFile, outline.getOutline(includedFile), sections, visited);
+                }
+            } else if (node.getChildren() != null) {
+                addSections(file, node.getChildren(), sections, visited);
+            }
+        }
+    }
+
+    /**
+     * Sums up the words of the files included by the given nodes and
+     * their children, including the files that these files include.
+     */
+    private int getIncludedWords(List<OutlineNode> nodes, Set<IFile> visited) {
+        if (nodes == null) {
+            return 0;
+        }
+        int words = 0;
+        for (OutlineNode node : nodes) {
+            if (node.getType() == OutlineNode.TYPE_INPUT) {
+                IFile includedFile = outline.findInclude(node.getName());
+                if (includedFile != null && visited.add(includedFile)) {
+                    words += Math.max(getWords(includedFile), 0);
+                    words += getIncludedWords(outline.getOutline(includedFile), visited);
+                }
+            } else {
+                words += getIncludedWords(node.getChildren(), visited);
+            }
+        }
+        return words;
+    }
+
+    private static boolean isSection(OutlineNode node) {
+        return node.getType() >= OutlineNode.TYPE_PART
+            && node.getType() <= OutlineNode.TYPE_PARAGRAPH;
+    }
+}
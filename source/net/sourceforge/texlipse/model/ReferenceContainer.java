@@ -28,8 +28,18 @@ import java.util.Map;
  */
 public class ReferenceContainer {
 
+    /**
+     * Compares the entries by their lower case keys
+     */
+    private static final Comparator<ReferenceEntry> LOWER_CASE_ORDER = new Comparator<ReferenceEntry>() {
+        public int compare(ReferenceEntry o1, ReferenceEntry o2) {
+            return o1.getkey(true).compareTo(o2.getkey(true));
+        }
+    };
+
     private Map<String, List<ReferenceEntry>> referenceHash;
     private List<ReferenceEntry> sortedReferences;
+    private CompletionIndex<ReferenceEntry> completionIndex;
     private int size;
     
     /**
@@ -38,6 +48,7 @@ public class ReferenceContainer {
     public ReferenceContainer() {
         referenceHash = new HashMap<String, List<ReferenceEntry>>(4);
         sortedReferences = null;
+        completionIndex = new CompletionIndex<ReferenceEntry>(true);
         size = 0;
     }
     
@@ -66,10 +77,15 @@ public class ReferenceContainer {
     	    r.fileName = key;
         }
     	
+        // Keep every source sorted, so organizing only needs to merge them
+        List<ReferenceEntry> sortedRefs = new ArrayList<ReferenceEntry>(refs);
+        Collections.sort(sortedRefs, LOWER_CASE_ORDER);
+
         size += refs.size();
-        List<ReferenceEntry> al = referenceHash.put(key, refs);
+        List<ReferenceEntry> al = referenceHash.put(key, sortedRefs);
         if (al != null)
             size -= al.size();
+        completionIndex.setSource(key, refs);
     }
         
     /**
@@ -95,33 +111,102 @@ public class ReferenceContainer {
     }
 
     /**
-     * Organizes the data from the reference hashes to the sorted array
-     * <code>sortedReferences</code>.
+     * Updates the contents of this object if the given key exists in the
+     * internal set, by replacing only the given references of the source.
+     * The other references of the source are kept, and the sorted reference
+     * array is updated in place of re-creating it, so the cost depends on
+     * the number of changed references. If the source does not contain the
+     * old references (e.g. it has been read from the file since), it is
+     * replaced with all the given references.
+     * 
+     * @param key The key with which the reference source is associated
+     * @param refs All references of the source after the change
+     * @param oldRefs The references to remove from the source
+     * @param newRefs The references to add to the source
+     * @return True if the internal set was changed
+     * @see #updateRefSource(String, List)
      */
-    public void organize() {
-        if (referenceHash.size() == 0) {
-            sortedReferences = new ArrayList<ReferenceEntry>(0);
-        	return;
+    public boolean updateRefSource(String key, List<ReferenceEntry> refs,
+            List<ReferenceEntry> oldRefs, List<ReferenceEntry> newRefs) {
+        List<ReferenceEntry> oldSortedRefs = referenceHash.get(key);
+        if (oldSortedRefs == null) {
+            return false;
         }
-        
-        List<ReferenceEntry> allRefs = new ArrayList<ReferenceEntry>(size);
-        if (referenceHash.size() > 1) {
-            for (Iterator<List<ReferenceEntry>> iter = referenceHash.values().iterator(); iter.hasNext();) {
-                List<ReferenceEntry> refList = iter.next();
-                allRefs.addAll(refList);
+        if (oldSortedRefs.size() != refs.size() - newRefs.size() + oldRefs.size()) {
+            return updateRefSource(key, refs);
+        }
+        // the lists of the sources may be merged by another thread,
+        // so they are replaced instead of changed
+        List<ReferenceEntry> sortedRefs = new ArrayList<ReferenceEntry>(oldSortedRefs);
+        for (ReferenceEntry r : oldRefs) {
+            if (!removeSorted(sortedRefs, r)) {
+                return updateRefSource(key, refs);
             }
-        } else if (referenceHash.size() == 1) {
-            Iterator<List<ReferenceEntry>> iter = referenceHash.values().iterator();
-            allRefs = iter.next();
         }
-        sortedReferences = allRefs;
-        
-        //Sort collections case insensitive
-        Collections.sort(sortedReferences, new Comparator<ReferenceEntry>() {
-            public int compare(ReferenceEntry o1, ReferenceEntry o2) {
-                return o1.getkey(true).compareTo(o2.getkey(true).toLowerCase());
+        // the sorted array may be in use, so it is replaced instead of changed
+        List<ReferenceEntry> newSorted = null;
+        if (sortedReferences != null) {
+            newSorted = new ArrayList<ReferenceEntry>(sortedReferences);
+            for (ReferenceEntry r : oldRefs) {
+                removeSorted(newSorted, r);
+            }
+        }
+        for (ReferenceEntry r : newRefs) {
+            r.fileName = key;
+            insertSorted(sortedRefs, r);
+            if (newSorted != null) {
+                insertSorted(newSorted, r);
+            }
+        }
+        referenceHash.put(key, sortedRefs);
+        if (newSorted != null) {
+            sortedReferences = newSorted;
+        }
+        size += newRefs.size() - oldRefs.size();
+        completionIndex.updateSource(key, oldRefs, newRefs);
+        return true;
+    }
+    
+    /**
+     * Removes the given reference (not an equal one) from a sorted list.
+     * 
+     * @return True if the reference was found
+     */
+    private static boolean removeSorted(List<ReferenceEntry> refs, ReferenceEntry ref) {
+        int index = Collections.binarySearch(refs, ref, LOWER_CASE_ORDER);
+        if (index < 0) {
+            return false;
+        }
+        // the references with the same key may be in any order
+        int first = index;
+        while (first > 0 && LOWER_CASE_ORDER.compare(refs.get(first - 1), ref) == 0) {
+            first--;
+        }
+        for (int i = first; i < refs.size() && LOWER_CASE_ORDER.compare(refs.get(i), ref) == 0; i++) {
+            if (refs.get(i) == ref) {
+                refs.remove(i);
+                return true;
             }
-        });
+        }
+        return false;
+    }
+    
+    /**
+     * Inserts the reference into a sorted list.
+     */
+    private static void insertSorted(List<ReferenceEntry> refs, ReferenceEntry ref) {
+        int index = Collections.binarySearch(refs, ref, LOWER_CASE_ORDER);
+        refs.add(index < 0 ? -index - 1 : index, ref);
+    }
+    
+    /**
+     * Organizes the data from the reference hashes to the sorted array
+     * <code>sortedReferences</code>. The references of each source are
+     * already sorted, so they are only merged.
+     */
+    public void organize() {
+        sortedReferences = PartialRetriever.mergeSorted(
+                new ArrayList<List<ReferenceEntry>>(referenceHash.values()), LOWER_CASE_ORDER);
     }
     
     /**
@@ -154,6 +239,11 @@ public class ReferenceContainer {
                 toParse.add(bib);
             }
         }
+        for (String bib : referenceHash.keySet()) {
+            if (!newHash.containsKey(bib)) {
+                completionIndex.removeSource(bib);
+            }
+        }
         referenceHash = newHash;
         size = newSize;
         
@@ -220,4 +310,14 @@ public class ReferenceContainer {
     public List<ReferenceEntry> getSortedReferences() {
         return sortedReferences;
     }
+
+    /**
+     * Returns the index for searching the references by substrings
+     * and fuzzy matches.
+     * 
+     * @return The completion index of this container
+     */
+    public CompletionIndex<ReferenceEntry> getCompletionIndex() {
+        return completionIndex;
+    }
 }
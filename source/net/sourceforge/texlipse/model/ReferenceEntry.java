@@ -14,6 +14,9 @@ import java.io.File;
 import java.io.IOException;
 import java.io.StringReader;
 
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.IRegion;
 
 /**
  * A class for containing LaTeX references (\label and BibTeX)
@@ -115,4 +118,31 @@ public final class ReferenceEntry extends AbstractEntry {
         info = extract.toString();
     }
 
+    /**
+     * Sets the lines surrounding the label as the info text. Unlike
+     * <code>setLabelInfo(String)</code>, only the needed lines are read.
+     * 
+     * @param document The document containing the label
+     */
+    public void setLabelInfo(IDocument document) {
+        StringBuilder extract = new StringBuilder();
+        int lines = document.getNumberOfLines();
+        int startLine = (this.startLine - labelPrecedingLines) >= 0 ?
+                this.startLine - labelPrecedingLines : 0;
+        int endLine = Math.min(this.startLine + labelFollowingLines, lines - 1);
+        try {
+            for (int i = startLine; i <= endLine; i++) {
+                IRegion line = document.getLineInformation(i);
+                // an empty last line is not a line for a reader either
+                if (i == lines - 1 && line.getLength() == 0) {
+                    break;
+                }
+                extract.append(document.get(line.getOffset(), line.getLength()));
+                extract.append(System.getProperty("line.separator"));
+            }
+        } catch (BadLocationException e) {
+        }
+        info = extract.toString();
+    }
+
 }
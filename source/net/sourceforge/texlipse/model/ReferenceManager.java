@@ -9,6 +9,7 @@
  */
 package net.sourceforge.texlipse.model;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -19,6 +20,12 @@ import java.util.List;
  */
 public class ReferenceManager extends PartialRetriever {
 
+    /**
+     * The maximum number of substring and fuzzy matches returned
+     * after the prefix matches
+     */
+    private static final int MAX_INDEX_COMPLETIONS = 100;
+
     private ReferenceContainer bibContainer;
     private ReferenceContainer labelContainer;
     private TexCommandContainer commandContainer;
@@ -89,7 +96,8 @@ public class ReferenceManager extends PartialRetriever {
     
     /**
      * Gets the completions for \ref (ie. the corresponding labels) that
-     * start with the given string.
+     * start with the given string, followed by the labels that contain
+     * the string or match it fuzzily.
      * 
      * @param start The string with which the completions should start
      * @return An array of completions or null if there were no completions
@@ -112,13 +120,14 @@ public class ReferenceManager extends PartialRetriever {
 
         bounds = getCompletionsBin(start, labels, true);
 
-        if (bounds[0] == -1) return null;
-        return labels.subList(bounds[0], bounds[1]);
+        return joinCompletions(labels, bounds, labelContainer.getCompletionIndex().find(start,
+                CompletionIndex.ANY_GROUP, MAX_INDEX_COMPLETIONS));
     }
 
     /**
      * Gets the completions for \cite (ie. the corresponding BibTeX entries)
-     * that start with the given string.
+     * that start with the given string, followed by the entries that contain
+     * the string or match it fuzzily.
      * 
      * @param start The string with which the completions should start
      * @return An array of completions or null if there were no completions
@@ -142,12 +151,14 @@ public class ReferenceManager extends PartialRetriever {
         // ...either solve problems with bounds or remove them...
         bounds = getCompletionsBin(start, bibEntries, true);
 
-        if (bounds[0] == -1) return null;
-        return bibEntries.subList(bounds[0], bounds[1]);
+        return joinCompletions(bibEntries, bounds, bibContainer.getCompletionIndex().find(start,
+                CompletionIndex.ANY_GROUP, MAX_INDEX_COMPLETIONS));
     }
 
     /**
-     * Returns command completions.
+     * Returns command completions. The commands starting with the given
+     * string come first, followed by the commands that contain the string
+     * or match it fuzzily.
      * 
      * @param start The string with which the completions should start
      * @return An array of completions or null if there were no completions
@@ -160,9 +171,30 @@ public class ReferenceManager extends PartialRetriever {
             return commands;
 
         int[] bounds = getCompletionsBin(start, commands, false);
-        if (bounds[1] == -1)
-            return null;
-        
-        return commands.subList(bounds[0], bounds[1]);
+        return joinCompletions(commands, bounds, commandContainer.getCompletionIndex().find(start,
+                context, MAX_INDEX_COMPLETIONS));
+    }
+
+    /**
+     * Appends the substring and fuzzy matches of the completion index
+     * to the prefix matches.
+     * 
+     * @param entries The sorted entries
+     * @param bounds The bounds of the prefix matches in <code>entries</code>
+     * @param matches The other matches from the completion index
+     * @return The completions or null if there were no completions
+     */
+    private static <T extends AbstractEntry> List<T> joinCompletions(List<T> entries,
+            int[] bounds, List<T> matches) {
+        if (bounds[0] == -1) {
+            return matches.size() > 0 ? matches : null;
+        }
+        if (matches.size() == 0) {
+            return entries.subList(bounds[0], bounds[1]);
+        }
+        List<T> completions = new ArrayList<T>(bounds[1] - bounds[0] + matches.size());
+        completions.addAll(entries.subList(bounds[0], bounds[1]));
+        completions.addAll(matches);
+        return completions;
     }
 }
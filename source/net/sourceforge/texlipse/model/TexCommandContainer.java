@@ -11,6 +11,7 @@ package net.sourceforge.texlipse.model;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -421,7 +422,31 @@ public class TexCommandContainer {
     	new TexCommandEntry("Pr", "\\Pr  \n\n", 0, TexCommandEntry.MATH_CONTEXT)
     };
 
+    // the key of the built-in commands in the completion index
+    private static final String BUILT_IN_SOURCE = "";
+
+    /**
+     * Compares the commands by their natural order (context and key)
+     */
+    private static final Comparator<TexCommandEntry> COMMAND_ORDER = new Comparator<TexCommandEntry>() {
+        public int compare(TexCommandEntry o1, TexCommandEntry o2) {
+            return o1.compareTo(o2);
+        }
+    };
+
+    /**
+     * The built-in commands of all contexts, sorted once
+     */
+    private static final List<TexCommandEntry> sortedBuiltIn = new ArrayList<TexCommandEntry>();
+    static {
+        addBuiltInCommands(sortedBuiltIn);
+        Collections.sort(sortedBuiltIn, COMMAND_ORDER);
+    }
+
     private Map<String, List<TexCommandEntry>> commandHash;
+    // the copies of the commands of each source for the math context
+    private Map<String, List<TexCommandEntry>> mathHash;
+    private CompletionIndex<TexCommandEntry> completionIndex;
     private List<TexCommandEntry> sortedCommands;
     private int size;
     //Saves the positions of the contexts
@@ -431,9 +456,14 @@ public class TexCommandContainer {
      * Constructs a new command container
      */
     public TexCommandContainer() {
-    	sortedCommands = new ArrayList<TexCommandEntry>(100);
         commandHash = new HashMap<String, List<TexCommandEntry>>(4);
-        contexts = new int[TexCommandEntry.NUMBER_OF_CONTEXTS + 1];
+        mathHash = new HashMap<String, List<TexCommandEntry>>(4);
+        completionIndex = new CompletionIndex<TexCommandEntry>(false) {
+            protected int getGroup(TexCommandEntry entry) {
+                return entry.context;
+            }
+        };
+        completionIndex.setSource(BUILT_IN_SOURCE, sortedBuiltIn);
         organize();
 //        for (int i=0; i<builtIn.length; i++) sortedCommands.add(builtIn[i]);
         size = 0;
@@ -453,74 +483,89 @@ public class TexCommandContainer {
             AbstractEntry r = (AbstractEntry) iter.next();
             r.fileName = key;
         }
+        //Keep every source sorted, so organizing only needs to merge them
+        List<TexCommandEntry> sortedRefs = new ArrayList<TexCommandEntry>(refs);
+        Collections.sort(sortedRefs, COMMAND_ORDER);
+
         size += refs.size();
-        List<TexCommandEntry> al = commandHash.put(key, refs);
+        List<TexCommandEntry> al = commandHash.put(key, sortedRefs);
         if (al != null)
             size -= al.size();
         //Check if something has changed
-        if (refs.equals(al))
+        if (sortedRefs.equals(al))
             return false;
-        else
-            return true;
+
+        //copy all commands and change the context to activate them also in mathmode
+        List<TexCommandEntry> mathRefs = new ArrayList<TexCommandEntry> (refs.size());
+        for (TexCommandEntry c : sortedRefs) {
+            TexCommandEntry element = new TexCommandEntry(c);
+            element.context = TexCommandEntry.MATH_CONTEXT;
+            mathRefs.add(element);
+        }
+        mathHash.put(key, mathRefs);
+
+        List<TexCommandEntry> indexed = new ArrayList<TexCommandEntry>(2 * refs.size());
+        indexed.addAll(refs);
+        indexed.addAll(mathRefs);
+        completionIndex.setSource(key, indexed);
+        return true;
     }
 
     /**
-     * Searches (very inefficient) for the last entries of each
-     * context and saves them in contexts
+     * Adds the built-in commands of all contexts to the given list.
+     * 
+     * @param commands The list to add the commands to
+     */
+    private static void addBuiltInCommands(List<TexCommandEntry> commands) {
+        for (TexCommandEntry c : builtIn) commands.add(c);
+        for (TexCommandEntry c : greekCapital) commands.add(c);
+        for (TexCommandEntry c : greekSmall) commands.add(c);
+        for (TexCommandEntry c : miscMath) commands.add(c);
+        for (TexCommandEntry c : stdArrows) commands.add(c);
+        for (TexCommandEntry c : stdCompare) commands.add(c);
+        for (TexCommandEntry c : functionNames) commands.add(c);
+        for (TexCommandEntry c : stdBinOpSymbols) commands.add(c);
+        for (TexCommandEntry c : stdBraces) commands.add(c);
+        for (TexCommandEntry c : stdAccents) commands.add(c);
+    }
+
+    /**
+     * Searches for the last entries of each context in the given
+     * sorted commands.
+     * 
+     * @param commands The sorted commands
+     * @return The positions of the contexts
      */
-    private void createContexts(){
+    private static int[] createContexts(List<TexCommandEntry> commands){
+        int[] contexts = new int[TexCommandEntry.NUMBER_OF_CONTEXTS + 1];
     	contexts[0] = -1;
     	int current = 1;
-    	for (int i=0; i < sortedCommands.size(); i++){
-    		if (current != ((TexCommandEntry) sortedCommands.get(i)).context){
+    	for (int i=0; i < commands.size(); i++){
+    		if (current != commands.get(i).context){
     			contexts[current] = i - 2;
     			current++;
     			if (current == TexCommandEntry.NUMBER_OF_CONTEXTS) break;
     		}
     	}
-    	contexts[current] = sortedCommands.size() - 2;
+    	contexts[current] = commands.size() - 2;
+    	return contexts;
     }
     
     /**
      * Organizes this container's contents into the sorted command array.
-     * The added reference sources' commands are added to the built-in commands
-     * and sorted.
+     * The commands of the added reference sources and their math context
+     * copies are already sorted, so they are merged with the statically
+     * sorted built-in commands.
      */
     public void organize() {
-        //if (commandHash.size() == 0)
-        //    return;
-        List<TexCommandEntry> allRefs = new ArrayList<TexCommandEntry>(size);
-        if (commandHash.size() > 1) {
-            for (List<TexCommandEntry> l : commandHash.values()) {
-                allRefs.addAll(l);
-            }
-        } else if (commandHash.size() == 1) {
-            Iterator<List<TexCommandEntry>> iter = commandHash.values().iterator();
-            allRefs = iter.next();
-        }
-        //copy all commands and change the context to activate them also in mathmode
-        List<TexCommandEntry> mathRefs = new ArrayList<TexCommandEntry> (allRefs.size());
-        for (TexCommandEntry c : allRefs) {
-            TexCommandEntry element = new TexCommandEntry(c);
-            element.context = TexCommandEntry.MATH_CONTEXT;
-            mathRefs.add(element);
-        }
-        
-        sortedCommands.clear();
-        for (TexCommandEntry c : builtIn) sortedCommands.add(c);
-        sortedCommands.addAll(allRefs);
-        for (TexCommandEntry c : greekCapital) sortedCommands.add(c);
-        for (TexCommandEntry c : greekSmall) sortedCommands.add(c);
-        for (TexCommandEntry c : miscMath) sortedCommands.add(c);
-        for (TexCommandEntry c : stdArrows) sortedCommands.add(c);
-        for (TexCommandEntry c : stdCompare) sortedCommands.add(c);
-        for (TexCommandEntry c : functionNames) sortedCommands.add(c);
-        for (TexCommandEntry c : stdBinOpSymbols) sortedCommands.add(c);
-        for (TexCommandEntry c : stdBraces) sortedCommands.add(c);
-        for (TexCommandEntry c : stdAccents) sortedCommands.add(c);
-        sortedCommands.addAll(mathRefs);
-        Collections.sort(sortedCommands);
-        createContexts();
+        List<List<TexCommandEntry>> lists = new ArrayList<List<TexCommandEntry>>(
+                2 * commandHash.size() + 1);
+        lists.add(sortedBuiltIn);
+        lists.addAll(commandHash.values());
+        lists.addAll(mathHash.values());
+        List<TexCommandEntry> commands = PartialRetriever.mergeSorted(lists, COMMAND_ORDER);
+        contexts = createContexts(commands);
+        sortedCommands = commands;
     }
     
     /**
@@ -530,4 +575,14 @@ public class TexCommandContainer {
         return sortedCommands.subList(contexts[context-1]+1, contexts[context]+2);
     }
 
+    /**
+     * Returns the index for searching the commands by substrings and
+     * fuzzy matches. The group of a command in the index is its context.
+     * 
+     * @return The completion index of this container
+     */
+    public CompletionIndex<TexCommandEntry> getCompletionIndex() {
+        return completionIndex;
+    }
+
 }
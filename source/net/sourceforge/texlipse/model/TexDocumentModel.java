@@ -13,8 +13,15 @@ import java.io.File;
 import java.io.IOException;
 import java.text.MessageFormat;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import net.sourceforge.texlipse.TexlipsePlugin;
 import net.sourceforge.texlipse.bibparser.BibParser;
@@ -28,6 +35,7 @@ import net.sourceforge.texlipse.texparser.TexParser;
 import net.sourceforge.texlipse.treeview.views.TexOutlineTreeView;
 import net.sourceforge.texlipse.builder.BuilderRegistry;
 import net.sourceforge.texlipse.builder.KpsewhichRunner;
+import net.sourceforge.texlipse.builder.cache.ProjectFileCache;
 
 import org.eclipse.core.resources.IContainer;
 import org.eclipse.core.resources.IFile;
@@ -157,6 +165,7 @@ public class TexDocumentModel implements IDocumentListener {
         
         private ArrayList<OutlineNode> rootNodes;
         private List<OutlineNode> fullOutlineNodes;
+        private List<DocumentReference> referenceNodes;
 
         /**
          * 
@@ -180,6 +189,13 @@ public class TexDocumentModel implements IDocumentListener {
             this.fullOutlineNodes = rootNodes;
         }
 
+        /**
+         * @param references the labels and references of the document
+         */
+        public void setReferenceNodes(List<DocumentReference> references) {
+            this.referenceNodes = references;
+        }
+
         /**
          * @see org.eclipse.ui.progress.UIJob#runInUIThread(org.eclipse.core.runtime.IProgressMonitor)
          */
@@ -188,6 +204,7 @@ public class TexDocumentModel implements IDocumentListener {
             	//long time = System.currentTimeMillis();
                 updateDocumentPositions(rootNodes, monitor);
                 //System.out.println("updateDocPos: " + (System.currentTimeMillis() - time));
+                updateReferencePositions(referenceNodes);
                 
                 pollCancel(monitor);
                 
@@ -242,9 +259,15 @@ public class TexDocumentModel implements IDocumentListener {
     private static ILock lock = Job.getJobManager().newLock();
     private boolean isDirty;
     
+    // the lowest offset changed since the last parse, used for resuming
+    private int changedOffset = Integer.MAX_VALUE;
+    
     private ParseJob parseJob;
     private PostParseJob postParseJob;
     
+    // the positions of the \label and \*ref arguments by key
+    private volatile Map<String, List<Position>> referencePositions;
+    
     // preferences
     private int parseDelay;
     private boolean autoParseEnabled;
@@ -382,6 +405,7 @@ public class TexDocumentModel implements IDocumentListener {
             lock.acquire();
             parseJob.cancel();
             this.setDirty(true);
+            this.addChangedOffset(event.getOffset());
         } finally {
             lock.release();
         }
@@ -443,7 +467,8 @@ public class TexDocumentModel implements IDocumentListener {
         }
         
         try {
-            parser.parseDocument(sectionCheckEnabled);
+            // only the text after the changes needs to be parsed again
+            parser.parseDocument(takeChangedOffset(), sectionCheckEnabled);
         } catch (IOException e) {
             TexlipsePlugin.log("Can't read file.", e);
             throw new TexDocumentParseException(e);
@@ -454,70 +479,141 @@ public class TexDocumentModel implements IDocumentListener {
         List<ParseErrorMessage> tasks = parser.getTasks();
         MarkerHandler marker = MarkerHandler.getInstance();
         
-        // somewhat inelegantly ensures that errors marked in createProjectDatastructs()
-        // aren't removed immediately
-        if (!firstRun) {
-            marker.clearErrorMarkers(editor);
-            marker.clearTaskMarkers(editor);
-        } else {
-            firstRun = false;
-        }
-
-
-        if (editor.getProject() != null && editor.getFullOutline() != null) {
-            IResource res = (IResource) editor.getEditorInput().getAdapter(IResource.class);
-            String fileName = res.getProjectRelativePath().toString();
-            projectOutline.addOutline(parser.getOutlineTree(), fileName);
+        // the markers are collected during the parse and only the changes are
+        // applied at the end; somewhat inelegantly ensures that errors marked in
+        // createProjectDatastructs() aren't removed immediately
+        marker.beginUpdate(editor, !firstRun);
+        firstRun = false;
+        try {
+            if (editor.getProject() != null && editor.getFullOutline() != null) {
+                IResource res = (IResource) editor.getEditorInput().getAdapter(IResource.class);
+                String fileName = res.getProjectRelativePath().toString();
+                projectOutline.addOutline(parser.getOutlineTree(), fileName);
             
-            List<OutlineNode> fo = projectOutline.getFullOutline();
-            postParseJob.setFONodes(fo);
-        } else {
-            postParseJob.setFONodes(null);
-        }
-        pollCancel(monitor);
+                List<OutlineNode> fo = projectOutline.getFullOutline();
+                postParseJob.setFONodes(fo);
+            } else {
+                postParseJob.setFONodes(null);
+            }
+            pollCancel(monitor);
         
-        processIncludes(parser.getInputs(), editor.getEditorInput());
+            processIncludes(parser.getInputs(), editor.getEditorInput());
         
-        if (errors.size() > 0) {
-            marker.createErrorMarkers(editor, errors);
-        }
-        if (tasks.size() > 0) {
-            marker.createTaskMarkers(editor, tasks);
-        }
-        if (parser.isFatalErrors()) {
-            throw new TexDocumentParseException("Fatal errors in file, parsing aborted.");
-        }
+            // the labels and references for highlighting
+            List<DocumentReference> references = new ArrayList<DocumentReference>(parser.getRefs());
+            for (ReferenceEntry label : parser.getLabels()) {
+                if (label.position != null) {
+                    references.add(new DocumentReference(label.key, label.startLine,
+                            label.position.getOffset(), label.position.getLength()));
+                }
+            }
+            postParseJob.setReferenceNodes(references);
         
-        updateReferences(monitor);
+            if (errors.size() > 0) {
+                marker.createErrorMarkers(editor, errors);
+            }
+            if (tasks.size() > 0) {
+                marker.createTaskMarkers(editor, tasks);
+            }
+            if (parser.isFatalErrors()) {
+                throw new TexDocumentParseException("Fatal errors in file, parsing aborted.");
+            }
         
-        List<DocumentReference> cites = parser.getCites();
-        List<DocumentReference> bibErrors = null;
-        for (DocumentReference cite : cites) {
-        	if (!bibContainer.binTest(cite.getKey())) {
-        		if (bibErrors == null) bibErrors = new ArrayList<DocumentReference>();
-        		bibErrors.add(cite);
-        	}
-		}
-        if (bibErrors != null) {
-        	marker.createReferencingErrorMarkers(editor, bibErrors);
-        }
+            updateReferences(monitor);
+        
+            List<DocumentReference> cites = parser.getCites();
+            List<DocumentReference> bibErrors = null;
+            for (DocumentReference cite : cites) {
+            	if (!bibContainer.binTest(cite.getKey())) {
+            		if (bibErrors == null) bibErrors = new ArrayList<DocumentReference>();
+            		bibErrors.add(cite);
+            	}
+    		}
+            if (bibErrors != null) {
+            	marker.createReferencingErrorMarkers(editor, bibErrors);
+            }
 
-        List<DocumentReference> refs = parser.getRefs();
-        List<DocumentReference> refErrors = null;
-        for (DocumentReference ref : refs) {
-			if (!labelContainer.binTest(ref.getKey())) {
-				if (refErrors == null) refErrors = new ArrayList<DocumentReference>();
-				refErrors.add(ref);
-			}				
-		}
-        if (refErrors != null) {
-        	marker.createReferencingErrorMarkers(editor, refErrors);
+            List<DocumentReference> refs = parser.getRefs();
+            List<DocumentReference> refErrors = null;
+            for (DocumentReference ref : refs) {
+    			if (!labelContainer.binTest(ref.getKey())) {
+    				if (refErrors == null) refErrors = new ArrayList<DocumentReference>();
+    				refErrors.add(ref);
+    			}				
+    		}
+            if (refErrors != null) {
+            	marker.createReferencingErrorMarkers(editor, refErrors);
+            }
+        } finally {
+            marker.endUpdate(editor);
         }
         
         return this.parser.getOutlineTree();
     }
 
     
+    /**
+     * Adds a Position for each label and reference to the Document
+     * and indexes them by their key.
+     * 
+     * Old Positions are removed before adding new ones.
+     * 
+     * @param references the labels and references
+     */
+    private void updateReferencePositions(List<DocumentReference> references) {
+        if (references == null) {
+            return;
+        }
+        IDocument document = editor.getDocumentProvider().getDocument(editor.getEditorInput());
+        try {
+            document.removePositionCategory("__references");
+        } catch (BadPositionCategoryException bpce) {
+            // do nothing, the category will be added again next, it does not exists the first time
+        }
+        document.addPositionCategory("__references");
+        
+        Map<String, List<Position>> positions = new HashMap<String, List<Position>>();
+        for (DocumentReference ref : references) {
+            try {
+                Position position = new Position(document.getLineOffset(ref.getLine() - 1)
+                        + ref.getPos(), ref.getLength());
+                document.addPosition("__references", position);
+                List<Position> keyPositions = positions.get(ref.getKey());
+                if (keyPositions == null) {
+                    keyPositions = new ArrayList<Position>(2);
+                    positions.put(ref.getKey(), keyPositions);
+                }
+                keyPositions.add(position);
+            } catch (BadLocationException ble) {
+                // the document has changed since the parse, skip the reference
+            } catch (BadPositionCategoryException bpce) {
+                return;
+            }
+        }
+        referencePositions = positions;
+    }
+    
+    /**
+     * Returns the current positions of the arguments of all \label and
+     * \*ref commands with the given key. The positions are updated by the
+     * document, but they may be out of date if the document has been changed
+     * after the last parse.
+     * 
+     * @param key the label key
+     * @return the positions, or null if the document has not been parsed yet
+     */
+    public List<Position> getReferencePositions(String key) {
+        Map<String, List<Position>> positions = referencePositions;
+        if (positions == null) {
+            return null;
+        }
+        List<Position> keyPositions = positions.get(key);
+        if (keyPositions == null) {
+            return new ArrayList<Position>(0);
+        }
+        return keyPositions;
+    }
+
     /**
      * Traverses the OutlineNode tree and adds a Position for each
      * node to Document.
@@ -702,7 +798,7 @@ public class TexDocumentModel implements IDocumentListener {
             updateBiblatex(project, biblatexMode, parser.getBiblatexBackend(), false);
 
             String[] bibs = parser.getBibs();
-            this.updateBibs(bibs, biblatexMode, cFile);
+            this.updateBibs(bibs, biblatexMode, cFile, true);
 
             pollCancel(monitor);
 
@@ -738,8 +834,11 @@ public class TexDocumentModel implements IDocumentListener {
      * 
      * @param bibNames Names of the BibTeX -files that the document uses
      * @param resource The resource of the document
+     * @param saveIndex Whether to save the symbol index afterwards; false
+     *  if the caller saves it once it has used all files of the project
      */
-    private void updateBibs(String[] bibNames, boolean biblatexMode, IResource resource) {
+    private void updateBibs(String[] bibNames, boolean biblatexMode, IResource resource,
+            boolean saveIndex) {
         IProject project = getCurrentProject();
         if (project == null) return;
 
@@ -766,6 +865,7 @@ public class TexDocumentModel implements IDocumentListener {
             path = path.addTrailingSeparator();
         
         KpsewhichRunner filesearch = (KpsewhichRunner) BuilderRegistry.getRunner("kpsewhich");
+        ProjectSymbolIndex index = ProjectSymbolIndex.getInstance(project);
 
         for (Iterator<String> iter = newBibs.iterator(); iter.hasNext();) {
         	String name = iter.next();
@@ -810,9 +910,25 @@ public class TexDocumentModel implements IDocumentListener {
         	    }
         	    
         		if (filepath.length() > 0) {
-        			BibParser parser = new BibParser(filepath);
         			try {
-        				List<ReferenceEntry> bibEntriesList = parser.getEntries();
+        			    File bibFile = new File(filepath);
+        			    byte[] hash = ProjectFileCache.getFileHash(bibFile);
+        			    List<ReferenceEntry> bibEntriesList = BibEntryCache.getEntries(bibFile, hash);
+        			    if (bibEntriesList == null) {
+        			        bibEntriesList = index.getBibEntries(filepath, hash);
+        			        if (bibEntriesList == null) {
+        			            BibParser parser = new BibParser(filepath);
+        			            bibEntriesList = parser.getEntries();
+        			            if (bibEntriesList != null) {
+        			                index.putBibEntries(filepath, hash, bibEntriesList);
+        			            }
+        			        }
+        			        if (bibEntriesList != null) {
+        			            BibEntryCache.putEntries(bibFile, hash, bibEntriesList);
+        			        }
+        			    } else {
+        			        index.putBibEntries(filepath, hash, bibEntriesList);
+        			    }
         				if (bibEntriesList != null && bibEntriesList.size() > 0) {
         					bibContainer.addRefSource(path + name, bibEntriesList);
         				} else if (bibEntriesList == null) {
@@ -833,6 +949,9 @@ public class TexDocumentModel implements IDocumentListener {
         	}
         }
         bibContainer.organize();
+        if (saveIndex) {
+            index.save();
+        }
     }
     
     /**
@@ -957,6 +1076,9 @@ public class TexDocumentModel implements IDocumentListener {
      * completions (BibTeX and label), command completions, the preamble,
      * the BibTeX style.
      * 
+     * The files are parsed in parallel, one thread per processor. The results
+     * are merged in the order of the files afterwards.
+     * 
      * @param project The current project
      */
     private void createProjectDatastructs(IProject project) {
@@ -967,57 +1089,102 @@ public class TexDocumentModel implements IDocumentListener {
         if (files != null) {
             IFile mainFile = TexlipseProperties.getProjectSourceFile(project);
 
+            List<IResource> texFiles = new ArrayList<IResource>();
             for (int i = 0; i < files.length; i++) {
                 //IPath path = files[i].getFullPath();
                 String ext = files[i].getFileExtension();
-				// here are the file types we want to parse
+                // here are the file types we want to parse
                 if ("tex".equals(ext) || "ltx".equals(ext) || "sty".equals(ext)) {
-                    try {
-                        String input = TexlipseProperties.getFileContents(files[i]);
+                    texFiles.add(files[i]);
+                }
+            }
+
+            final ProjectSymbolIndex index = ProjectSymbolIndex.getInstance(project);
+            ExecutorService executor = Executors.newFixedThreadPool(
+                    Math.max(1, Math.min(texFiles.size(), Runtime.getRuntime().availableProcessors())));
+            List<Future<ProjectSymbolIndex.FileSymbols>> results =
+                new ArrayList<Future<ProjectSymbolIndex.FileSymbols>>(texFiles.size());
+            for (final IResource file : texFiles) {
+                results.add(executor.submit(new Callable<ProjectSymbolIndex.FileSymbols>() {
+                    public ProjectSymbolIndex.FileSymbols call() throws IOException {
+                        String input = TexlipseProperties.getFileContents(file);
+                        String name = file.getProjectRelativePath().toString();
+                        byte[] hash = ProjectSymbolIndex.getHash(input);
+                        ProjectSymbolIndex.FileSymbols symbols = index.getFileSymbols(name, hash);
+                        if (symbols != null) {
+                            return symbols;
+                        }
                         LatexRefExtractingParser lrep = new LatexRefExtractingParser();
                         lrep.parse(input);
                         if (lrep.isFatalErrors()) {
-                            MarkerHandler marker = MarkerHandler.getInstance();
-                            marker.addFatalError(editor, "The file " + files[i].getFullPath() + " contains fatal errors, parsing aborted.");
-                            continue;
-                        }
-                        List<ReferenceEntry> labels = lrep.getLabels();
-                        if (labels.size() > 0) {
-                            labelContainer.addRefSource(files[i].getProjectRelativePath().toString(), labels);
-                        }
-                        List<TexCommandEntry> commands = lrep.getCommands();
-                        if (commands.size() > 0) {
-                            commandContainer.addRefSource(files[i].getProjectRelativePath().toString(), commands);
+                            return null;
                         }
-                        //Only update Preamble, Bibstyle if main Document
-                        if (files[i].equals(mainFile)) {
-                            String[] bibs = lrep.getBibs();
-                            boolean biblatexMode = lrep.isBiblatexMode();
-                            String biblatexBackend = lrep.getBiblatexBackend();
-                            this.updateBiblatex(project, biblatexMode, biblatexBackend, true);
-                            this.updateBibs(bibs, biblatexMode, files[i]);
+                        symbols = new ProjectSymbolIndex.FileSymbols();
+                        symbols.labels = lrep.getLabels();
+                        symbols.commands = lrep.getCommands();
+                        symbols.bibs = lrep.getBibs();
+                        symbols.bibstyle = lrep.getBibstyle();
+                        symbols.preamble = lrep.getPreamble();
+                        symbols.biblatexMode = lrep.isBiblatexMode();
+                        symbols.biblatexBackend = lrep.getBiblatexBackend();
+                        index.putFileSymbols(name, hash, symbols);
+                        return symbols;
+                    }
+                }));
+            }
+            executor.shutdown();
 
-                            String preamble = lrep.getPreamble();
-                            if (preamble != null) {
-                                TexlipseProperties.setSessionProperty(project, 
-                                        TexlipseProperties.PREAMBLE_PROPERTY,
-                                        preamble);
-                            }
+            for (int i = 0; i < texFiles.size(); i++) {
+                IResource file = texFiles.get(i);
+                ProjectSymbolIndex.FileSymbols symbols;
+                try {
+                    symbols = results.get(i).get();
+                } catch (ExecutionException e) {
+                    TexlipsePlugin.log("Unable to open file " + file.getFullPath() + " for parsing", e.getCause());
+                    continue;
+                } catch (InterruptedException e) {
+                    executor.shutdownNow();
+                    break;
+                }
+                if (symbols == null) {
+                    MarkerHandler marker = MarkerHandler.getInstance();
+                    marker.addFatalError(editor, "The file " + file.getFullPath() + " contains fatal errors, parsing aborted.");
+                    continue;
+                }
+                List<ReferenceEntry> labels = symbols.labels;
+                if (labels.size() > 0) {
+                    labelContainer.addRefSource(file.getProjectRelativePath().toString(), labels);
+                }
+                List<TexCommandEntry> commands = symbols.commands;
+                if (commands.size() > 0) {
+                    commandContainer.addRefSource(file.getProjectRelativePath().toString(), commands);
+                }
+                //Only update Preamble, Bibstyle if main Document
+                if (file.equals(mainFile)) {
+                    String[] bibs = symbols.bibs.clone();
+                    boolean biblatexMode = symbols.biblatexMode;
+                    String biblatexBackend = symbols.biblatexBackend;
+                    this.updateBiblatex(project, biblatexMode, biblatexBackend, true);
+                    this.updateBibs(bibs, biblatexMode, file, false);
 
-                            String bibstyle = lrep.getBibstyle();
-                            if (bibstyle != null)
-                                TexlipseProperties.setSessionProperty(project, 
-                                        TexlipseProperties.BIBSTYLE_PROPERTY,
-                                        bibstyle);
-                        }
-                    } catch (IOException ioe) {
-                        TexlipsePlugin.log("Unable to open file " + files[i].getFullPath() + " for parsing", ioe);
+                    String preamble = symbols.preamble;
+                    if (preamble != null) {
+                        TexlipseProperties.setSessionProperty(project, 
+                                TexlipseProperties.PREAMBLE_PROPERTY,
+                                preamble);
                     }
+
+                    String bibstyle = symbols.bibstyle;
+                    if (bibstyle != null)
+                        TexlipseProperties.setSessionProperty(project, 
+                                TexlipseProperties.BIBSTYLE_PROPERTY,
+                                bibstyle);
                 }
             }
             // save time by doing this last
             labelContainer.organize();
             commandContainer.organize();
+            index.save();
         }
     }
     
@@ -1049,6 +1216,28 @@ public class TexDocumentModel implements IDocumentListener {
         this.isDirty = dirty;
     }
 
+    /**
+     * Records a document change for resuming the next parse.
+     * @param offset the offset of the change
+     */
+    private synchronized void addChangedOffset(int offset) {
+        if (offset < this.changedOffset) {
+            this.changedOffset = offset;
+        }
+    }
+    
+    /**
+     * Returns the lowest offset changed since the previous call and
+     * resets it. The document text before it is unchanged since then.
+     * @return the lowest changed offset, or Integer.MAX_VALUE if there
+     * were no changes
+     */
+    private synchronized int takeChangedOffset() {
+        int offset = this.changedOffset;
+        this.changedOffset = Integer.MAX_VALUE;
+        return offset;
+    }
+
     /**
      * Cancels a job by throwing OperationCanceledException.
      * 
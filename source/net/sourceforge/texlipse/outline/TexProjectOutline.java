@@ -13,6 +13,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -40,6 +41,13 @@ public class TexProjectOutline {
     private TexProjectParser fileParser;
     private Map<String, List<OutlineNode>> outlines = new HashMap<String, List<OutlineNode>>();
     private Set<String> included = new HashSet<String>();
+    // the assembled full outline, or null if it has to be assembled again
+    private List<OutlineNode> fullOutline;
+    private String fullOutlineMainFile;
+    // the copies in the full outline of the nodes of each included file
+    private Map<String, List<OutlineNode>> fileCopies = new HashMap<String, List<OutlineNode>>();
+    // true, if an include could not be resolved when assembling
+    private boolean unresolvedIncludes;
     
     /**
      * Creates a new project outline
@@ -60,8 +68,16 @@ public class TexProjectOutline {
      * @param fileName The path of the source file relative to the
      *                 project's base directory
      */
-    public void addOutline(List<OutlineNode> nodes, String fileName) {
-        outlines.put(fileName, nodes);
+    public synchronized void addOutline(List<OutlineNode> nodes, String fileName) {
+        List<OutlineNode> oldNodes = outlines.put(fileName, nodes);
+        
+        // update the full outline, if the structure is the same
+        if (fullOutline != null && fileCopies.containsKey(fileName)) {
+            if (oldNodes == null || !isSameStructure(oldNodes, nodes)
+                    || !updateCopies(fileName, nodes)) {
+                fullOutline = null;
+            }
+        }
         
         IFile mainFile = TexlipseProperties.getProjectSourceFile(currentProject);
         String str = mainFile.getFullPath().removeFirstSegments(1).toString();
@@ -76,16 +92,29 @@ public class TexProjectOutline {
      * and displaying all the files that are included from the main
      * file.
      * 
-     * Note that this clears the problem markers from the main file
-     * and each included file. 
+     * The outline is assembled only when the structure of a file in it
+     * has changed or when it contains includes which could not be resolved.
+     * Otherwise the previous outline is returned, or a copy of it made by
+     * <code>addOutline</code> with the new lines and positions.
+     * 
+     * Note that assembling the outline clears the problem markers from
+     * the main file and each included file. 
      * 
      * @return List containing <code>outlineNode</code>s
      */
-    public List<OutlineNode> getFullOutline() {
+    public synchronized List<OutlineNode> getFullOutline() {
+        IFile mainFile = TexlipseProperties.getProjectSourceFile(currentProject);
+        if (fullOutline != null && !unresolvedIncludes && mainFile != null
+                && getProjectRelativeName(mainFile).equals(fullOutlineMainFile)) {
+            return fullOutline;
+        }
+        fullOutline = null;
+        fileCopies.clear();
+        unresolvedIncludes = false;
         included.clear();
         virtualTopNode = new OutlineNode("Entire document", OutlineNode.TYPE_DOCUMENT, 0, null);
         
-        IFile currentTexFile = TexlipseProperties.getProjectSourceFile(currentProject);
+        IFile currentTexFile = mainFile;
         MarkerHandler marker = MarkerHandler.getInstance();
         marker.clearProblemMarkers(currentTexFile);
         String fullName = getProjectRelativeName(currentTexFile);
@@ -99,16 +128,235 @@ public class TexProjectOutline {
             }
         }
         included.add(fullName);
+        fileCopies.put(fullName, new ArrayList<OutlineNode>());
         addChildren(virtualTopNode, topLevelNodes, currentTexFile);
 
         List<OutlineNode> outlineTop = virtualTopNode.getChildren();
+        if (outlineTop == null) {
+            outlineTop = new ArrayList<OutlineNode>();
+        }
         for (Iterator<OutlineNode> iter = outlineTop.iterator(); iter.hasNext();) {
             OutlineNode node = iter.next();
             node.setParent(null);
         }
+        fullOutline = outlineTop;
+        fullOutlineMainFile = fullName;
         return outlineTop;
     }
+
+    /**
+     * Checks if two outlines have the same structure, i.e. the same nodes
+     * with the same names and types.
+     * 
+     * @param oldNodes The old outline
+     * @param newNodes The new outline
+     * @return true, if the structure is the same
+     */
+    private static boolean isSameStructure(List<OutlineNode> oldNodes, List<OutlineNode> newNodes) {
+        int oldSize = oldNodes != null ? oldNodes.size() : 0;
+        int newSize = newNodes != null ? newNodes.size() : 0;
+        if (oldSize != newSize) {
+            return false;
+        }
+        for (int i = 0; i < oldSize; i++) {
+            OutlineNode o = oldNodes.get(i);
+            OutlineNode n = newNodes.get(i);
+            if (o.getType() != n.getType() || !o.getName().equals(n.getName())
+                    || !isSameStructure(o.getChildren(), n.getChildren())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Updates the copies of the nodes of a file in the full outline with
+     * the data of the new nodes. The nodes were copied in preorder, once
+     * for each inclusion of the file.
+     * 
+     * The nodes of the previous full outline may be shown in an outline
+     * view, which reads them in the UI thread. Therefore they are never
+     * changed here: if a copy is not up to date, the full outline is
+     * copied and the new nodes are updated instead.
+     * 
+     * @param fileName The path of the file relative to the project's
+     *                 base directory
+     * @param nodes The new outline of the file
+     * @return true, if the copies could be updated
+     */
+    private boolean updateCopies(String fileName, List<OutlineNode> nodes) {
+        List<OutlineNode> copies = fileCopies.get(fileName);
+        List<OutlineNode> preorder = new ArrayList<OutlineNode>(copies.size());
+        addPreorder(nodes, preorder);
+        if (preorder.size() == 0) {
+            return copies.size() == 0;
+        }
+        if (copies.size() % preorder.size() != 0) {
+            return false;
+        }
+        int i = 0;
+        while (i < copies.size() && copies.get(i).isCopyOf(preorder.get(i % preorder.size()))) {
+            i++;
+        }
+        if (i == copies.size()) {
+            return true;
+        }
+        copyFullOutline();
+        copies = fileCopies.get(fileName);
+        for (i = 0; i < copies.size(); i++) {
+            copies.get(i).updateCopy(preorder.get(i % preorder.size()));
+        }
+        return true;
+    }
+
+    /**
+     * Replaces the full outline with a copy of it and the recorded copies
+     * of each file with the corresponding nodes of the new outline.
+     */
+    private void copyFullOutline() {
+        Map<OutlineNode, OutlineNode> newNodes = new IdentityHashMap<OutlineNode, OutlineNode>();
+        List<OutlineNode> outlineTop = new ArrayList<OutlineNode>(fullOutline.size());
+        for (OutlineNode node : fullOutline) {
+            outlineTop.add(copyTree(node, null, newNodes));
+        }
+        for (Map.Entry<String, List<OutlineNode>> entry : fileCopies.entrySet()) {
+            List<OutlineNode> copies = new ArrayList<OutlineNode>(entry.getValue().size());
+            for (OutlineNode node : entry.getValue()) {
+                copies.add(newNodes.get(node));
+            }
+            entry.setValue(copies);
+        }
+        fullOutline = outlineTop;
+    }
+
+    private static OutlineNode copyTree(OutlineNode node, OutlineNode parent,
+            Map<OutlineNode, OutlineNode> newNodes) {
+        OutlineNode newNode = node.copy(node.getIFile());
+        newNode.setParent(parent);
+        newNodes.put(node, newNode);
+        List<OutlineNode> children = node.getChildren();
+        if (children != null) {
+            for (OutlineNode child : children) {
+                newNode.addChild(copyTree(child, newNode, newNodes));
+            }
+        }
+        return newNode;
+    }
+
+    private static void addPreorder(List<OutlineNode> nodes, List<OutlineNode> preorder) {
+        if (nodes == null) {
+            return;
+        }
+        for (OutlineNode node : nodes) {
+            if (node.getType() != OutlineNode.TYPE_INPUT) {
+                preorder.add(node);
+                addPreorder(node.getChildren(), preorder);
+            }
+        }
+    }
+
+    /**
+     * Copies a node into the full outline and records the copy, so it can
+     * be updated when the file is parsed again.
+     * 
+     * @param node The node
+     * @param texFile The file that contains the node
+     * @return The copy of the node
+     */
+    private OutlineNode copyNode(OutlineNode node, IFile texFile) {
+        OutlineNode newNode = node.copy(texFile);
+        String fullName = getProjectRelativeName(texFile);
+        List<OutlineNode> copies = fileCopies.get(fullName);
+        if (copies == null) {
+            copies = new ArrayList<OutlineNode>();
+            fileCopies.put(fullName, copies);
+        }
+        copies.add(newNode);
+        return newNode;
+    }
+
     
+    /**
+     * Returns the main file and all the files that are included from it,
+     * directly or indirectly, in the order of their first inclusion. Files
+     * that are not parsed yet are parsed, but no problem markers are
+     * created or cleared.
+     * 
+     * @return The files of the document
+     */
+    public synchronized List<IFile> getIncludedFiles() {
+        List<IFile> files = new ArrayList<IFile>();
+        IFile mainFile = TexlipseProperties.getProjectSourceFile(currentProject);
+        if (mainFile != null && mainFile.exists()) {
+            addIncludedFiles(mainFile, files, new HashSet<IFile>());
+        }
+        return files;
+    }
+
+    /**
+     * Adds the given file and the files it includes to the list.
+     * 
+     * @param texFile The file
+     * @param files The list of files
+     * @param visited The files which have already been added
+     */
+    private void addIncludedFiles(IFile texFile, List<IFile> files, Set<IFile> visited) {
+        if (!visited.add(texFile)) {
+            return;
+        }
+        files.add(texFile);
+        List<OutlineNode> nodes = getOutline(texFile);
+        if (nodes != null) {
+            addIncludedFiles(nodes, files, visited);
+        }
+    }
+
+    private void addIncludedFiles(List<OutlineNode> nodes, List<IFile> files, Set<IFile> visited) {
+        for (OutlineNode node : nodes) {
+            if (node.getType() == OutlineNode.TYPE_INPUT) {
+                IFile includedFile = findInclude(node.getName());
+                if (includedFile != null) {
+                    addIncludedFiles(includedFile, files, visited);
+                }
+            } else if (node.getChildren() != null) {
+                addIncludedFiles(node.getChildren(), files, visited);
+            }
+        }
+    }
+
+    /**
+     * Returns the outline of the given file of this project. The file is
+     * parsed, if its outline is not known yet.
+     * 
+     * @param texFile The file
+     * @return The top level nodes of the outline or null if parsing failed
+     */
+    public synchronized List<OutlineNode> getOutline(IFile texFile) {
+        String fullName = getProjectRelativeName(texFile);
+        List<OutlineNode> nodes = outlines.get(fullName);
+        if (nodes == null) {
+            try {
+                nodes = fileParser.parseFile(texFile);
+                outlines.put(fullName, nodes);
+            } catch (IOException ioe) {
+                return null;
+            }
+        }
+        return nodes;
+    }
+
+    /**
+     * Finds the file included by an \input or \include command.
+     * 
+     * @param name The argument of the command
+     * @return The file or null if no file was found
+     */
+    public IFile findInclude(String name) {
+        //Inclusions are always relative to the main file
+        IFile currentTexFile = TexlipseProperties.getProjectSourceFile(currentProject);
+        return fileParser.findIFile(name, currentTexFile);
+    }
+
     /**
      * Replaces an input node with the outline that the referred file contains.
      * 
@@ -140,7 +388,7 @@ public class TexProjectOutline {
                     parent = parent.getParent();
                 }
                 
-                OutlineNode newNode = oldNode2.copy(texFile);
+                OutlineNode newNode = copyNode(oldNode2, texFile);
                 parent.addChild(newNode);
                 newNode.setParent(parent);
                 
@@ -184,7 +432,7 @@ public class TexProjectOutline {
                     insert = true;
                 }
             } else {
-                OutlineNode newNode = node.copy(texFile);
+                OutlineNode newNode = copyNode(node, texFile);
                 main.addChild(newNode);
                 newNode.setParent(main);
                 List<OutlineNode> oldChildren = node.getChildren();
@@ -260,6 +508,8 @@ public class TexProjectOutline {
         
         IFile newTexFile = fileParser.findIFile(name, currentTexFile);
         if (newTexFile == null) {
+            // the file might be created later
+            unresolvedIncludes = true;
 /*            marker.createErrorMarker(referringFile,
                     "Could not find file " + name,
                     lineNumber);*/
@@ -292,6 +542,7 @@ public class TexProjectOutline {
                 marker.createErrorMarker(referringFile,
                         "Could not parse file " + fullName + ", reason: " + ioe.getMessage(),
                         lineNumber);
+                unresolvedIncludes = true;
                 return new ArrayList<OutlineNode>();
             }
         }
@@ -301,6 +552,9 @@ public class TexProjectOutline {
                     lineNumber);
             return new ArrayList<OutlineNode>();            
         }
+        if (!fileCopies.containsKey(fullName)) {
+            fileCopies.put(fullName, new ArrayList<OutlineNode>());
+        }
         return nodes;
     }
     
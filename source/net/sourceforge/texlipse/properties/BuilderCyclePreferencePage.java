@@ -84,6 +84,9 @@ public class BuilderCyclePreferencePage
         addField(new BooleanFieldEditor(TexlipseProperties.BUILD_CYCLE_HALT_INVALID,
                 TexlipsePlugin.getResourceString("preferenceBuilderCycleHaltOnInvalidRunner"),
                 bottomPart));
+        addField(new BooleanFieldEditor(TexlipseProperties.BUILD_RERUN_CONVERGE,
+                TexlipsePlugin.getResourceString("preferenceBuilderRerunConverge"),
+                bottomPart));
     }
 
     /**
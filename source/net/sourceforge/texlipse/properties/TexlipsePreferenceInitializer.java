@@ -85,6 +85,7 @@ public class TexlipsePreferenceInitializer extends
         pref.setDefault(TexlipseProperties.BUILD_CYCLE_MAX, 5);
         pref.setDefault(TexlipseProperties.BUILD_CYCLE_MAX_ERROR, true);
         pref.setDefault(TexlipseProperties.BUILD_CYCLE_HALT_INVALID, true);
+        pref.setDefault(TexlipseProperties.BUILD_RERUN_CONVERGE, true);
         
         pref.setDefault(TexlipseProperties.BIB_COMPLETION, true);
         pref.setDefault(TexlipseProperties.BIB_COMPLETION_DELAY, 500);
@@ -85,6 +85,7 @@ public class TexlipseProperties {
     public static final String BUILD_CYCLE_MAX = "buildCycleMax";
     public static final String BUILD_CYCLE_MAX_ERROR = "buildCycleMaxError";
     public static final String BUILD_CYCLE_HALT_INVALID = "buildCycleHaltOnInv";
+    public static final String BUILD_RERUN_CONVERGE = "buildRerunConverge";
     public static final String VIEWER_ENV_SETTINGS = "viewerEnvSet";
 
     public static final String TEX_COMPLETION = "texCompletion";
@@ -182,6 +183,7 @@ public class TexlipseProperties {
     public static final String SESSION_BIBTEX_RERUN = "rerunBibtex";
     public static final String SESSION_LATEX_RERUN = "rerunLatex";
     public static final String SESSION_MAKEINDEX_RERUN = "rerunMakeindex";
+    public static final String SESSION_MAKEINDEX_IDX_HASH = "makeindexIdxHash";
     public static final String SESSION_PROPERTIES_LOAD = "propsLoaded";
     // attribute for session properties to hold the viewer process object
     public static final String SESSION_ATTRIBUTE_VIEWER = "active.viewer";
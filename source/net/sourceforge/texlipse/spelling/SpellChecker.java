@@ -20,6 +20,7 @@ import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 
@@ -42,6 +43,7 @@ import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.jface.preference.IPreferenceStore;
 import org.eclipse.jface.text.BadLocationException;
 import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.IRegion;
 import org.eclipse.jface.text.Position;
 import org.eclipse.jface.text.contentassist.ICompletionProposal;
 import org.eclipse.jface.text.source.IAnnotationModel;
@@ -106,24 +108,186 @@ public class SpellChecker implements IPropertyChangeListener {
             return new Status(IStatus.OK, TexlipsePlugin.getPluginId(), IStatus.OK, "ok", null);
         }
     }
+
+    /**
+     * A running spelling program in ispell pipe mode.
+     */
+    private static class AspellProcess {
+
+        // the language the program checks
+        private final String language;
+
+        // the settings generation the program was started with
+        private final int generation;
+
+        // the external spelling program
+        private Process spellProgram;
+
+        // the stream to the program
+        private PrintWriter output;
+
+        // the stream from the program
+        private BufferedReader input;
+
+        AspellProcess(String language, int generation) {
+            this.language = language;
+            this.generation = generation;
+        }
+
+        /**
+         * Starts the spelling program.
+         * 
+         * @param command spelling program command with arguments
+         * @param envp environment variables for the program
+         * @return true, if the program is up and running
+         */
+        boolean start(String command, String[] envp) {
+            BuilderRegistry.printToConsole(TexlipsePlugin.getResourceString("viewerRunning") + ' ' + command);
+            try {
+                if (command == null) throw new IOException();
+                spellProgram = Runtime.getRuntime().exec(command, envp);
+            } catch (IOException e) {
+                spellProgram = null;
+                BuilderRegistry.printToConsole(TexlipsePlugin.getResourceString("spellProgramStartError"));
+                return false;
+            }
+
+            // get output and input stream
+            try {
+                output = new PrintWriter(new
+                        OutputStreamWriter(spellProgram.getOutputStream(), ASPELL_ENCODING));
+                input = new BufferedReader(new
+                        InputStreamReader(spellProgram.getInputStream(), ASPELL_ENCODING));
+            }
+            catch (UnsupportedEncodingException e1) {
+                stop();
+                BuilderRegistry.printToConsole("Unsupported encoding");
+                return false;
+            }
+
+            // read the version info
+            try {
+                String message = input.readLine();
+                if (null == message) { // Something went wrong, get message from aspell's error stream
+                    BufferedReader error = new BufferedReader(new InputStreamReader(spellProgram.getErrorStream()));
+                    message = error.readLine();
+                    if (null == message) {
+                        BuilderRegistry.printToConsole("Aspell failed! No output could be read.");
+                    } else {
+                        BuilderRegistry.printToConsole("aspell> " + message.trim());
+                    }
+                    error.close();
+                    stop();
+                    return false;
+                }
+                BuilderRegistry.printToConsole("aspell> " + message.trim());
+                // Now it's up and running :)
+                // put it in terse mode, then it's faster
+                output.println("!");
+                return true;
+            } catch (IOException e) {
+                TexlipsePlugin.log("Aspell died", e);
+                BuilderRegistry.printToConsole(TexlipsePlugin.getResourceString("spellProgramStartError"));
+                stop();
+                return false;
+            }
+        }
+
+        /**
+         * @return true, if the program has not ended
+         */
+        boolean isRunning() {
+            if (spellProgram == null) {
+                return false;
+            }
+            try {
+                spellProgram.exitValue();
+                // an exit code is defined, so program has ended
+                return false;
+            } catch (IllegalThreadStateException e) {
+                // program is still running, good
+                return true;
+            }
+        }
+
+        /**
+         * Stops the spelling program.
+         */
+        void stop() {
+            if (spellProgram != null) {
+                spellProgram.destroy();
+                spellProgram = null;
+            }
+        }
+
+        /**
+         * Checks the spelling of a batch of lines. The lines are sent at once.
+         * In terse mode, aspell answers every line with the misspelled words
+         * and an empty line, so the answer of the batch ends with the empty
+         * line of the last line sent. The lines are counted instead of
+         * marking the end of the batch with a special word, which could be
+         * accepted by the personal dictionary or hidden by the TeX filter.
+         * 
+         * @param lines the lines to check, without line delimiters
+         * @return the output of aspell for each line (only errors)
+         * @throws IOException if the program died
+         */
+        List<List<String>> check(List<String> lines) throws IOException {
+            /*
+             * a prefixed "^" tells aspell to parse the line without exceptions. From
+             * http://aspell.sourceforge.net/man-html/Through-A-Pipe.html#Through-A-Pipe:
+             * "lines of single words prefixed with any of `*', `&', `@', `+', `-',
+             * `~', `#', `!', `%', or `^'" are also valid and have a special meaning
+             * Special meaning of "^" is to ignore all other prefixes.
+             * 
+             */
+            for (String line : lines) {
+                output.println("^" + line);
+            }
+            output.flush();
+
+            List<List<String>> results = new ArrayList<List<String>>(lines.size());
+            List<String> current = new ArrayList<String>(0);
+            while (results.size() < lines.size()) {
+                String result = input.readLine();
+                if (result == null) {
+                    throw new IOException("Aspell died");
+                }
+                if (result.length() == 0) {
+                    results.add(current);
+                    current = new ArrayList<String>(0);
+                } else {
+                    current.add(result);
+                }
+            }
+            return results;
+        }
+    }
     
     // the shared instance
     private static SpellChecker instance = new SpellChecker();
     
-    // the external spelling program
-    private Process spellProgram;
-    
-    // the stream to the program
-    private PrintWriter output;
-    
-    // the stream from the program
-    private BufferedReader input;
+    // the maximum number of lines sent to the program at once
+    private static final int BATCH_LINES = 32;
+
+    // the maximum number of characters sent to the program at once. This is kept
+    // small, so that the program never blocks on a full pipe while we are writing.
+    private static final int BATCH_CHARS = 2048;
 
-    // spelling program command with arguments
+    // spelling program command with arguments, %language is not yet replaced
     private String command;
 
     // environment variables for the program
     private String[] envp;
+
+    // the running programs, which are not in use, by language
+    private Map<String, LinkedList<AspellProcess>> idlePrograms;
+
+    // the maximum number of programs per language
+    private int maxPrograms;
+
+    // increased when the settings change, so that older programs are stopped
+    private int generation;
     
     // map of proposals so far
     private Map<IMarker, String[]> proposalMap;
@@ -136,6 +300,8 @@ public class SpellChecker implements IPropertyChangeListener {
      */
     private SpellChecker() {
         proposalMap = new HashMap<IMarker, String[]>();
+        idlePrograms = new HashMap<String, LinkedList<AspellProcess>>();
+        maxPrograms = Runtime.getRuntime().availableProcessors();
         language = "en";
         // these two must be initialized in the constructor, otherwise the resource bundle may not be initialized
         SPELL_CHECKER_ADD = TexlipsePlugin.getResourceString(SPELL_CHECKER_ADD);
@@ -167,7 +333,7 @@ public class SpellChecker implements IPropertyChangeListener {
     public static void addWordToAspell(String word) {
         //patch 1537979 by daniel309
         if (instance.command == null) instance.readSettings();
-        String cmd = instance.command;
+        String cmd = instance.getCommand(instance.language);
         
         BuilderRegistry.printToConsole("aspell> adding word: " + word);
 
@@ -194,7 +360,7 @@ public class SpellChecker implements IPropertyChangeListener {
     /**
      * Read settings from the preferences.
      */
-    private void readSettings() {
+    private synchronized void readSettings() {
         
         command = null;
         envp = null;
@@ -212,132 +378,104 @@ public class SpellChecker implements IPropertyChangeListener {
         String args = TexlipsePlugin.getPreference(SPELL_CHECKER_ARGUMENTS);
         
         args = args.replaceAll("%encoding", ASPELL_ENCODING);
-
-        args = args.replaceAll("%language", language);
         
         command = f.getAbsolutePath() + " " + args;
         envp = PathUtils.mergeEnvFromPrefs(PathUtils.getEnv(), SPELL_CHECKER_ENV);
     }
 
     /**
-     * Check that the current language setting is correct.
+     * Returns the spelling program command for the given language.
+     * 
+     * @param lang the language
+     * @return the command, or null if no valid program is set
      */
-    private void checkLanguage(IFile file) {
-        String pLang = null;
+    private synchronized String getCommand(String lang) {
+        if (command == null) {
+            return null;
+        }
+        return command.replaceAll("%language", lang);
+    }
+
+    /**
+     * Returns the language of the given file. If the project does not
+     * define a language, the last used language is returned.
+     * 
+     * @param file the file to check
+     * @return the language
+     */
+    private String getLanguage(IFile file) {
         IProject prj = file.getProject();
         if (prj != null) {
-            pLang = TexlipseProperties.getProjectProperty(prj, TexlipseProperties.LANGUAGE_PROPERTY);
-        }
-        
-        boolean restart = false;
-        if (pLang != null && pLang.length() > 0) {
-            if (!pLang.equals(language)) {
-                // current project is different language 
-                //than currently running process, so change
+            String pLang = TexlipseProperties.getProjectProperty(prj, TexlipseProperties.LANGUAGE_PROPERTY);
+            if (pLang != null && pLang.length() > 0) {
                 language = pLang;
-                restart = true;
             }
         }
-
-        if (restart) {
-            stopProgram();
-            readSettings();
-        }
+        return language;
     }
 
     /**
-     * Check if the spelling program is still running.
-     * Restart the program, if necessary.
-     * @param file
+     * Returns a running spelling program for the given language. An idle
+     * program is reused, if there is one, otherwise a new one is started.
+     * The program must be handed back with <code>releaseProgram()</code>.
+     * 
+     * @param lang the language
+     * @return the program, or null if it could not be started
      */
-    protected boolean checkProgram(IFile file) {
-        checkLanguage(file);
-        if (spellProgram == null) {
-            return startProgram();
-        } else {
-            int exitCode = -1;
-            try {
-                exitCode = spellProgram.exitValue();
-            } catch (IllegalThreadStateException e) {
-                // program is still running, good
-            }
-            if (exitCode != -1) {
-                // an exit code is defined, so program has ended
-                spellProgram = null;
-                return startProgram();
+    private AspellProcess acquireProgram(String lang) {
+        String cmd;
+        int gen;
+        synchronized (this) {
+            LinkedList<AspellProcess> idle = idlePrograms.get(lang);
+            while (idle != null && !idle.isEmpty()) {
+                AspellProcess program = idle.removeFirst();
+                if (program.isRunning()) {
+                    return program;
+                }
             }
+            cmd = getCommand(lang);
+            gen = generation;
+        }
+        AspellProcess program = new AspellProcess(lang, gen);
+        if (!program.start(cmd, envp)) {
+            return null;
         }
-        return false;
+        return program;
     }
-    
+
     /**
-     * Restarts the spelling program.
-     * Assumes that the program is not currently running.
+     * Hands a program back for reuse. The program is stopped, if the settings
+     * have changed in the meantime or enough programs are idle.
+     * 
+     * @param program the program from <code>acquireProgram()</code>
      */
-    private boolean startProgram(){
-        
-        BuilderRegistry.printToConsole(TexlipsePlugin.getResourceString("viewerRunning") + ' ' + command);
-        try {
-            if (command == null) throw new IOException();
-            spellProgram = Runtime.getRuntime().exec(command, envp);
-            
-        } catch (IOException e) {
-            spellProgram = null;
-            input = null;
-            output = null;
-            BuilderRegistry.printToConsole(TexlipsePlugin.getResourceString("spellProgramStartError"));
-            return false;
-        }
-        
-        // get output and input stream
-        try {
-            output = new PrintWriter(new
-                    OutputStreamWriter(spellProgram.getOutputStream(), ASPELL_ENCODING));
-            input = new BufferedReader(new
-                    InputStreamReader(spellProgram.getInputStream(), ASPELL_ENCODING));
-        }
-        catch (UnsupportedEncodingException e1) {
-            spellProgram = null;
-            input = null;
-            output = null;
-            BuilderRegistry.printToConsole("Unsupported encoding");
-            return false;
-        }
-        
-        // read the version info
-        try {
-            String message = input.readLine();
-            if (null == message) { // Something went wrong, get message from aspell's error stream
-                BufferedReader error = new BufferedReader(new InputStreamReader(spellProgram.getErrorStream()));
-                message = error.readLine();
-                if (null == message) {
-                    BuilderRegistry.printToConsole("Aspell failed! No output could be read.");
-                } else {
-                    BuilderRegistry.printToConsole("aspell> " + message.trim());
-                }
-                error.close();
-                return false;
+    private synchronized void releaseProgram(AspellProcess program) {
+        if (program.generation == generation && program.isRunning()) {
+            LinkedList<AspellProcess> idle = idlePrograms.get(program.language);
+            if (idle == null) {
+                idle = new LinkedList<AspellProcess>();
+                idlePrograms.put(program.language, idle);
+            }
+            if (idle.size() < maxPrograms) {
+                idle.add(program);
+                return;
             }
-            BuilderRegistry.printToConsole("aspell> " + message.trim());
-            // Now it's up and running :)
-            // put it in terse mode, then it's faster
-            output.println("!");
-            return true;
-        } catch (IOException e) {
-            TexlipsePlugin.log("Aspell died", e);
-            BuilderRegistry.printToConsole(TexlipsePlugin.getResourceString("spellProgramStartError"));
-            return false;
         }
+        program.stop();
     }
 
     /**
-     * Stop running the spelling program.
+     * Stop running the spelling programs. Programs currently in use are
+     * stopped as soon as they are released.
      */
-    private void stopProgram() {
-        if (spellProgram != null) {
-            spellProgram.destroy();
-            spellProgram = null;
+    private synchronized void stopPrograms() {
+        for (LinkedList<AspellProcess> idle : idlePrograms.values()) {
+            for (AspellProcess program : idle) {
+                program.stop();
+            }
         }
+        idlePrograms.clear();
+        generation++;
     }
 
     /**
@@ -349,7 +487,7 @@ public class SpellChecker implements IPropertyChangeListener {
         if (prop.startsWith("spell")) {
             // encoding, program args or program path changed
             //BuilderRegistry.printToConsole("spelling property changed: " + prop);
-            stopProgram();
+            stopPrograms();
             readSettings();
         }
     }
@@ -363,9 +501,7 @@ public class SpellChecker implements IPropertyChangeListener {
      * @return fix proposals, or empty array if all correct
      */
     public static void checkSpelling(String line, int offset, int lineNumber, IFile file) {
-        if (instance.checkProgram(file)){
-            instance.checkLineSpelling(line, offset, lineNumber, file);
-        }
+        instance.checkLineSpelling(line, offset, lineNumber, file);
     }
     
     /**
@@ -395,35 +531,129 @@ public class SpellChecker implements IPropertyChangeListener {
      * @param document document from the editor
      */
     private static void checkSpellingDirectly(IDocument document, IFile file, IProgressMonitor monitor) {
-        if (instance.checkProgram(file)) {
-            instance.checkDocumentSpelling(document, file, monitor);
-        }
+        instance.checkDocumentSpelling(document, file, monitor);
     }
 
     /**
-     * Check spelling of the entire document.
+     * Check spelling of the entire document. The lines are distributed
+     * in batches over up to one spelling program per processor.
      * 
      * @param doc the document
      * @param file
      */
-    private void checkDocumentSpelling(IDocument doc, IFile file, IProgressMonitor monitor) {
+    private void checkDocumentSpelling(IDocument doc, IFile file, final IProgressMonitor monitor) {
         deleteOldProposals(file);
-        //doc.addDocumentListener(instance);
+        final String lang = getLanguage(file);
+        final List<String> lines = new ArrayList<String>();
+        List<Integer> offsets = new ArrayList<Integer>();
+        List<Integer> lineNumbers = new ArrayList<Integer>();
         try {
             int num = doc.getNumberOfLines();
-            monitor.beginTask("Check spelling", num);
             for (int i = 0; i < num; i++) {
-                if (monitor.isCanceled()) break;
-                int offset = doc.getLineOffset(i);
-                int length = doc.getLineLength(i);
-                String line = doc.get(offset, length);
-                checkLineSpelling(line, offset, i+1, file);
-                monitor.worked(1);
+                IRegion region = doc.getLineInformation(i);
+                String line = prepareLine(doc.get(region.getOffset(), region.getLength()), lang);
+                if (line != null) {
+                    lines.add(line);
+                    offsets.add(Integer.valueOf(region.getOffset()));
+                    lineNumbers.add(Integer.valueOf(i + 1));
+                }
             }
         } catch (BadLocationException e) {
             TexlipsePlugin.log("Checking spelling on a line", e);
         }
-        stopProgram();
+        monitor.beginTask("Check spelling", lines.size());
+
+        final List<List<String>> results = new ArrayList<List<String>>(lines.size());
+        for (int i = 0; i < lines.size(); i++) {
+            results.add(null);
+        }
+        // state[0]: the next line to check, state[1]: lines checked, state[2]: running workers
+        final int[] state = new int[3];
+        int workers = Math.min(maxPrograms, (lines.size() + BATCH_LINES - 1) / BATCH_LINES);
+        state[2] = workers;
+        for (int w = 0; w < workers; w++) {
+            new Thread(new Runnable() {
+                public void run() {
+                    AspellProcess program = acquireProgram(lang);
+                    try {
+                        while (program != null && !monitor.isCanceled()) {
+                            int from, to;
+                            synchronized (state) {
+                                from = state[0];
+                                to = nextBatch(lines, from);
+                                state[0] = to;
+                            }
+                            if (from == to) {
+                                break;
+                            }
+                            List<List<String>> batch = program.check(lines.subList(from, to));
+                            synchronized (state) {
+                                for (int i = from; i < to; i++) {
+                                    results.set(i, batch.get(i - from));
+                                }
+                                state[1] += to - from;
+                                state.notifyAll();
+                            }
+                        }
+                    } catch (IOException e) {
+                        BuilderRegistry.printToConsole(TexlipsePlugin.getResourceString("spellProgramStartError"));
+                        TexlipsePlugin.log("aspell error", e);
+                    } finally {
+                        if (program != null) {
+                            releaseProgram(program);
+                        }
+                        synchronized (state) {
+                            state[2]--;
+                            state.notifyAll();
+                        }
+                    }
+                }
+            }, "Spellchecker").start();
+        }
+
+        // report the progress until all workers are done
+        int reported = 0;
+        synchronized (state) {
+            while (state[2] > 0) {
+                if (state[1] > reported) {
+                    monitor.worked(state[1] - reported);
+                    reported = state[1];
+                }
+                try {
+                    state.wait();
+                } catch (InterruptedException e) {
+                    break;
+                }
+            }
+        }
+
+        synchronized (state) {
+            for (int i = 0; i < lines.size(); i++) {
+                if (results.get(i) != null) {
+                    createMarkers(results.get(i), offsets.get(i).intValue(),
+                            lineNumbers.get(i).intValue(), file);
+                }
+            }
+        }
+        monitor.done();
+    }
+
+    /**
+     * Determines the end of the next batch of lines to send to the program.
+     * 
+     * @param lines the lines to check
+     * @param from the first line of the batch
+     * @return the index after the last line of the batch
+     */
+    private static int nextBatch(List<String> lines, int from) {
+        int to = from;
+        int chars = 0;
+        while (to < lines.size() && to - from < BATCH_LINES
+                && (to == from || chars + lines.get(to).length() <= BATCH_CHARS)) {
+            chars += lines.get(to).length();
+            to++;
+        }
+        return to;
     }
 
     /**
@@ -492,64 +722,72 @@ public class SpellChecker implements IPropertyChangeListener {
         return out.toString();
     }
     
+    /**
+     * Prepares a line of text for the spell checker.
+     * 
+     * @param line the line of text
+     * @param lang the language of the text
+     * @return the line to send to the program, or null if there is nothing to check
+     */
+    private static String prepareLine(String line, String lang) {
+        // check that there is text for the checker
+        if (line == null || line.trim().length() == 0) {
+            return null;
+        }
+        
+        // the program answers every line of input, so there must be no line breaks
+        int end = line.length();
+        while (end > 0 && (line.charAt(end - 1) == '\n' || line.charAt(end - 1) == '\r')) {
+            end--;
+        }
+        line = line.substring(0, end).replace('\n', ' ').replace('\r', ' ');
+        
+        // give the speller something to parse
+        if (lang.equals("de")) {
+            return replaceUmlauts(line);
+        }
+        return line;
+    }
+
     /**
      * Check spelling of a single line.
-     * This method parses ispell-style spelling error proposals.
      * 
      * @param line the line of text
      * @param offset start offset of the line in the document
      * @param file
-     * @return fix proposals, or empty array if all correct
      */
     private void checkLineSpelling(String line, int offset, int lineNumber, IFile file) {
-        
-        // check that there is text for the checker
-        if (line == null || line.length() == 0) {
+        String lang = getLanguage(file);
+        String lineToPost = prepareLine(line, lang);
+        if (lineToPost == null) {
             return;
         }
-        
-        if (line.trim().length() == 0) {
+        AspellProcess program = acquireProgram(lang);
+        if (program == null) {
             return;
         }
-        
-        // give the speller something to parse
-        String lineToPost = line;
-        if (language.equals("de")) {
-            lineToPost = replaceUmlauts(line);
-        }
-        
-        /*
-         * a prefixed "^" tells aspell to parse the line without exceptions. From
-         * http://aspell.sourceforge.net/man-html/Through-A-Pipe.html#Through-A-Pipe:
-         * "lines of single words prefixed with any of `*', `&', `@', `+', `-',
-         * `~', `#', `!', `%', or `^'" are also valid and have a special meaning
-         * Special meaning of "^" is to ignore all other prefixes.
-         * 
-         */
-        output.println("^" + lineToPost);
-        output.flush();
-        // wait until there is input
-        List<String> lines = new ArrayList<String>();
+        List<String> lines = new ArrayList<String>(1);
+        lines.add(lineToPost);
         try {
-            String result = input.readLine();
-            while ((!"".equals(result)) && (result != null)) {
-                lines.add(result);
-                result = input.readLine();
-            }
-            //Wait a bit and clear the input buffer (sometimes there are more than one empty line)
-            try {
-                Thread.sleep(5);
-            } catch (InterruptedException e) {
-                //No problem
-            } 
-            while (input.ready()) { 
-                input.readLine();
-            }
+            createMarkers(program.check(lines).get(0), offset, lineNumber, file);
         } catch (IOException e) {
             BuilderRegistry.printToConsole(TexlipsePlugin.getResourceString("spellProgramStartError"));
             TexlipsePlugin.log("aspell error at line " + lineNumber + ": " + lineToPost, e);
+        } finally {
+            releaseProgram(program);
         }
-        
+    }
+
+    /**
+     * Creates the markers for the spelling errors of a single line.
+     * This method parses ispell-style spelling error proposals.
+     * 
+     * @param lines the output of the program for the line (only errors)
+     * @param offset start offset of the line in the document
+     * @param lineNumber the line number
+     * @param file
+     */
+    private void createMarkers(List<String> lines, int offset, int lineNumber, IFile file) {
         // loop through the output lines (they contain only errors)
         for (int i = 0; i < lines.size(); i++) {
             String[] tmp = (lines.get(i)).split(":");
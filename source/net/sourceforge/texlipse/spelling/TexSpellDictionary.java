@@ -11,32 +11,68 @@ package net.sourceforge.texlipse.spelling;
 
 import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.io.Reader;
 import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.StringTokenizer;
+import java.util.Set;
 
 import com.swabunga.spell.engine.SpellDictionaryASpell;
 
 /**
- * A memory optimized dictionary class 
+ * A memory optimized dictionary class. The words of the word list are
+ * kept sorted in a single character array, and the phonetic codes in a
+ * second one, which maps each code to the indices of its words. Words
+ * added later (e.g. from the user dictionary) are kept in hash tables.
+ * 
  * @author Boris von Loesch
  *
  */
 public class TexSpellDictionary extends SpellDictionaryASpell {
     private final static int INITIAL_CAPACITY = 32 * 1024;
 
-    private final static char SEP_CHAR = ';';
-    
-    protected Map<Integer, StringBuilder> mainDictionary = new HashMap<Integer, StringBuilder>(INITIAL_CAPACITY);
+    // identifies the binary dictionary images
+    private final static int CACHE_MAGIC = 0x54534443;
+    // must be increased whenever the image format or the phonetic codes change
+    private final static int CACHE_VERSION = 1;
+    // magic, version, source modification time and size, six array lengths
+    private final static int CACHE_HEADER_LENGTH = 4 + 4 + 8 + 8 + 6 * 4;
+
+    // the words of the word list, sorted and concatenated
+    private char[] wordChars = new char[0];
+    // the start of each word in wordChars, plus the end of the last word
+    private int[] wordStart = new int[1];
+
+    // the phonetic codes of the word list, sorted and concatenated
+    private char[] codeChars = new char[0];
+    // the start of each code in codeChars, plus the end of the last code
+    private int[] codeStart = new int[1];
+    // the indices of the words with code i are codeWords[codeWordStart[i]]
+    // to codeWords[codeWordStart[i + 1] - 1]
+    private int[] codeWordStart = new int[1];
+    private int[] codeWords = new int[0];
+
+    // words added after the word list, and their phonetic codes
+    private Set<String> addedWords = new HashSet<String>();
+    private Map<String, List<String>> addedCodes = new HashMap<String, List<String>>();
+
+    // the words of the word list while it is read
+    private List<String> loadedWords;
 
     /**
      * User dictionary
@@ -55,6 +91,29 @@ public class TexSpellDictionary extends SpellDictionaryASpell {
         createDictionary(new BufferedReader(wordList));
     }
 
+    /**
+     * Dictionary constructor that uses a binary image of the dictionary
+     * to speed up loading. If the image is missing or older than the word
+     * list, the word list is read and a new image is written.
+     * @param wordList The file containing the words list (UTF-8)
+     * @param cacheFile The binary image of the dictionary
+     * @throws java.io.IOException indicates problems reading the words list
+     * file
+     */
+    public TexSpellDictionary(File wordList, File cacheFile) throws IOException {
+        super((File) null);
+        if (!readCache(wordList, cacheFile)) {
+            Reader r = new BufferedReader(new InputStreamReader(
+                    new FileInputStream(wordList), "UTF-8"));
+            try {
+                createDictionary(new BufferedReader(r));
+            } finally {
+                r.close();
+            }
+            writeCache(wordList, cacheFile);
+        }
+    }
+
     /**
      * Dictionary constructor that uses an aspell phonetic file to
      * build the transformation table.
@@ -125,16 +184,25 @@ public class TexSpellDictionary extends SpellDictionaryASpell {
      * <p>
      * Each word in the reader should be on a separate line.
      * <p>
-     * This is a very slow function. On my machine it takes quite a while to
-     * load the data in. I suspect that we could speed this up quite allot.
+     * The slow part of this is computing the phonetic code of
+     * every word.
      */
     protected void createDictionary(BufferedReader in) throws IOException {
+        loadedWords = new ArrayList<String>(INITIAL_CAPACITY);
         String line;
         while ((line = in.readLine()) != null) {
             if (line.length() > 0) {
                 putWord(line.trim());
             }
         }
+        String[] words = loadedWords.toArray(new String[loadedWords.size()]);
+        loadedWords = null;
+        Arrays.sort(words);
+        String[] codes = new String[words.length];
+        for (int i = 0; i < words.length; i++) {
+            codes[i] = getCode(words[i]);
+        }
+        setWords(words, codes);
     }
 
     /**
@@ -142,13 +210,6 @@ public class TexSpellDictionary extends SpellDictionaryASpell {
      * already exists in the dictionary, a new entry is not added.
      * <p>
      * Each word in the reader should be on a separate line.
-     * <p>
-     * Note: for whatever reason that I haven't yet looked into, the phonetic codes
-     * for a particular word map to a vector of words rather than a hash table.
-     * This is a drag since in order to check for duplicates you have to iterate
-     * through all the words that use the phonetic code.
-     * If the vector-based implementation is important, it may be better
-     * to subclass for the cases where duplicates are bad.
      */
     public void addDictionaryHelper(BufferedReader in) throws IOException {
         String line;
@@ -164,67 +225,330 @@ public class TexSpellDictionary extends SpellDictionaryASpell {
      * @param word The word to add
      */
     protected void putWord(String word) {
-        int code = getCode(word).hashCode();
-        StringBuilder words = mainDictionary.get(code);
-        if (words != null) {
-            words.append(word);
-            words.append(SEP_CHAR);
+        if (loadedWords != null) {
+            loadedWords.add(word);
         } else {
-            words = new StringBuilder();
-            words.append(SEP_CHAR);
-            words.append(word);
-            words.append(SEP_CHAR);
-            mainDictionary.put(code, words);
+            putWordUnique(word);
         }
     }
 
     /**
-     * Allocates a word, if it is not already present in the dictionary. A word
-     * with a different case is considered the same.
+     * Allocates a word, if it is not already present in the dictionary.
      * @param word The word to add
      */
     protected void putWordUnique(String word) {
+        if (find(wordChars, wordStart, word, false) >= 0 || !addedWords.add(word)) {
+            //the word is already in the dictionary
+            return;
+        }
+        String code = getCode(word);
+        List<String> words = addedCodes.get(code);
+        if (words == null) {
+            words = new ArrayList<String>(1);
+            addedCodes.put(code, words);
+        }
+        words.add(word);
+    }
+
+    /**
+     * Replaces the word list of this dictionary.
+     * 
+     * @param words The words, sorted
+     * @param codes The phonetic codes of the words
+     */
+    private void setWords(String[] words, final String[] codes) {
+        // remove duplicates
+        int n = 0;
+        int length = 0;
+        for (int i = 0; i < words.length; i++) {
+            if (n == 0 || !words[i].equals(words[n - 1])) {
+                words[n] = words[i];
+                codes[n] = codes[i];
+                length += words[i].length();
+                n++;
+            }
+        }
+        char[] wChars = new char[length];
+        int[] wStart = new int[n + 1];
+        for (int i = 0; i < n; i++) {
+            words[i].getChars(0, words[i].length(), wChars, wStart[i]);
+            wStart[i + 1] = wStart[i] + words[i].length();
+        }
+
+        // sort the word indices by their code
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = Integer.valueOf(i);
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer i1, Integer i2) {
+                return codes[i1.intValue()].compareTo(codes[i2.intValue()]);
+            }
+        });
+        int codeCount = 0;
+        int codeLength = 0;
+        for (int i = 0; i < n; i++) {
+            String code = codes[order[i].intValue()];
+            if (i == 0 || !code.equals(codes[order[i - 1].intValue()])) {
+                codeCount++;
+                codeLength += code.length();
+            }
+        }
+        char[] cChars = new char[codeLength];
+        int[] cStart = new int[codeCount + 1];
+        int[] cWordStart = new int[codeCount + 1];
+        int[] cWords = new int[n];
+        int c = 0;
+        for (int i = 0; i < n; i++) {
+            int word = order[i].intValue();
+            String code = codes[word];
+            if (i == 0 || !code.equals(codes[order[i - 1].intValue()])) {
+                code.getChars(0, code.length(), cChars, cStart[c]);
+                cStart[c + 1] = cStart[c] + code.length();
+                cWordStart[c] = i;
+                c++;
+            }
+            cWords[i] = word;
+        }
+        cWordStart[codeCount] = n;
+
+        wordChars = wChars;
+        wordStart = wStart;
+        codeChars = cChars;
+        codeStart = cStart;
+        codeWordStart = cWordStart;
+        codeWords = cWords;
+    }
 
-        int code = getCode(word).hashCode();
-        StringBuilder words = mainDictionary.get(code);
+    /**
+     * Reads the word list from a binary image written by <code>writeCache</code>.
+     * 
+     * @param wordList The word list the image was created from
+     * @param cacheFile The binary image
+     * @return true, if the image was read, false if it is missing, does not
+     * match the word list or is damaged
+     */
+    private boolean readCache(File wordList, File cacheFile) {
+        if (!cacheFile.isFile()) return false;
+        try {
+            FileInputStream in = new FileInputStream(cacheFile);
+            try {
+                FileChannel channel = in.getChannel();
+                long size = channel.size();
+                if (size < CACHE_HEADER_LENGTH) return false;
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                if (buffer.getInt() != CACHE_MAGIC || buffer.getInt() != CACHE_VERSION
+                        || buffer.getLong() != wordList.lastModified()
+                        || buffer.getLong() != wordList.length()) {
+                    return false;
+                }
+                int[] lengths = new int[6];
+                long total = CACHE_HEADER_LENGTH;
+                for (int i = 0; i < lengths.length; i++) {
+                    lengths[i] = buffer.getInt();
+                    if (lengths[i] < 0) return false;
+                    total += (i % 3 == 0 ? 2L : 4L) * lengths[i];
+                }
+                if (total != size) return false;
 
-        if (words != null) {
-            if (words.indexOf(SEP_CHAR + word + SEP_CHAR) == -1) {
-                words.append(word);
-                words.append(SEP_CHAR);            
+                char[] wChars = new char[lengths[0]];
+                int[] wStart = new int[lengths[1]];
+                int[] cWords = new int[lengths[2]];
+                char[] cChars = new char[lengths[3]];
+                int[] cStart = new int[lengths[4]];
+                int[] cWordStart = new int[lengths[5]];
+                buffer.asCharBuffer().get(wChars);
+                buffer.position(buffer.position() + 2 * wChars.length);
+                buffer.asIntBuffer().get(wStart);
+                buffer.position(buffer.position() + 4 * wStart.length);
+                buffer.asIntBuffer().get(cWords);
+                buffer.position(buffer.position() + 4 * cWords.length);
+                buffer.asCharBuffer().get(cChars);
+                buffer.position(buffer.position() + 2 * cChars.length);
+                buffer.asIntBuffer().get(cStart);
+                buffer.position(buffer.position() + 4 * cStart.length);
+                buffer.asIntBuffer().get(cWordStart);
+                if (wStart.length == 0 || cStart.length == 0
+                        || cWordStart.length != cStart.length
+                        || wStart[wStart.length - 1] != wChars.length
+                        || cStart[cStart.length - 1] != cChars.length
+                        || cWordStart[cWordStart.length - 1] != cWords.length) {
+                    return false;
+                }
+
+                wordChars = wChars;
+                wordStart = wStart;
+                codeWords = cWords;
+                codeChars = cChars;
+                codeStart = cStart;
+                codeWordStart = cWordStart;
+                return true;
+            } finally {
+                in.close();
             }
-            //else the word is already in the dictionary
+        } catch (IOException e) {
+            return false;
         }
-        else {
-            words = new StringBuilder();
-            words.append(SEP_CHAR);
-            words.append(word);
-            words.append(SEP_CHAR);
-            mainDictionary.put(code, words);
+    }
+
+    /**
+     * Writes the word list of this dictionary into a binary image, which
+     * can be mapped into memory by <code>readCache</code>. Failures are
+     * ignored, as the image is only used to speed up loading.
+     * 
+     * @param wordList The word list the dictionary was created from
+     * @param cacheFile The binary image
+     */
+    private void writeCache(File wordList, File cacheFile) {
+        int size = CACHE_HEADER_LENGTH + 2 * wordChars.length + 4 * wordStart.length
+            + 4 * codeWords.length + 2 * codeChars.length + 4 * codeStart.length
+            + 4 * codeWordStart.length;
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putInt(CACHE_MAGIC);
+        buffer.putInt(CACHE_VERSION);
+        buffer.putLong(wordList.lastModified());
+        buffer.putLong(wordList.length());
+        buffer.putInt(wordChars.length);
+        buffer.putInt(wordStart.length);
+        buffer.putInt(codeWords.length);
+        buffer.putInt(codeChars.length);
+        buffer.putInt(codeStart.length);
+        buffer.putInt(codeWordStart.length);
+        buffer.asCharBuffer().put(wordChars);
+        buffer.position(buffer.position() + 2 * wordChars.length);
+        buffer.asIntBuffer().put(wordStart);
+        buffer.position(buffer.position() + 4 * wordStart.length);
+        buffer.asIntBuffer().put(codeWords);
+        buffer.position(buffer.position() + 4 * codeWords.length);
+        buffer.asCharBuffer().put(codeChars);
+        buffer.position(buffer.position() + 2 * codeChars.length);
+        buffer.asIntBuffer().put(codeStart);
+        buffer.position(buffer.position() + 4 * codeStart.length);
+        buffer.asIntBuffer().put(codeWordStart);
+        buffer.rewind();
+
+        // write to a temporary file first, so that a concurrent reader
+        // never sees a partial image
+        File tmpFile = new File(cacheFile.getPath() + ".tmp");
+        try {
+            FileOutputStream out = new FileOutputStream(tmpFile);
+            try {
+                FileChannel channel = out.getChannel();
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            } finally {
+                out.close();
+            }
+            if (!tmpFile.renameTo(cacheFile)) {
+                cacheFile.delete();
+                if (!tmpFile.renameTo(cacheFile)) {
+                    tmpFile.delete();
+                }
+            }
+        } catch (IOException e) {
+            tmpFile.delete();
         }
     }
 
     /**
-     * Compresses the dictionary so that it takes less memory
+     * Compresses the dictionary so that it takes less memory, by merging
+     * the added words into the word list.
      */
     public void compress() {
-        Collection<StringBuilder> c = mainDictionary.values();
-        for (StringBuilder st : c) {
-            st.trimToSize();
+        if (addedWords.isEmpty()) return;
+        int count = wordStart.length - 1;
+        List<String> words = new ArrayList<String>(count + addedWords.size());
+        final Map<String, String> codes = new HashMap<String, String>(count + addedWords.size());
+        for (int i = 0; i < codeStart.length - 1; i++) {
+            String code = new String(codeChars, codeStart[i], codeStart[i + 1] - codeStart[i]);
+            for (int j = codeWordStart[i]; j < codeWordStart[i + 1]; j++) {
+                String word = getWord(codeWords[j]);
+                words.add(word);
+                codes.put(word, code);
+            }
+        }
+        for (Map.Entry<String, List<String>> entry : addedCodes.entrySet()) {
+            for (String word : entry.getValue()) {
+                words.add(word);
+                codes.put(word, entry.getKey());
+            }
         }
+        String[] wordArray = words.toArray(new String[words.size()]);
+        Arrays.sort(wordArray);
+        String[] codeArray = new String[wordArray.length];
+        for (int i = 0; i < wordArray.length; i++) {
+            codeArray[i] = codes.get(wordArray[i]);
+        }
+        setWords(wordArray, codeArray);
+        addedWords.clear();
+        addedCodes.clear();
     }
-    
+
+    /**
+     * @param index The index of a word of the word list
+     * @return The word
+     */
+    private String getWord(int index) {
+        return new String(wordChars, wordStart[index], wordStart[index + 1] - wordStart[index]);
+    }
+
+    /**
+     * Searches for a string in a sorted, concatenated string array.
+     * 
+     * @param chars The concatenated strings
+     * @param start The start offsets of the strings, plus the end of the last one
+     * @param key The string to find
+     * @param lowerCase Whether to compare with the lower case version of the key
+     * @return The index of the string, or -1 if it was not found
+     */
+    private static int find(char[] chars, int[] start, String key, boolean lowerCase) {
+        int low = 0;
+        int high = start.length - 2;
+        int keyLength = key.length();
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int offset = start[mid];
+            int length = start[mid + 1] - offset;
+            int n = Math.min(length, keyLength);
+            int cmp = length - keyLength;
+            for (int i = 0; i < n; i++) {
+                char k = key.charAt(i);
+                if (lowerCase) {
+                    k = Character.toLowerCase(k);
+                }
+                if (chars[offset + i] != k) {
+                    cmp = chars[offset + i] - k;
+                    break;
+                }
+            }
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
     /**
      * Returns a list of strings (words) for the code.
      */
     @Override
     public List<String> getWords(String code) {
-        //Check the main dictionary.
-        StringBuilder mainDictResult = mainDictionary.get(code.hashCode());
-        if (mainDictResult == null) return new ArrayList<String>(1);
-        StringTokenizer stk = new StringTokenizer(mainDictResult.toString(), ""+SEP_CHAR);
         List<String> list = new ArrayList<String>(1);
-        while (stk.hasMoreTokens()) list.add(stk.nextToken());
+        int c = find(codeChars, codeStart, code, false);
+        if (c >= 0) {
+            for (int i = codeWordStart[c]; i < codeWordStart[c + 1]; i++) {
+                list.add(getWord(codeWords[i]));
+            }
+        }
+        List<String> added = addedCodes.get(code);
+        if (added != null) {
+            list.addAll(added);
+        }
         return list;
     }
 
@@ -233,13 +557,12 @@ public class TexSpellDictionary extends SpellDictionaryASpell {
      */
     @Override
     public boolean isCorrect(String word) {
-        StringBuilder words = mainDictionary.get(getCode(word).hashCode());
-        if (words == null) return false;
-        if (words.indexOf(SEP_CHAR + word + SEP_CHAR) >= 0) return true;
+        if (find(wordChars, wordStart, word, false) >= 0) return true;
         //JMH should we always try the lowercase version. If I dont then capitalised
         //words are always returned as incorrect.
-        if (words.indexOf(SEP_CHAR + word.toLowerCase() + SEP_CHAR) >= 0) return true;
-        return false;
+        if (find(wordChars, wordStart, word, true) >= 0) return true;
+        if (addedWords.isEmpty()) return false;
+        return addedWords.contains(word) || addedWords.contains(word.toLowerCase());
     }
 
 }
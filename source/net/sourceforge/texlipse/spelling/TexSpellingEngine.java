@@ -9,12 +9,8 @@
  */
 package net.sourceforge.texlipse.spelling;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.Reader;
 import java.text.MessageFormat;
 import java.util.HashSet;
 import java.util.LinkedList;
@@ -32,6 +28,7 @@ import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.resources.IWorkspace;
 import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.jface.text.BadLocationException;
 import org.eclipse.jface.text.IDocument;
@@ -126,6 +123,8 @@ public class TexSpellingEngine implements ISpellingEngine, SpellCheckListener {
     
     private final static String DEFAULT_DICT_PATH = "/dict/";
     private final static String DEFAULT_LANG = "en";
+    private final static String DICT_CACHE_DIR = "dictionaries";
+    private final static String DICT_CACHE_EXT = ".bin";
     
     private static SpellChecker spellCheck;
     private static TexSpellDictionary dict;
@@ -160,10 +159,7 @@ public class TexSpellingEngine implements ISpellingEngine, SpellCheckListener {
         currentLang = lang;
 
         try {
-            FileInputStream input = new FileInputStream(f);
-            Reader r = new BufferedReader(new InputStreamReader(input, "UTF-8"));
-            dict = new TexSpellDictionary(r);
-            r.close();
+            dict = new TexSpellDictionary(f, getDictCacheFile(f));
 
             String customDictPath = TexlipsePlugin.getPreference(TexlipseProperties.SPELLCHECKER_CUSTOM_DICT_DIR);
             if (customDictPath != null && !"".equals(customDictPath.trim())) {
@@ -177,6 +173,26 @@ public class TexSpellingEngine implements ISpellingEngine, SpellCheckListener {
         return null;
     }
     
+    /**
+     * Returns the file for the binary image of the given word list. The images
+     * are kept in the state location of the plugin, since the dictionary
+     * directory can be read-only, e.g. inside the plugin installation.
+     * 
+     * @param wordList The word list
+     * @return The file for the binary image
+     */
+    private static File getDictCacheFile(File wordList) {
+        IPath cacheDir = TexlipsePlugin.getDefault().getStateLocation().append(DICT_CACHE_DIR);
+        File dir = new File(cacheDir.toOSString());
+        if (!dir.exists()) {
+            dir.mkdir();
+        }
+        // word lists of the same language in different directories get their own image
+        String path = wordList.getAbsolutePath();
+        return new File(dir, wordList.getName() + "." + Integer.toHexString(path.hashCode())
+                + DICT_CACHE_EXT);
+    }
+    
     /**
      * <p>Returns the dictionary for that language, or the default dictionary if no
      * exists.</p> 
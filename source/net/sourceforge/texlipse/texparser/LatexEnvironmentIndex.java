@@ -0,0 +1,361 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2026 by the TeXlapse Team.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package net.sourceforge.texlipse.texparser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.DocumentEvent;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.IDocumentListener;
+import org.eclipse.jface.text.IRegion;
+import org.eclipse.jface.text.Region;
+
+/**
+ * An index of all \begin{...} and \end{...} commands of a document, which
+ * pairs every \begin with its matching \end. Comments, verbatim environments
+ * and \verb are skipped.
+ * <p>
+ * The index is built in one pass over the document. A change, which does
+ * not touch a command and whose lines contain no backslash, percent sign or
+ * brace, cannot change the commands, so the index only moves the offsets
+ * after it. After other changes the index is built again when it is next
+ * used. A lookup is a binary search.
+ *
+ * @see LatexParserUtils#findMatchingEndEnvironment(String, String, int)
+ */
+public class LatexEnvironmentIndex implements IDocumentListener {
+
+    private static final String BEGIN = "\\begin";
+    private static final String END = "\\end";
+    private static final String VERB = "\\verb";
+    private static final String[] VERBATIM_ENVS = {"verbatim", "verbatim*", "Verbatim",
+        "lstlisting", "comment"};
+
+    private final IDocument document;
+
+    // the commands sorted by offset
+    private int[] offsets;
+    private int[] lengths;
+    // the index of the matching command, or -1
+    private int[] peers;
+    private int count;
+    private boolean valid;
+
+    // the regions of the commands, \verb and unfinished \begin and \end,
+    // in which a change may change the commands, sorted by offset
+    private int[] guardStarts;
+    private int[] guardEnds;
+    private int guardCount;
+    // whether the change being made may only move the commands
+    private boolean moveOnly;
+
+    /**
+     * Creates a new index for the given document, which is updated
+     * whenever the document changes.
+     *
+     * @param document the document
+     */
+    public LatexEnvironmentIndex(IDocument document) {
+        this.document = document;
+        document.addDocumentListener(this);
+    }
+
+    /**
+     * Stops following the changes of the document.
+     */
+    public void dispose() {
+        document.removeDocumentListener(this);
+    }
+
+    /**
+     * @return the document of this index
+     */
+    public IDocument getDocument() {
+        return document;
+    }
+
+    public synchronized void documentAboutToBeChanged(DocumentEvent event) {
+        moveOnly = false;
+        if (!valid || isGuarded(event.getOffset(), event.getOffset() + event.getLength())) {
+            return;
+        }
+        try {
+            moveOnly = !containsSpecial(document.get(event.getOffset(), event.getLength()));
+        } catch (BadLocationException e) {
+            // the index is built again
+        }
+    }
+
+    public synchronized void documentChanged(DocumentEvent event) {
+        if (!valid) {
+            return;
+        }
+        valid = false;
+        if (!moveOnly) {
+            return;
+        }
+        final int offset = event.getOffset();
+        final int textLength = event.getText() != null ? event.getText().length() : 0;
+        try {
+            // a removed or inserted line break can end a comment or join two lines
+            IRegion first = document.getLineInformationOfOffset(offset);
+            IRegion last = document.getLineInformationOfOffset(offset + textLength);
+            if (containsSpecial(document.get(first.getOffset(),
+                    last.getOffset() + last.getLength() - first.getOffset()))) {
+                return;
+            }
+        } catch (BadLocationException e) {
+            return;
+        }
+        final int end = offset + event.getLength();
+        final int delta = textLength - event.getLength();
+        for (int i = 0; i < count; i++) {
+            if (offsets[i] > end) {
+                offsets[i] += delta;
+            }
+        }
+        for (int i = 0; i < guardCount; i++) {
+            if (guardStarts[i] > end) {
+                guardStarts[i] += delta;
+                guardEnds[i] += delta;
+            }
+        }
+        valid = true;
+    }
+
+    /**
+     * Checks if the given range touches a region, in which a change may
+     * change the commands.
+     *
+     * @param start the start offset of the range
+     * @param end the end offset of the range
+     * @return true, if the range intersects or touches a region
+     */
+    private boolean isGuarded(int start, int end) {
+        // the last region starting at or before the end of the range
+        int low = 0;
+        int high = guardCount - 1;
+        int last = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (guardStarts[mid] <= end) {
+                last = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        // the regions are disjoint, so the earlier ones end before this one
+        return last >= 0 && guardEnds[last] >= start;
+    }
+
+    /**
+     * Checks if the text contains a character, which starts a command,
+     * a comment or an argument.
+     */
+    private static boolean containsSpecial(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\\' || c == '%' || c == '{' || c == '}') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the region of the \end{...} or \begin{...} command, which
+     * matches the command starting at the given offset.
+     *
+     * @param offset the offset of the backslash of a \begin or \end command
+     * @return the region of the matching command, or null if there is none
+     */
+    public synchronized IRegion findMatchingEnvironment(int offset) {
+        if (!valid) {
+            build(document.get());
+        }
+        int i = Arrays.binarySearch(offsets, 0, count, offset);
+        if (i < 0 || peers[i] < 0) {
+            return null;
+        }
+        int peer = peers[i];
+        return new Region(offsets[peer], lengths[peer]);
+    }
+
+    /**
+     * Adds a command to the arrays.
+     *
+     * @param offset offset of the command
+     * @param length length of the command including the argument
+     * @return the index of the command
+     */
+    private int add(int offset, int length) {
+        if (count == offsets.length) {
+            offsets = grow(offsets);
+            lengths = grow(lengths);
+            peers = grow(peers);
+        }
+        offsets[count] = offset;
+        lengths[count] = length;
+        peers[count] = -1;
+        return count++;
+    }
+
+    /**
+     * Adds a region, in which a change may change the commands.
+     *
+     * @param start start offset of the region
+     * @param end end offset of the region
+     */
+    private void addGuard(int start, int end) {
+        if (guardCount == guardStarts.length) {
+            guardStarts = grow(guardStarts);
+            guardEnds = grow(guardEnds);
+        }
+        guardStarts[guardCount] = start;
+        guardEnds[guardCount] = end;
+        guardCount++;
+    }
+
+    private static int[] grow(int[] array) {
+        int[] newArray = new int[array.length * 2];
+        System.arraycopy(array, 0, newArray, 0, array.length);
+        return newArray;
+    }
+
+    /**
+     * Checks if the text at the given index is the given command, which
+     * is not followed by a letter.
+     */
+    private static boolean isCommand(String text, int index, String command) {
+        int end = index + command.length();
+        return text.startsWith(command, index)
+            && (end == text.length() || !Character.isLetter(text.charAt(end)));
+    }
+
+    /**
+     * Scans the document and pairs the \begin and \end commands.
+     *
+     * @param text the document contents
+     */
+    private void build(String text) {
+        offsets = new int[64];
+        lengths = new int[64];
+        peers = new int[64];
+        count = 0;
+        guardStarts = new int[64];
+        guardEnds = new int[64];
+        guardCount = 0;
+        // the open \begin commands of every environment
+        Map<String, List<Integer>> open = new HashMap<String, List<Integer>>();
+
+        final int length = text.length();
+        int pos = 0;
+        while (pos < length) {
+            char c = text.charAt(pos);
+            if (c == '%') {
+                // skip the comment
+                while (pos < length && text.charAt(pos) != '\n' && text.charAt(pos) != '\r') {
+                    pos++;
+                }
+                continue;
+            }
+            if (c != '\\') {
+                pos++;
+                continue;
+            }
+            if (pos + 1 < length && !Character.isLetter(text.charAt(pos + 1))) {
+                // escaped character
+                pos += 2;
+                continue;
+            }
+            if (isCommand(text, pos, VERB)) {
+                // skip \verb|...| and \verb*|...|
+                int delim = pos + VERB.length();
+                if (delim < length && text.charAt(delim) == '*') {
+                    delim++;
+                }
+                if (delim >= length) {
+                    addGuard(pos, length);
+                    break;
+                }
+                int close = text.indexOf(text.charAt(delim), delim + 1);
+                int verbEnd = close == -1 ? length : close + 1;
+                addGuard(pos, verbEnd);
+                pos = verbEnd;
+                continue;
+            }
+            boolean begin = isCommand(text, pos, BEGIN);
+            if (!begin && !isCommand(text, pos, END)) {
+                pos++;
+                continue;
+            }
+
+            // read the argument
+            int arg = pos + (begin ? BEGIN.length() : END.length());
+            while (arg < length && Character.isWhitespace(text.charAt(arg))) {
+                arg++;
+            }
+            int close = arg < length && text.charAt(arg) == '{' ? text.indexOf('}', arg) : -1;
+            if (close == -1) {
+                addGuard(pos, arg);
+                pos = arg;
+                continue;
+            }
+            String envName = text.substring(arg + 1, close);
+            int index = add(pos, close + 1 - pos);
+            addGuard(pos, close + 1);
+            if (begin) {
+                if (isVerbatim(envName)) {
+                    // skip the contents of the verbatim environment
+                    int end = text.indexOf(END + "{" + envName + "}", close + 1);
+                    if (end == -1) {
+                        break;
+                    }
+                    int endIndex = add(end, END.length() + envName.length() + 2);
+                    addGuard(end, end + END.length() + envName.length() + 2);
+                    peers[index] = endIndex;
+                    peers[endIndex] = index;
+                    pos = end + END.length() + envName.length() + 2;
+                    continue;
+                }
+                List<Integer> stack = open.get(envName);
+                if (stack == null) {
+                    stack = new ArrayList<Integer>();
+                    open.put(envName, stack);
+                }
+                stack.add(Integer.valueOf(index));
+            } else {
+                List<Integer> stack = open.get(envName);
+                if (stack != null && !stack.isEmpty()) {
+                    int beginIndex = stack.remove(stack.size() - 1).intValue();
+                    peers[beginIndex] = index;
+                    peers[index] = beginIndex;
+                }
+            }
+            pos = close + 1;
+        }
+        valid = true;
+    }
+
+    private static boolean isVerbatim(String envName) {
+        for (int i = 0; i < VERBATIM_ENVS.length; i++) {
+            if (VERBATIM_ENVS[i].equals(envName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
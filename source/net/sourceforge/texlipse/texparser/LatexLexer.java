@@ -9,15 +9,23 @@
  */
 package net.sourceforge.texlipse.texparser;
 
+import java.io.IOException;
 import java.io.PushbackReader;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
-import net.sourceforge.texlipse.texparser.lexer.Lexer;
 import net.sourceforge.texlipse.texparser.lexer.LexerException;
+import net.sourceforge.texlipse.texparser.lexer.TokenReusingLexer;
 import net.sourceforge.texlipse.texparser.node.EOF;
 import net.sourceforge.texlipse.texparser.node.TArgument;
 import net.sourceforge.texlipse.texparser.node.TBverbatim;
+import net.sourceforge.texlipse.texparser.node.TCchapter;
 import net.sourceforge.texlipse.texparser.node.TCnew;
+import net.sourceforge.texlipse.texparser.node.TCpart;
+import net.sourceforge.texlipse.texparser.node.TCsection;
 import net.sourceforge.texlipse.texparser.node.TCword;
 import net.sourceforge.texlipse.texparser.node.TEverbatim;
 import net.sourceforge.texlipse.texparser.node.TLBrace;
@@ -35,7 +43,7 @@ import net.sourceforge.texlipse.texparser.node.Token;
  * 
  * @author Oskar Ojala
  */
-public class LatexLexer extends Lexer {
+public class LatexLexer extends TokenReusingLexer {
     
     /**
      * Counter for braces
@@ -56,6 +64,35 @@ public class LatexLexer extends Lexer {
     private HashSet<String> defCommands;
     private boolean commandDef;
     
+    /**
+     * Number of lines and characters preceding the input
+     */
+    private int lineOffset;
+    private int charOffset;
+    
+    /**
+     * Number of characters read by the lexer
+     */
+    private int readChars;
+    
+    /**
+     * The lexer state and offset before the first character of the
+     * token being scanned and of the last returned token
+     */
+    private State pendingState;
+    private int pendingOffset;
+    private State tokenState;
+    private int tokenOffset;
+    private int tokenLine;
+    private int tokenPos;
+    
+    /**
+     * Recording of snapshots
+     */
+    private int snapshotInterval;
+    private List<LatexLexerSnapshot> snapshots;
+    private LatexLexerSnapshot lastSnapshot;
+    
     /**
      * Creates a new lexer.
      * 
@@ -67,10 +104,113 @@ public class LatexLexer extends Lexer {
         commandDef = false;
     }
     
+    /**
+     * Creates a new lexer, which reads the characters directly from the
+     * given sequence. This is faster than reading them from a reader.
+     * 
+     * @param input The characters to tokenize
+     */
+    public LatexLexer(CharSequence input) {
+        super(input);
+        defCommands = new HashSet<String>();
+        commandDef = false;
+    }
+    
+    /**
+     * Creates a new lexer that continues from a snapshot taken from
+     * another lexer. The tokens have the same lines as those of the
+     * original lexer.
+     * 
+     * @param in The reader to read the character stream from, positioned
+     * at the offset of the snapshot
+     * @param snapshot The snapshot to restart from
+     */
+    public LatexLexer(PushbackReader in, LatexLexerSnapshot snapshot) {
+        this(in);
+        restore(snapshot);
+    }
+    
+    /**
+     * Creates a new lexer that continues from a snapshot taken from
+     * another lexer and reads the characters directly from the given
+     * sequence.
+     * 
+     * @param input The characters following the offset of the snapshot
+     * @param snapshot The snapshot to restart from
+     */
+    public LatexLexer(CharSequence input, LatexLexerSnapshot snapshot) {
+        this(input);
+        restore(snapshot);
+    }
+    
+    /**
+     * Restores the state of the lexer from a snapshot.
+     * 
+     * @param snapshot The snapshot to restart from
+     */
+    private void restore(LatexLexerSnapshot snapshot) {
+        this.state = snapshot.getState();
+        this.defCommands.addAll(snapshot.getCommands());
+        this.lineOffset = snapshot.getLine() - 1;
+        this.charOffset = snapshot.getOffset();
+        this.lastSnapshot = snapshot;
+    }
+    
+    /**
+     * Remembers the state in which each token begins.
+     */
+    protected Token getToken() throws IOException, LexerException {
+        if (pendingState == null) {
+            pendingState = state;
+            pendingOffset = readChars;
+        }
+        Token t = super.getToken();
+        readChars += getTextLength(t);
+        return t;
+    }
+    
     /**
      * We define a filter that recognizes braced strings and verbatims
      */
     protected void filter() throws LexerException {
+        filterToken();
+        if (token != null) {
+            tokenState = pendingState;
+            tokenOffset = pendingOffset;
+            pendingState = null;
+            if (lineOffset != 0) {
+                token.setLine(token.getLine() + lineOffset);
+            }
+            tokenLine = token.getLine();
+            tokenPos = token.getPos();
+            if (snapshotInterval > 0) {
+                recordSnapshot();
+            }
+        }
+    }
+    
+    /**
+     * Records a snapshot before the current token if it starts a
+     * sectioning command or enough lines have passed since the
+     * previous snapshot.
+     */
+    private void recordSnapshot() {
+        if (tokenPos != 1) {
+            return;
+        }
+        if ((lastSnapshot == null || token.getLine() - lastSnapshot.getLine() >= snapshotInterval)
+                || token instanceof TCpart || token instanceof TCchapter || token instanceof TCsection) {
+            LatexLexerSnapshot s = snapshot();
+            if (s != null) {
+                snapshots.add(s);
+            }
+        }
+    }
+    
+    /**
+     * Does the actual filtering of the current token.
+     */
+    private void filterToken() throws LexerException {
         
         if (state.equals(State.COMCAPT)) {
 //            if (token instanceof TCword) {
@@ -80,7 +220,7 @@ public class LatexLexer extends Lexer {
             if (token instanceof TCnew) {
                 commandDef = true;
             } else if (token instanceof TCword && !commandDef 
-                    && !defCommands.contains(token.getText().substring(1))) {
+                    && !defCommands.contains(getText(token).substring(1))) {
                 state = State.NORMAL;
                 return;
             }
@@ -108,7 +248,7 @@ public class LatexLexer extends Lexer {
                     if (token instanceof TWhitespace)
                         text.append(" ");
                     else
-                        text.append(token.getText());
+                        appendText(token, text);
                     token = null;
                 } else {
                     TArgument targ = new TArgument(text.toString(),
@@ -143,7 +283,7 @@ public class LatexLexer extends Lexer {
                     if (token instanceof TWhitespace)
                         text.append(" ");
                     else
-                        text.append(token.getText());
+                        appendText(token, text);
                     token = null;
                 } else {
                     TOptargument tsl = new TOptargument(text.toString(),
@@ -160,11 +300,11 @@ public class LatexLexer extends Lexer {
             // we store some contents to be able to code fold
             if (token instanceof TBverbatim) {
                 argStart = token;
-                text = new StringBuffer(token.getText());
+                text = new StringBuffer(getText(token));
                 vline = token.getLine();
                 vpos = token.getPos();
             } else if (token instanceof TVtext || token instanceof TWhitespace) {
-                text.append(token.getText());
+                appendText(token, text);
                 token = null;
             } else if (token instanceof EOF) {
                 throw new LexerException("[" + vline + "," + vpos 
@@ -174,9 +314,9 @@ public class LatexLexer extends Lexer {
             if (token instanceof TVtext) {
                 if (argStart == null) {
                     argStart = token;
-                    startChar = token.getText().charAt(0);
+                    startChar = getText(token).charAt(0);
                 } else {
-                    if (startChar == token.getText().charAt(0)) {
+                    if (startChar == getText(token).charAt(0)) {
                         state = State.NORMAL;
                         startChar = '\0';
                         argStart = null;
@@ -190,12 +330,13 @@ public class LatexLexer extends Lexer {
         } else if (state.equals(State.NORMAL)) {
             if (token instanceof TEverbatim) {
                 String startCommand = argStart.getText().substring(argStart.getText().indexOf("{"));
-                String endCommand = token.getText().substring(token.getText().indexOf("{"));
+                String endText = getText(token);
+                String endCommand = endText.substring(endText.indexOf("{"));
                 if (!startCommand.equals(endCommand)) {
                     throw new LexerException("[" + vline + "," + vpos 
                             + "] The verbatim environment isn't closed with the correct command");                    
                 }
-                text.append(token.getText());
+                text.append(endText);
                 token = new TVtext(text.toString(), vline, vpos);
                 argStart = null;
             }
@@ -208,4 +349,60 @@ public class LatexLexer extends Lexer {
 //        System.out.println("---------------------");
         defCommands.add(command);
     }
+    
+    /**
+     * Takes a snapshot of the lexer state before the last returned token.
+     * This is possible only for tokens at the beginning of a line, when
+     * not scanning a command argument or a verbatim.
+     * 
+     * @return The snapshot or null if the lexer cannot be restarted
+     * before the last returned token
+     */
+    public LatexLexerSnapshot snapshot() {
+        if (tokenState == null || tokenPos != 1 || commandDef
+                || !(tokenState.equals(State.NORMAL) || tokenState.equals(State.COMCAPT))) {
+            return null;
+        }
+        if (lastSnapshot != null && lastSnapshot.getOffset() == charOffset + tokenOffset) {
+            return lastSnapshot;
+        }
+        Set<String> commands;
+        if (lastSnapshot != null && lastSnapshot.getCommands().size() == defCommands.size()) {
+            // commands are never removed, so the set is unchanged
+            commands = lastSnapshot.getCommands();
+        } else {
+            commands = Collections.unmodifiableSet(new HashSet<String>(defCommands));
+        }
+        lastSnapshot = new LatexLexerSnapshot(tokenLine, charOffset + tokenOffset,
+                tokenState, commands);
+        return lastSnapshot;
+    }
+    
+    /**
+     * Makes the lexer record a snapshot at the beginning of every line
+     * starting with a part, chapter or section, and at the beginning of
+     * the first line after the given number of lines from the previous
+     * snapshot.
+     * 
+     * @param lines The minimum number of lines between the recorded
+     * snapshots, 0 to disable recording
+     * @see #getSnapshots()
+     */
+    public void setSnapshotInterval(int lines) {
+        this.snapshotInterval = lines;
+        if (snapshots == null) {
+            snapshots = new ArrayList<LatexLexerSnapshot>();
+        }
+    }
+    
+    /**
+     * @return The snapshots recorded so far, ordered by offset
+     * @see #setSnapshotInterval(int)
+     */
+    public List<LatexLexerSnapshot> getSnapshots() {
+        if (snapshots == null) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(snapshots);
+    }
 }
@@ -0,0 +1,75 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2026 by the TeXlapse Team.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package net.sourceforge.texlipse.texparser;
+
+import java.util.Set;
+
+import net.sourceforge.texlipse.texparser.lexer.Lexer.State;
+
+
+/**
+ * An immutable snapshot of the state of a <code>LatexLexer</code> at the
+ * beginning of a line. A lexer restarted from a snapshot over the input
+ * following the snapshot's offset produces the same tokens as the lexer
+ * the snapshot was taken from.
+ *
+ * @see LatexLexer#LatexLexer(java.io.PushbackReader, LatexLexerSnapshot)
+ */
+public final class LatexLexerSnapshot {
+
+    private final int line;
+    private final int offset;
+    private final State state;
+    private final Set<String> commands;
+
+    /**
+     * Creates a new snapshot.
+     *
+     * @param line The line of the input (1-based)
+     * @param offset The character offset of the beginning of the line
+     * @param state The lexer state at the beginning of the line
+     * @param commands The user defined commands registered before the line,
+     * must not be modified afterwards
+     */
+    LatexLexerSnapshot(int line, int offset, State state, Set<String> commands) {
+        this.line = line;
+        this.offset = offset;
+        this.state = state;
+        this.commands = commands;
+    }
+
+    /**
+     * @return The line of the input where the snapshot was taken (1-based)
+     */
+    public int getLine() {
+        return line;
+    }
+
+    /**
+     * @return The character offset of the beginning of the line
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return The lexer state at the beginning of the line
+     */
+    State getState() {
+        return state;
+    }
+
+    /**
+     * @return The user defined commands registered before the line (unmodifiable)
+     */
+    Set<String> getCommands() {
+        return commands;
+    }
+}
@@ -12,6 +12,7 @@ package net.sourceforge.texlipse.texparser;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.regex.Pattern;
 
@@ -125,6 +126,60 @@ public class LatexParser {
             }
             size = 0;
         }
+        
+        /**
+         * @return The number of items in the stack
+         */
+        public int size() {
+            return size;
+        }
+        
+        /**
+         * @param index The index of the item counting from the bottom of the stack
+         * @return The item at the given index
+         */
+        @SuppressWarnings("unchecked")
+        public E get(int index) {
+            return (E) stack[index];
+        }
+    }
+    
+    /**
+     * The parser state at the beginning of a line starting with a
+     * sectioning command. Since the state only depends on the text
+     * preceding the line, parsing can be resumed from a checkpoint as
+     * long as the document has not changed before it.
+     * 
+     * Only lines where no environment or brace is open and no command is
+     * waiting for its arguments are recorded, so the open outline blocks
+     * are the only part of the tree that still can get new children and
+     * parsing can be resumed with the initial state of
+     * <code>parseTokens</code>.
+     */
+    private final static class ParseCheckpoint {
+        int line;
+        OutlineNode[] blocks;
+        int[] childCounts;
+        int outlineSize;
+        int labelCount;
+        int citeCount;
+        int refCount;
+        int commandCount;
+        int taskCount;
+        int inputCount;
+        int errorCount;
+        int bibCount;
+        String bibstyle;
+        String packageOptions;
+        boolean biblatexMode;
+        String biblatexBackend;
+        boolean localBib;
+        boolean index;
+        boolean fatalErrors;
+        OutlineNode documentEnv;
+        HashMap<String, Integer> sectioning;
+        int sectioningVersion;
+        LatexLexerSnapshot lexerSnapshot;
     }
 
     private List<ReferenceEntry> labels;
@@ -150,6 +205,16 @@ public class LatexParser {
     private boolean index;
     private boolean fatalErrors;
     
+    private StackUnsynch<OutlineNode> blocks;
+    private StackUnsynch<OutlineNode> envBlocks;
+    private StackUnsynch<Token> braces;
+    private HashMap<String, Integer> sectioning;
+    private int sectioningVersion;
+    private String packageOptions;
+    private OutlineNode preambleNode;
+    
+    private ArrayList<ParseCheckpoint> checkpoints;
+    
     /**
      * Initializes the internal datastructures that are exported after parsing.
      */
@@ -306,27 +371,258 @@ public class LatexParser {
             final boolean checkForMissingSections)
     throws LexerException, IOException {
         initializeDatastructs();
-        StackUnsynch<OutlineNode> blocks = new StackUnsynch<OutlineNode>();
-        StackUnsynch<OutlineNode> envBlocks = new StackUnsynch<OutlineNode>();
-        StackUnsynch<Token> braces = new StackUnsynch<Token>();
+        this.blocks = new StackUnsynch<OutlineNode>();
+        this.envBlocks = new StackUnsynch<OutlineNode>();
+        this.braces = new StackUnsynch<Token>();
+        this.sectioning = new HashMap<String, Integer>();
+        this.sectioningVersion = 0;
+        this.packageOptions = null;
+        this.checkpoints = new ArrayList<ParseCheckpoint>();
+        this.preambleNode = preamble;
+        
+        if (preamble != null) {
+            outlineTree.add(preamble);
+            blocks.push(preamble);
+        }
+        parseTokens(lexer, checkForMissingSections);
+    }
+
+    /**
+     * Returns the lexer snapshot from which parsing can be resumed after
+     * the document has been changed, i.e. the snapshot of the last
+     * checkpoint at or before the first changed line.
+     * 
+     * @param changedLine The first line of the document that has changed
+     * @return The snapshot to resume from, or null if the document must be
+     * parsed from the beginning
+     */
+    public LatexLexerSnapshot getResumeSnapshot(int changedLine) {
+        int index = findCheckpoint(changedLine);
+        return index >= 0 ? checkpoints.get(index).lexerSnapshot : null;
+    }
+
+    /**
+     * Resumes parsing a changed document. The results of the previous
+     * parse preceding the snapshot are retained, and the given lexer's
+     * tokens are used to produce the rest. The result is the same as if
+     * the whole document had been parsed again.
+     * 
+     * @param lexer The lexer restarted from <code>snapshot</code>
+     * @param snapshot The snapshot to resume from, as returned by
+     * <code>getResumeSnapshot()</code>
+     * @param checkForMissingSections 
+     * @throws LexerException If the given lexer cannot tokenize the document
+     * @throws IOException If the document is unreadable
+     */
+    public void resume(final LatexLexer lexer, final LatexLexerSnapshot snapshot,
+            final boolean checkForMissingSections)
+    throws LexerException, IOException {
+        int index = findCheckpoint(snapshot.getLine());
+        if (index < 0 || checkpoints.get(index).lexerSnapshot != snapshot) {
+            throw new IllegalArgumentException("No checkpoint at line " + snapshot.getLine());
+        }
+        restoreCheckpoint(index);
+        parseTokens(lexer, checkForMissingSections);
+    }
+
+    /**
+     * Finds the last checkpoint at or before the given line.
+     * 
+     * @param line The document line
+     * @return The index of the checkpoint or -1 if there is none
+     */
+    private int findCheckpoint(int line) {
+        if (checkpoints == null) {
+            return -1;
+        }
+        int low = 0;
+        int high = checkpoints.size() - 1;
+        int found = -1;
+        while (low <= high) {
+            int middle = (low + high) / 2;
+            if (checkpoints.get(middle).line <= line) {
+                found = middle;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Records the current parser state as a checkpoint at the given line.
+     * 
+     * @param line The line being started
+     * @param lexerSnapshot The lexer state at the beginning of the line
+     */
+    private void addCheckpoint(int line, LatexLexerSnapshot lexerSnapshot) {
+        ParseCheckpoint last = checkpoints.isEmpty() ? null
+                : checkpoints.get(checkpoints.size() - 1);
+        if (last != null && last.line >= line) {
+            return;
+        }
+        ParseCheckpoint cp = new ParseCheckpoint();
+        cp.line = line;
+        cp.blocks = new OutlineNode[blocks.size()];
+        cp.childCounts = new int[blocks.size()];
+        for (int i = 0; i < cp.blocks.length; i++) {
+            OutlineNode node = blocks.get(i);
+            cp.blocks[i] = node;
+            cp.childCounts[i] = node.getChildren() != null ? node.getChildren().size() : 0;
+        }
+        cp.outlineSize = outlineTree.size();
+        cp.labelCount = labels.size();
+        cp.citeCount = cites.size();
+        cp.refCount = refs.size();
+        cp.commandCount = commands.size();
+        cp.taskCount = tasks.size();
+        cp.inputCount = inputs.size();
+        cp.errorCount = errors.size();
+        cp.bibCount = bibs.size();
+        cp.bibstyle = bibstyle;
+        cp.packageOptions = packageOptions;
+        cp.biblatexMode = biblatexMode;
+        cp.biblatexBackend = biblatexBackend;
+        cp.localBib = localBib;
+        cp.index = index;
+        cp.fatalErrors = fatalErrors;
+        cp.documentEnv = documentEnv;
+        // the definitions rarely change, so share them when possible
+        if (last != null && last.sectioningVersion == sectioningVersion) {
+            cp.sectioning = last.sectioning;
+        } else {
+            cp.sectioning = new HashMap<String, Integer>(sectioning);
+        }
+        cp.sectioningVersion = sectioningVersion;
+        cp.lexerSnapshot = lexerSnapshot;
+        checkpoints.add(cp);
+    }
+
+    /**
+     * Restores the parser state to the given checkpoint. The outline
+     * preceding the checkpoint is copied, so that the trees handed out
+     * earlier are not modified by the continued parse.
+     * 
+     * @param index The index of the checkpoint
+     */
+    private void restoreCheckpoint(int index) {
+        ParseCheckpoint cp = checkpoints.get(index);
+
+        IdentityHashMap<OutlineNode, Integer> childLimits = new IdentityHashMap<OutlineNode, Integer>();
+        for (int i = 0; i < cp.blocks.length; i++) {
+            childLimits.put(cp.blocks[i], cp.childCounts[i]);
+        }
+        IdentityHashMap<OutlineNode, OutlineNode> copies = new IdentityHashMap<OutlineNode, OutlineNode>();
+        ArrayList<OutlineNode> newTree = new ArrayList<OutlineNode>(cp.outlineSize);
+        for (int i = 0; i < cp.outlineSize; i++) {
+            newTree.add(copyNode(outlineTree.get(i), childLimits, copies));
+        }
+        outlineTree = newTree;
+
+        labels = new ArrayList<ReferenceEntry>(labels.subList(0, cp.labelCount));
+        cites = new ArrayList<DocumentReference>(cites.subList(0, cp.citeCount));
+        refs = new ArrayList<DocumentReference>(refs.subList(0, cp.refCount));
+        commands = new ArrayList<TexCommandEntry>(commands.subList(0, cp.commandCount));
+        tasks = new ArrayList<ParseErrorMessage>(tasks.subList(0, cp.taskCount));
+        errors = new ArrayList<ParseErrorMessage>(errors.subList(0, cp.errorCount));
+        bibs = new ArrayList<String>(bibs.subList(0, cp.bibCount));
+        List<OutlineNode> newInputs = new ArrayList<OutlineNode>(cp.inputCount);
+        for (OutlineNode input : inputs.subList(0, cp.inputCount)) {
+            OutlineNode copy = copies.get(input);
+            newInputs.add(copy != null ? copy : input);
+        }
+        inputs = newInputs;
+
+        bibstyle = cp.bibstyle;
+        packageOptions = cp.packageOptions;
+        biblatexMode = cp.biblatexMode;
+        biblatexBackend = cp.biblatexBackend;
+        localBib = cp.localBib;
+        this.index = cp.index;
+        fatalErrors = cp.fatalErrors;
+        documentEnv = cp.documentEnv;
+        sectioning = new HashMap<String, Integer>(cp.sectioning);
+        sectioningVersion = cp.sectioningVersion;
+
+        blocks = new StackUnsynch<OutlineNode>();
+        envBlocks = new StackUnsynch<OutlineNode>();
+        braces = new StackUnsynch<Token>();
+        for (OutlineNode node : cp.blocks) {
+            blocks.push(copies.get(node));
+        }
+        if (preambleNode != null) {
+            preambleNode = copies.get(preambleNode);
+        }
+
+        // the checkpoints before this one now refer to the copied nodes,
+        // the rest are recorded again while parsing
+        ArrayList<ParseCheckpoint> retained = new ArrayList<ParseCheckpoint>(index);
+        for (ParseCheckpoint old : checkpoints.subList(0, index)) {
+            for (int i = 0; i < old.blocks.length; i++) {
+                old.blocks[i] = copies.get(old.blocks[i]);
+            }
+            retained.add(old);
+        }
+        checkpoints = retained;
+    }
+
+    /**
+     * Copies an outline node and its children recursively.
+     * 
+     * @param node The node to copy
+     * @param childLimits The number of children to copy for the nodes that
+     * were open at the checkpoint
+     * @param copies Map from the original nodes to their copies
+     * @return The copy of the node
+     */
+    private OutlineNode copyNode(OutlineNode node,
+            IdentityHashMap<OutlineNode, Integer> childLimits,
+            IdentityHashMap<OutlineNode, OutlineNode> copies) {
+        OutlineNode copy = node.copy(node.getIFile());
+        if (node.getParent() != null) {
+            copy.setParent(copies.get(node.getParent()));
+        }
+        copies.put(node, copy);
+        Integer limit = childLimits.get(node);
+        if (limit != null) {
+            // still open at the checkpoint
+            copy.setEndLine(0);
+        }
+        if (node.getChildren() != null) {
+            int count = limit != null ? limit.intValue() : node.getChildren().size();
+            for (int i = 0; i < count; i++) {
+                copy.addChild(copyNode(node.getChildren().get(i), childLimits, copies));
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * Parses the tokens of the given lexer into the current parser state.
+     * 
+     * @param lexer The lexer to use for extracting the document tokens
+     * @param checkForMissingSections 
+     * @throws LexerException If the given lexer cannot tokenize the document
+     * @throws IOException If the document is unreadable
+     */
+    private void parseTokens(final LatexLexer lexer,
+            final boolean checkForMissingSections)
+    throws LexerException, IOException {
+        final OutlineNode preamble = this.preambleNode;
+        final StackUnsynch<OutlineNode> blocks = this.blocks;
+        final StackUnsynch<OutlineNode> envBlocks = this.envBlocks;
+        final StackUnsynch<Token> braces = this.braces;
+        final HashMap<String, Integer> sectioning = this.sectioning;
         
         boolean expectArg = false;
         boolean expectArg2 = false;
         Token prevToken = null;
 
-        String packageOptions = null;
-        
         TexCommandEntry currentCommand = null;
         int argCount = 0;
         int nodeType;
         
-        HashMap<String, Integer> sectioning = new HashMap<String, Integer>();
-        
-        if (preamble != null) {
-            outlineTree.add(preamble);
-            blocks.push(preamble);
-        }
-        
         // newcommand would need to check for the valid format
         // duplicate labels?
         // change order of ifs to optimize performance?
@@ -565,7 +861,7 @@ public class LatexParser {
                 } else if ((t instanceof TCword) && (prevToken instanceof TCnew)) {
                     // this handles the \newcommand\comx{...} -format
                     //currentCommand = new CommandEntry(t.getText().substring(1));
-                    currentCommand = new TexCommandEntry(t.getText().substring(1), "", 0);
+                    currentCommand = new TexCommandEntry(lexer.getText(t).substring(1), "", 0);
                     currentCommand.startLine = t.getLine();
                     lexer.registerCommand(currentCommand.key);
                     expectArg2 = true;
@@ -587,7 +883,7 @@ public class LatexParser {
                     //fatalErrors = true;
                     errors.add(new ParseErrorMessage(prevToken.getLine(),
                             prevToken.getPos(),
-                            prevToken.getText().length() + accumulatedLength + t.getText().length(),
+                            prevToken.getText().length() + accumulatedLength + lexer.getTextLength(t),
                             "No argument following " + prevToken.getText(),
                             IMarker.SEVERITY_WARNING));
                     
@@ -595,7 +891,7 @@ public class LatexParser {
                     prevToken = null;
                     expectArg = false;
                 } else {
-                    accumulatedLength += t.getText().length();
+                    accumulatedLength += lexer.getTextLength(t);
                 }
             } else if (expectArg2) {
                 // we are capturing the second argument of a command with two arguments
@@ -623,27 +919,29 @@ public class LatexParser {
                     //else if (currentCommand.info.indexOf("\\label") != -1)
                     else if (LABEL_RE.matcher(currentCommand.info).find())  
                         sectioning.put("\\" + currentCommand.key, LatexParser.TYPE_LABEL);
+                    sectioningVersion++;
 
                     argCount = 0;
                     expectArg2 = false;
                 } else if (t instanceof TOptargument) {
-                    if (argCount == 0) {
+                    argCount++;
+                    if (argCount == 1) {
                         try {
                             currentCommand.arguments = Integer.parseInt(t.getText());
                         } catch (NumberFormatException nfe) {
-                            errors.add(new ParseErrorMessage(prevToken.getLine(),
+                            errors.add(new ParseErrorMessage(t.getLine(),
                                     t.getPos(),
                                     t.getText().length(),
                                     "The first optional argument of newcommand must only contain the number of arguments",
                                     IMarker.SEVERITY_ERROR));
+                            argCount = 0;
                             expectArg2 = false;
                         }
                     }
-                    argCount++;
                 } else if (!(t instanceof TWhitespace) && !(t instanceof TCommentline)
                         && !(t instanceof TTaskcomment)) {
                     // if we didn't get the mandatory argument we were expecting...
-                    errors.add(new ParseErrorMessage(t.getLine(), t.getPos(), t.getText().length(),
+                    errors.add(new ParseErrorMessage(t.getLine(), t.getPos(), lexer.getTextLength(t),
                             "No 2nd argument following newcommand",
                             IMarker.SEVERITY_WARNING));
                     argCount = 0;
@@ -658,13 +956,27 @@ public class LatexParser {
                         || t instanceof TCsection || t instanceof TCssection 
                         || t instanceof TCsssection || t instanceof TCparagraph
                         || t instanceof TCpackage || t instanceof TCnew) {
+                    // the local state of this method is not saved, so checkpoints
+                    // are only taken where no command waits for its arguments
+                    if ((t instanceof TCpart || t instanceof TCchapter
+                            || t instanceof TCsection || t instanceof TCssection)
+                            && braces.empty() && envBlocks.empty()
+                            && prevToken == null && argCount == 0 && accumulatedLength == 0) {
+                        LatexLexerSnapshot snapshot = lexer.snapshot();
+                        if (snapshot != null) {
+                            addCheckpoint(t.getLine(), snapshot);
+                        }
+                    }
+                    // the text of the command is needed after the argument
+                    lexer.getText(t);
                     prevToken = t;
                     expectArg = true;
                 } else if (t instanceof TCword) {
                     // macros (\newcommand) show up as TCword when used, so we need
                     // to check (for each word!) whether it happens to be a command
-                    if (sectioning.containsKey(t.getText())) {
-                        nodeType = sectioning.get(t.getText());
+                    String command = lexer.getText(t);
+                    if (sectioning.containsKey(command)) {
+                        nodeType = sectioning.get(command);
                         switch (nodeType) {
                         case OutlineNode.TYPE_PART:
                             prevToken = new TCpart(t.getLine(), t.getPos());
@@ -707,15 +1019,16 @@ public class LatexParser {
                     this.localBib = true;
                 } else if (t instanceof TTaskcomment) {
                     int severity = IMarker.PRIORITY_HIGH;
-                    int start = t.getText().indexOf("FIXME");
+                    String text = lexer.getText(t);
+                    int start = text.indexOf("FIXME");
                     if (start == -1) {
                         severity = IMarker.PRIORITY_NORMAL;
-                        start = t.getText().indexOf("TODO");
+                        start = text.indexOf("TODO");
                         if (start == -1) {
-                            start = t.getText().indexOf("XXX");
+                            start = text.indexOf("XXX");
                         }
                     }
-                    String taskText = t.getText().substring(start).trim();                    
+                    String taskText = text.substring(start).trim();                    
                     tasks.add(new ParseErrorMessage(t.getLine(), t.getPos(), taskText.length(), taskText, severity));
                 } else if (t instanceof TVtext) {
                     // Fold
@@ -9,8 +9,6 @@
 package net.sourceforge.texlipse.texparser;
 
 import java.io.IOException;
-import java.io.PushbackReader;
-import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -90,7 +88,9 @@ public class LatexRefExtractingParser {
      */
     public void parse(String input) throws IOException {
         this.extractPreamble(input);
-        LatexLexer lexer = new LatexLexer(new PushbackReader(new StringReader(input), 4096));
+        LatexLexer lexer = new LatexLexer(input);
+        lexer.setReuseTokens(true);
+        lexer.setLazyText(true);
         boolean expectArg = false;
         boolean expectArg2 = false;
         Token prevToken = null;
@@ -10,7 +10,7 @@ package net.sourceforge.texlipse.texparser;
 
 import java.io.IOException;
 import java.io.PushbackReader;
-import java.io.StringReader;
+import java.io.Reader;
 
 import net.sourceforge.texlipse.texparser.lexer.LexerException;
 import net.sourceforge.texlipse.texparser.node.EOF;
@@ -34,12 +34,20 @@ import net.sourceforge.texlipse.texparser.node.Token;
  * A LaTeX word counting parser. Counts the likely printed words from
  * the given string, ie. all normal words and the contents of sectioning 
  * commands are counted. Cite-references are counted as one word.
+ * <p>
+ * The words can also be counted per line, so that the words of any
+ * range of lines (e.g. a section of the outline) can be summed up.
  * 
  * @author Oskar Ojala
  */
 public class LatexWordCounter {
 
-    private String selection;
+    private String text;
+    private Reader input;
+
+    // the words on each line, index 0 is the first line
+    private int[] lineWords;
+    private int lines;
 
     /**
      * Creates new word counter with a string with words to count.
@@ -47,7 +55,17 @@ public class LatexWordCounter {
      * @param selection The string to use for counting words
      */
     public LatexWordCounter(String selection) {
-        this.selection = selection;
+        this.text = selection;
+    }
+
+    /**
+     * Creates new word counter, which reads the words to count from
+     * the given reader. The reader is read only once.
+     * 
+     * @param input The reader to use for counting words
+     */
+    public LatexWordCounter(Reader input) {
+        this.input = input;
     }
 
     /**
@@ -57,15 +75,39 @@ public class LatexWordCounter {
      * @return The number of words or -1 on an error
      */
     public int countWords() {
+        int[] words = countWordsByLine();
+        if (words == null) {
+            return -1;
+        }
+        int sum = 0;
+        for (int i = 0; i < words.length; i++) {
+            sum += words[i];
+        }
+        return sum;
+    }
+
+    /**
+     * Counts the number of (LaTeX) words on each line of the string
+     * that this object contains. The words in the argument of a sectioning
+     * command are counted on the line of the argument.
+     * 
+     * @return The number of words on each line (index 0 is the first line)
+     * or null on an error
+     */
+    public int[] countWordsByLine() {
+        lineWords = new int[64];
+        lines = 0;
         try {
-            LatexLexer lexer = new LatexLexer(new PushbackReader(new StringReader(selection), 4096));
+            LatexLexer lexer = text != null ? new LatexLexer(text)
+                    : new LatexLexer(new PushbackReader(input, 4096));
+            lexer.setReuseTokens(true);
+            lexer.setLazyText(true);
 
-            int words = 0;
             boolean expectArg = false;
             for (Token t = lexer.next(); !(t instanceof EOF); t = lexer.next()) {
                 if (expectArg) {
                     if (t instanceof TArgument) {
-                        words += t.getText().split("\\s+").length;
+                        addWords(t.getLine(), countArgumentWords(t.getText()));
                         expectArg = false;
                     } else if (!(t instanceof TOptargument) && !(t instanceof TWhitespace)
                             && !(t instanceof TStar) && !(t instanceof TCommentline)) {
@@ -74,8 +116,8 @@ public class LatexWordCounter {
                     }
                 } else {
                     if (t instanceof TWord || t instanceof TCcite) {
-                        if (!"&".equals(t.getText()))
-                            words++;
+                        if (lexer.getTextLength(t) != 1 || !"&".equals(lexer.getText(t)))
+                            addWords(t.getLine(), 1);
                     } else if (t instanceof TWhitespace) { // make the common case fast
                         continue;
                     } else if (t instanceof TCpart || t instanceof TCchapter 
@@ -84,11 +126,50 @@ public class LatexWordCounter {
                         expectArg = true;
                 }
             }
-            return words;
         } catch (IOException e) {
-            return -1;
+            return null;
         } catch (LexerException e) {
-            return -1;
+            return null;
+        }
+        int[] result = new int[lines];
+        System.arraycopy(lineWords, 0, result, 0, lines);
+        return result;
+    }
+
+    /**
+     * Adds words to the given line.
+     * 
+     * @param line The line (1 is the first line)
+     * @param words The number of words
+     */
+    private void addWords(int line, int words) {
+        int index = Math.max(line, 1) - 1;
+        if (index >= lineWords.length) {
+            int[] newWords = new int[Math.max(lineWords.length * 2, index + 1)];
+            System.arraycopy(lineWords, 0, newWords, 0, lines);
+            lineWords = newWords;
+        }
+        lineWords[index] += words;
+        lines = Math.max(lines, index + 1);
+    }
+
+    /**
+     * Counts the whitespace separated words of an argument.
+     * 
+     * @param text The argument
+     * @return The number of words, at least 1
+     */
+    private static int countArgumentWords(String text) {
+        int words = 0;
+        boolean inWord = false;
+        for (int i = 0; i < text.length(); i++) {
+            if (Character.isWhitespace(text.charAt(i))) {
+                inWord = false;
+            } else if (!inWord) {
+                inWord = true;
+                words++;
+            }
         }
+        return Math.max(words, 1);
     }
 }
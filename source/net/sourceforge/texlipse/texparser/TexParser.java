@@ -9,8 +9,6 @@
 package net.sourceforge.texlipse.texparser;
 
 import java.io.IOException;
-import java.io.PushbackReader;
-import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -22,6 +20,7 @@ import net.sourceforge.texlipse.model.TexCommandEntry;
 import net.sourceforge.texlipse.texparser.lexer.LexerException;
 
 import org.eclipse.core.resources.IMarker;
+import org.eclipse.jface.text.BadLocationException;
 import org.eclipse.jface.text.IDocument;
 import org.eclipse.jface.text.IRegion;
 
@@ -42,8 +41,13 @@ public class TexParser {
     
     private List<ParseErrorMessage> errors;
     private boolean fatalErrors;
+    // the labels of the last parse with their label info, created when first needed
+    private List<ReferenceEntry> labels;
     
     private String preamble;
+    
+    private boolean parsed;
+    private boolean checkedForMissingSections;
 
     /**
      * @param input The string representing the document to parse
@@ -132,6 +136,62 @@ public class TexParser {
         parseDocument(inputDoc.get(), checkForMissingSections);
     }
     
+    /**
+     * Parses the input, reusing the results of the previous parse for
+     * the part of the document preceding <code>changedOffset</code>.
+     * Parsing is resumed from the last sectioning command before the
+     * change, so only the rest of the document is lexed again. Falls
+     * back to parsing the whole document if this is not possible.
+     * 
+     * @param changedOffset The lowest document offset changed since the
+     * previous parse
+     * @param checkForMissingSections
+     * @throws IOException
+     */
+    public void parseDocument(int changedOffset, boolean checkForMissingSections) throws IOException {
+        this.labels = null;
+        if (!parsed || changedOffset <= 0 
+                || checkForMissingSections != checkedForMissingSections
+                || (preamble != null && changedOffset < preamble.length())) {
+            parseDocument(inputDoc.get(), checkForMissingSections);
+            return;
+        }
+        
+        String input;
+        LatexLexerSnapshot snapshot;
+        try {
+            int changedLine = inputDoc.getLineOfOffset(
+                    Math.min(changedOffset, inputDoc.getLength())) + 1;
+            snapshot = lparser.getResumeSnapshot(changedLine);
+            if (snapshot == null || snapshot.getOffset() > inputDoc.getLength()) {
+                parseDocument(inputDoc.get(), checkForMissingSections);
+                return;
+            }
+            input = inputDoc.get(snapshot.getOffset(), inputDoc.getLength() - snapshot.getOffset());
+        } catch (BadLocationException e) {
+            parseDocument(inputDoc.get(), checkForMissingSections);
+            return;
+        }
+        
+        input = this.rmTrailingWhitespace(input);
+        // a document environment appearing after the change would start a preamble
+        if (preamble == null && extractLaTeXPreamble(input) != null) {
+            parseDocument(inputDoc.get(), checkForMissingSections);
+            return;
+        }
+        
+        try {
+            LatexLexer lexer = new LatexLexer(input, snapshot);
+            lexer.setReuseTokens(true);
+            lexer.setLazyText(true);
+            lparser.resume(lexer, snapshot, checkForMissingSections);
+            this.errors = lparser.getErrors();
+            this.fatalErrors = lparser.isFatalErrors();
+        } catch (LexerException e) {
+            handleLexerException(e, snapshot.getLine() - 1);
+        }
+    }
+    
     /**
      * Parses the document
      * 
@@ -143,11 +203,16 @@ public class TexParser {
         // and IDocument's line counting for trailing whitespace)
         input = this.rmTrailingWhitespace(input);
         
+        this.labels = null;
         this.extractPreamble(input);
+        this.parsed = true;
+        this.checkedForMissingSections = checkForMissingSections;
         
         try {
             // start the parse
-            LatexLexer lexer = new LatexLexer(new PushbackReader(new StringReader(input), 4096));
+            LatexLexer lexer = new LatexLexer(input);
+            lexer.setReuseTokens(true);
+            lexer.setLazyText(true);
             //LatexLexer lexer = this.getLexer(input); 
             if (this.preamble != null) {
                 OutlineNode on = new OutlineNode("Preamble",
@@ -160,22 +225,32 @@ public class TexParser {
             this.errors = lparser.getErrors();
             this.fatalErrors = lparser.isFatalErrors();
         } catch (LexerException e) {
-            // we must parse the lexer exception into a suitable format
-            String msg = e.getMessage();
-            int first = msg.indexOf('[');
-            int last = msg.indexOf(']');
-            String numseq = msg.substring(first + 1, last);
-            String[] numbers = numseq.split(",");
-            this.errors = new ArrayList<ParseErrorMessage>(1);
-            this.errors.add(new ParseErrorMessage(Integer.parseInt(numbers[0]),
-                    Integer.parseInt(numbers[1]),
-                    2,
-                    msg.substring(last+2),
-                    IMarker.SEVERITY_ERROR));
-            this.fatalErrors = true;
+            handleLexerException(e, 0);
         }
     }
 
+    /**
+     * Converts a lexer exception into a fatal parse error.
+     * 
+     * @param e The exception thrown by the lexer
+     * @param lineOffset The number of document lines preceding the lexer input
+     */
+    private void handleLexerException(LexerException e, int lineOffset) {
+        // we must parse the lexer exception into a suitable format
+        String msg = e.getMessage();
+        int first = msg.indexOf('[');
+        int last = msg.indexOf(']');
+        String numseq = msg.substring(first + 1, last);
+        String[] numbers = numseq.split(",");
+        this.errors = new ArrayList<ParseErrorMessage>(1);
+        this.errors.add(new ParseErrorMessage(Integer.parseInt(numbers[0]) + lineOffset,
+                Integer.parseInt(numbers[1]),
+                2,
+                msg.substring(last+2),
+                IMarker.SEVERITY_ERROR));
+        this.fatalErrors = true;
+    }
+
     /**
      * @return The outline tree
      */
@@ -184,13 +259,19 @@ public class TexParser {
     }
 
     /**
+     * Returns the labels of the last parse. The label info is set only
+     * once per parse, so every call returns the same list.
+     * 
      * @return The labels <code>ArrayList<ReferenceEntry></code>
      */
     public List<ReferenceEntry> getLabels() {
-    	List<ReferenceEntry> labels = lparser.getLabels();
-    	for (ReferenceEntry label : labels) {
-    		label.setLabelInfo(inputDoc.get());
-    	}
+        if (labels == null) {
+            // copied, since the reference containers may reorder the list
+            labels = new ArrayList<ReferenceEntry>(lparser.getLabels());
+            for (ReferenceEntry label : labels) {
+                label.setLabelInfo(inputDoc);
+            }
+        }
         return labels;
     }
     
@@ -278,7 +359,7 @@ public class TexParser {
      * @return Get user-defined commands
      */
     public ArrayList<TexCommandEntry> getCommands() {
-        return lparser.getCommands();
+        return new ArrayList<TexCommandEntry>(lparser.getCommands());
     }
     
     /**
@@ -0,0 +1,445 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2026 by the TeXlapse Team.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package net.sourceforge.texlipse.texparser.lexer;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.PushbackReader;
+
+import net.sourceforge.texlipse.texparser.node.EOF;
+import net.sourceforge.texlipse.texparser.node.Token;
+
+/**
+ * A lexer that scans the characters directly from a
+ * <code>CharSequence</code>. It recognizes the same tokens as the
+ * generated lexer, using the tables of the generated lexer, but the
+ * transitions for ASCII characters are looked up from a dense table
+ * instead of searching the character ranges of the state, and the text
+ * of a token is taken as a single slice of the input instead of being
+ * collected and pushed back one character at a time.
+ * <p>
+ * With lazy text, the string of a token is not created when the token
+ * is scanned: <code>getText()</code> of the token returns
+ * <code>null</code> until the text is requested with
+ * {@link #getText(Token)}, which is possible until the next token is
+ * scanned. The text of the tokens that the filter drops or that the
+ * consumer skips is never created.
+ * <p>
+ * This class is not generated by SableCC. It is in the package of the
+ * generated lexer, since the factory methods of the tokens are package
+ * private. The token types and the state transitions below must be
+ * updated if the grammar is changed.
+ */
+public class CharSequenceLexer extends Lexer {
+
+    /**
+     * Number of characters in the dense tables
+     */
+    private static final int ASCII = 128;
+
+    private static final State[] STATES = {
+        State.NORMAL, State.COMCAPT, State.BLOCKCAPT,
+        State.OPTCAPT, State.VERBATIM, State.VERB
+    };
+
+    /**
+     * For each token, the id of the state following the token in each
+     * state, as in the generated lexer
+     */
+    private static final int[][] TRANSITIONS = {
+        {0, 1, 2, 3, 4, 5}, // 0 whitespace
+        {1, 1, 2, 3, 4, 5}, // 1 cpart
+        {1, 1, 2, 3, 4, 5}, // 2 cchapter
+        {1, 1, 2, 3, 4, 5}, // 3 csection
+        {1, 1, 2, 3, 4, 5}, // 4 cssection
+        {1, 1, 2, 3, 4, 5}, // 5 csssection
+        {1, 1, 2, 3, 4, 5}, // 6 cparagraph
+        {1, 1, 2, 3, 4, 5}, // 7 cbib
+        {1, 1, 2, 3, 4, 5}, // 8 cbibstyle
+        {1, 1, 2, 3, 4, 5}, // 9 clabel
+        {1, 1, 2, 3, 4, 5}, // 10 cref
+        {1, 1, 2, 3, 4, 5}, // 11 ccite
+        {1, 1, 2, 3, 4, 5}, // 12 cbegin
+        {1, 1, 2, 3, 4, 5}, // 13 cend
+        {1, 1, 2, 3, 4, 5}, // 14 cinput
+        {1, 1, 2, 3, 4, 5}, // 15 cinclude
+        {1, 1, 2, 3, 4, 5}, // 16 cnew
+        {1, 1, 2, 3, 4, 5}, // 17 crenew
+        {1, 1, 2, 3, 4, 5}, // 18 cpackage
+        {0, 1, 2, 3, 4, 5}, // 19 cpindex
+        {0, 1, 2, 3, 4, 5}, // 20 cpbib
+        {4, 4, 2, 3, 4, 5}, // 21 bverbatim
+        {0, 1, 2, 3, 0, 5}, // 22 everbatim
+        {0, 1, 2, 3, 4, 5}, // 23 vtext
+        {5, 5, 2, 3, 4, 5}, // 24 cverb
+        {0, 1, 2, 3, 4, 5}, // 25 argument
+        {0, 1, 2, 3, 4, 5}, // 26 optargument
+        {0, 1, 2, 3, 4, 5}, // 27 star
+        {0, 2, 2, 3, 4, 5}, // 28 l_brace
+        {0, 0, 2, 3, 4, 5}, // 29 r_brace
+        {0, 3, 2, 3, 4, 5}, // 30 l_bracket
+        {0, 0, 2, 3, 4, 5}, // 31 r_bracket
+        {1, 1, 2, 3, 4, 5}, // 32 cword
+        {0, 0, 2, 3, 4, 5}, // 33 csymbol
+        {0, 0, 2, 3, 4, 5}, // 34 cspace
+        {0, 0, 2, 3, 4, 5}, // 35 word
+        {0, 1, 2, 3, 4, 5}, // 36 skipped_area
+        {0, 1, 2, 3, 4, 5}, // 37 taskcomment
+        {0, 1, 2, 3, 4, 5}  // 38 commentline
+    };
+
+    /**
+     * The tables of the generated lexer
+     */
+    private static int[][][][] gotoTable;
+    private static int[][] accept;
+
+    /**
+     * For each state of the lexer, the DFA state following each DFA state
+     * and ASCII character, at index <code>dfaState * ASCII + c</code>
+     */
+    private static short[][] asciiTable;
+
+    private final CharSequence input;
+    private final int length;
+    private int index;
+    private int line;
+    private int pos;
+    private boolean cr;
+
+    private boolean lazyText;
+
+    /**
+     * The last scanned token, whose text is the input between the start
+     * and the end unless the token has a text
+     */
+    private Token lazyToken;
+    private int lazyStart;
+    private int lazyEnd;
+
+    /**
+     * Creates a new lexer that reads the characters from a reader with
+     * the generated scanning loop.
+     *
+     * @param in The reader to read the character stream from
+     */
+    public CharSequenceLexer(PushbackReader in) {
+        super(in);
+        this.input = null;
+        this.length = 0;
+    }
+
+    /**
+     * Creates a new lexer.
+     *
+     * @param input The characters to tokenize
+     */
+    public CharSequenceLexer(CharSequence input) {
+        super(null);
+        this.input = input;
+        this.length = input.length();
+    }
+
+    /**
+     * Makes the lexer leave the text of the tokens to be created by
+     * {@link #getText(Token)}. This has no effect when reading the
+     * characters from a reader.
+     *
+     * @param lazy Whether to create the texts lazily
+     */
+    public void setLazyText(boolean lazy) {
+        this.lazyText = lazy;
+    }
+
+    /**
+     * Returns the text of a token, creating it if the lexer left it to be
+     * created lazily.
+     *
+     * @param token The last scanned token, or a token that has a text
+     * @return The text of the token
+     * @throws IllegalStateException If the token has no text, and it is
+     * not the last scanned token
+     */
+    public String getText(Token token) {
+        String text = token.getText();
+        if (text == null) {
+            if (token != lazyToken) {
+                throw new IllegalStateException("The text of the token is no longer available");
+            }
+            text = input.subSequence(lazyStart, lazyEnd).toString();
+            token.setText(text);
+        }
+        return text;
+    }
+
+    /**
+     * Returns the length of the text of a token without creating the text.
+     *
+     * @param token The last scanned token, or a token that has a text
+     * @return The length of the text of the token
+     * @see #getText(Token)
+     */
+    public int getTextLength(Token token) {
+        if (token == lazyToken && token.getText() == null) {
+            return lazyEnd - lazyStart;
+        }
+        return getText(token).length();
+    }
+
+    /**
+     * Appends the text of a token to a buffer without creating the text.
+     *
+     * @param token The last scanned token, or a token that has a text
+     * @param buffer The buffer to append to
+     * @see #getText(Token)
+     */
+    public void appendText(Token token, StringBuffer buffer) {
+        if (token == lazyToken && token.getText() == null) {
+            buffer.append(input, lazyStart, lazyEnd);
+        } else {
+            buffer.append(getText(token));
+        }
+    }
+
+    protected Token getToken() throws IOException, LexerException {
+        if (input == null) {
+            return super.getToken();
+        }
+        int id = state.id();
+        int[][][] ranges = gotoTable[id];
+        short[] ascii = asciiTable[id];
+        int[] accepts = accept[id];
+
+        int start = index;
+        int startLine = line;
+        int startPos = pos;
+
+        int acceptToken = -1;
+        int acceptEnd = -1;
+        int acceptLine = -1;
+        int acceptPos = -1;
+
+        int i = index;
+        int dfaState = 0;
+        while (true) {
+            if (i < length) {
+                char c = input.charAt(i++);
+                switch (c) {
+                case '\n':
+                    if (cr) {
+                        cr = false;
+                    } else {
+                        line++;
+                        pos = 0;
+                    }
+                    break;
+                case '\r':
+                    line++;
+                    pos = 0;
+                    cr = true;
+                    break;
+                default:
+                    pos++;
+                    cr = false;
+                    break;
+                }
+                if (c < ASCII) {
+                    dfaState = ascii[dfaState * ASCII + c];
+                } else {
+                    dfaState = nextState(ranges, dfaState, c);
+                }
+            } else {
+                dfaState = -1;
+            }
+
+            if (dfaState >= 0) {
+                if (accepts[dfaState] != -1) {
+                    acceptToken = accepts[dfaState];
+                    acceptEnd = i;
+                    acceptLine = line;
+                    acceptPos = pos;
+                }
+            } else if (acceptToken != -1) {
+                // like the generated lexer, which does not restore cr
+                // when it pushes back the characters after the token
+                index = acceptEnd;
+                line = acceptLine;
+                pos = acceptPos;
+                lazyStart = start;
+                lazyEnd = acceptEnd;
+                Token token = newToken(acceptToken, startLine + 1, startPos + 1);
+                lazyToken = token;
+                state = STATES[TRANSITIONS[acceptToken][id]];
+                return token;
+            } else if (i > start) {
+                throw new LexerException("[" + (startLine + 1) + "," + (startPos + 1) + "]"
+                        + " Unknown token: " + input.subSequence(start, i));
+            } else {
+                return new EOF(startLine + 1, startPos + 1);
+            }
+        }
+    }
+
+    protected void unread(Token token) throws IOException {
+        if (input == null) {
+            super.unread(token);
+            return;
+        }
+        String text = getText(token);
+        if (text.length() > index || !text.contentEquals(
+                input.subSequence(index - text.length(), index))) {
+            throw new IOException("Only the text of the last tokens can be unread");
+        }
+        index -= text.length();
+        pos = token.getPos() - 1;
+        line = token.getLine() - 1;
+    }
+
+    /**
+     * Creates a token with the factory method of the generated lexer.
+     *
+     * @param type The index of the token
+     * @param line The line of the token
+     * @param pos The position of the token
+     * @return The token
+     */
+    private Token newToken(int type, int line, int pos) {
+        switch (type) {
+        case 0: return new0(tokenText(), line, pos);
+        case 1: return new1(line, pos);
+        case 2: return new2(line, pos);
+        case 3: return new3(line, pos);
+        case 4: return new4(line, pos);
+        case 5: return new5(line, pos);
+        case 6: return new6(line, pos);
+        case 7: return new7(tokenText(), line, pos);
+        case 8: return new8(line, pos);
+        case 9: return new9(line, pos);
+        case 10: return new10(tokenText(), line, pos);
+        case 11: return new11(tokenText(), line, pos);
+        case 12: return new12(line, pos);
+        case 13: return new13(line, pos);
+        case 14: return new14(line, pos);
+        case 15: return new15(line, pos);
+        case 16: return new16(tokenText(), line, pos);
+        case 17: return new17(line, pos);
+        case 18: return new18(line, pos);
+        case 19: return new19(line, pos);
+        case 20: return new20(tokenText(), line, pos);
+        case 21: return new21(tokenText(), line, pos);
+        case 22: return new22(tokenText(), line, pos);
+        case 23: return new23(tokenText(), line, pos);
+        case 24: return new24(tokenText(), line, pos);
+        case 25: return new25(tokenText(), line, pos);
+        case 26: return new26(tokenText(), line, pos);
+        case 27: return new27(line, pos);
+        case 28: return new28(line, pos);
+        case 29: return new29(line, pos);
+        case 30: return new30(line, pos);
+        case 31: return new31(line, pos);
+        case 32: return new32(tokenText(), line, pos);
+        case 33: return new33(tokenText(), line, pos);
+        case 34: return new34(tokenText(), line, pos);
+        case 35: return new35(tokenText(), line, pos);
+        case 36: return new36(tokenText(), line, pos);
+        case 37: return new37(tokenText(), line, pos);
+        case 38: return new38(tokenText(), line, pos);
+        default: throw new IllegalStateException("Unknown token type " + type);
+        }
+    }
+
+    /**
+     * @return The text of the token being created, or <code>null</code>
+     * if it is created lazily
+     */
+    private String tokenText() {
+        if (lazyText) {
+            return null;
+        }
+        return input.subSequence(lazyStart, lazyEnd).toString();
+    }
+
+    /**
+     * Looks up a transition from the character ranges of a DFA state,
+     * following the transitions that continue from another state.
+     *
+     * @param ranges The character ranges of the DFA states
+     * @param dfaState The DFA state
+     * @param c The character
+     * @return The next DFA state, or -1 if there is none
+     */
+    private static int nextState(int[][][] ranges, int dfaState, int c) {
+        do {
+            int oldState = dfaState < -1 ? -2 - dfaState : dfaState;
+            dfaState = -1;
+            int[][] range = ranges[oldState];
+            int low = 0;
+            int high = range.length - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                int[] r = range[middle];
+                if (c < r[0]) {
+                    high = middle - 1;
+                } else if (c > r[1]) {
+                    low = middle + 1;
+                } else {
+                    dfaState = r[2];
+                    break;
+                }
+            }
+        } while (dfaState < -1);
+        return dfaState;
+    }
+
+    static {
+        try {
+            DataInputStream s = new DataInputStream(
+                    new BufferedInputStream(
+                    Lexer.class.getResourceAsStream("lexer.dat")));
+            try {
+                gotoTable = new int[s.readInt()][][][];
+                for (int i = 0; i < gotoTable.length; i++) {
+                    gotoTable[i] = new int[s.readInt()][][];
+                    for (int j = 0; j < gotoTable[i].length; j++) {
+                        gotoTable[i][j] = new int[s.readInt()][3];
+                        for (int k = 0; k < gotoTable[i][j].length; k++) {
+                            for (int l = 0; l < 3; l++) {
+                                gotoTable[i][j][k][l] = s.readInt();
+                            }
+                        }
+                    }
+                }
+                accept = new int[s.readInt()][];
+                for (int i = 0; i < accept.length; i++) {
+                    accept[i] = new int[s.readInt()];
+                    for (int j = 0; j < accept[i].length; j++) {
+                        accept[i][j] = s.readInt();
+                    }
+                }
+            } finally {
+                s.close();
+            }
+        } catch (Exception e) {
+            throw new RuntimeException("The file \"lexer.dat\" is either missing or corrupted.");
+        }
+
+        asciiTable = new short[gotoTable.length][];
+        for (int i = 0; i < gotoTable.length; i++) {
+            int states = gotoTable[i].length;
+            asciiTable[i] = new short[states * ASCII];
+            for (int j = 0; j < states; j++) {
+                for (int c = 0; c < ASCII; c++) {
+                    asciiTable[i][j * ASCII + c] = (short) nextState(gotoTable[i], j, c);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2026 by the TeXlapse Team.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package net.sourceforge.texlipse.texparser.lexer;
+
+import java.io.PushbackReader;
+
+import net.sourceforge.texlipse.texparser.node.TWhitespace;
+import net.sourceforge.texlipse.texparser.node.TWord;
+import net.sourceforge.texlipse.texparser.node.Token;
+
+/**
+ * A lexer that can return the same whitespace and word token object
+ * every time, with a new text and position. These are the most common
+ * tokens and most parsers skip them or only look at their text.
+ * <p>
+ * This class is not generated by SableCC. It is in the package of the
+ * generated lexer, since the factory methods of the tokens are package
+ * private. Which factory method creates which token depends on the
+ * grammar, so a token is only reused if the first token created by its
+ * factory method has the expected type.
+ */
+public class TokenReusingLexer extends CharSequenceLexer {
+
+    private boolean reuseTokens;
+    private Token whitespace;
+    private Token word;
+
+    /**
+     * Creates a new lexer.
+     *
+     * @param in The reader to read the character stream from
+     */
+    public TokenReusingLexer(PushbackReader in) {
+        super(in);
+    }
+
+    /**
+     * Creates a new lexer.
+     *
+     * @param input The characters to tokenize
+     */
+    public TokenReusingLexer(CharSequence input) {
+        super(input);
+    }
+
+    /**
+     * Makes the lexer return the same whitespace and word token object
+     * every time, with a new text and position. This is only possible
+     * if these tokens are not kept after the next token is read.
+     *
+     * @param reuse Whether to reuse the tokens
+     */
+    public void setReuseTokens(boolean reuse) {
+        this.reuseTokens = reuse;
+    }
+
+    Token new0(String text, int line, int pos) {
+        if (reuseTokens && whitespace != null) {
+            return update(whitespace, text, line, pos);
+        }
+        Token token = super.new0(text, line, pos);
+        if (reuseTokens && token instanceof TWhitespace) {
+            whitespace = token;
+        }
+        return token;
+    }
+
+    Token new35(String text, int line, int pos) {
+        if (reuseTokens && word != null) {
+            return update(word, text, line, pos);
+        }
+        Token token = super.new35(text, line, pos);
+        if (reuseTokens && token instanceof TWord) {
+            word = token;
+        }
+        return token;
+    }
+
+    private static Token update(Token token, String text, int line, int pos) {
+        token.setText(text);
+        token.setLine(line);
+        token.setPos(pos);
+        return token;
+    }
+}
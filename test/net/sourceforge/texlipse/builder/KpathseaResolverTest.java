@@ -0,0 +1,148 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2026 by the TeXlapse Team.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package net.sourceforge.texlipse.builder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the lookups of the <code>KpathseaResolver</code> in a texmf tree
+ * with an ls-R database and in a tree without one.
+ */
+public class KpathseaResolverTest {
+
+    private File root;
+    private File work;
+    private String dist;
+    private String local;
+    private KpathseaResolver resolver;
+
+    @Before
+    public void setUp() throws IOException {
+        root = File.createTempFile("texmf", "");
+        root.delete();
+        root.mkdir();
+        dist = path(new File(root, "dist"));
+        local = path(new File(root, "local"));
+
+        write("web2c/texmf.cnf",
+                "% test configuration\n"
+                + "TEXMFDIST = " + dist + "\n"
+                + "TEXMFLOCAL = " + local + "\n"
+                + "TEXMFDBS = !!$TEXMFDIST\n"
+                + "TEXINPUTS = .;$TEXMFLOCAL/tex//;!!$TEXMFDIST/tex//latex\n"
+                + "BIBINPUTS = .;$TEXMFLOCAL//bib\n");
+
+        // the files of dist are only looked up from its database
+        write("dist/ls-R",
+                "% ls-R -- filename database for kpathsea; do not change this line.\n"
+                + "./:\nls-R\ntex\n\n"
+                + "./tex:\nlatex\ngeneric\n\n"
+                + "./tex/latex:\nbase\ndirect.sty\n\n"
+                + "./tex/latex/base:\narticle.cls\n\n"
+                + "./tex/generic:\nlatex\n\n"
+                + "./tex/generic/latex:\nnested.sty\n");
+        write("dist/tex/latex/direct.sty", "");
+        write("dist/tex/latex/base/article.cls", "");
+        write("dist/tex/generic/latex/nested.sty", "");
+        write("dist/tex/latex/unlisted.sty", "");
+
+        write("local/tex/latex/mine/mine.sty", "");
+        write("local/bibtex/bib/refs.bib", "");
+        write("local/bibtex/other/other.bib", "");
+        write("work/own.bib", "");
+        work = new File(root, "work");
+
+        Map<String, String> environment = new HashMap<String, String>();
+        environment.put("TEXMFCNF", path(new File(root, "web2c")));
+        resolver = new KpathseaResolver(null, environment);
+    }
+
+    @After
+    public void tearDown() {
+        delete(root);
+    }
+
+    @Test
+    public void testDatabase() {
+        assertEquals(dist + "/tex/latex/direct.sty", resolver.findFile(work, "direct.sty", "latex"));
+        assertEquals(dist + "/tex/generic/latex/nested.sty",
+                resolver.findFile(work, "nested.sty", "latex"));
+        // the element does not include the subdirectories of latex
+        assertNull(resolver.findFile(work, "article.cls", "latex"));
+        assertEquals(dist + "/tex/latex/base/article.cls",
+                resolver.findFile(work, "base/article.cls", "latex"));
+    }
+
+    @Test
+    public void testDatabaseOnly() {
+        assertNull(resolver.findFile(work, "unlisted.sty", "latex"));
+    }
+
+    @Test
+    public void testSubdirectories() {
+        assertEquals(local + "/tex/latex/mine/mine.sty", resolver.findFile(work, "mine.sty", "latex"));
+        // a directory is not a match
+        assertNull(resolver.findFile(work, "mine", "latex"));
+        assertEquals(local + "/bibtex/bib/refs.bib", resolver.findFile(work, "refs.bib", "bibtex"));
+        assertNull(resolver.findFile(work, "other.bib", "bibtex"));
+    }
+
+    @Test
+    public void testWorkingDirectory() {
+        assertEquals("./own.bib", resolver.findFile(work, "own.bib", "bibtex"));
+        assertNull(resolver.findFile(null, "own.bib", "bibtex"));
+    }
+
+    @Test
+    public void testSearchPath() {
+        String[] path = resolver.getSearchPath("bib", "bibtex");
+        assertEquals(2, path.length);
+        assertEquals(".", path[0]);
+        assertEquals(local + "//bib", path[1]);
+    }
+
+    private void write(String name, String contents) throws IOException {
+        File file = new File(root, name);
+        file.getParentFile().mkdirs();
+        Writer out = new OutputStreamWriter(new FileOutputStream(file), "ISO-8859-1");
+        try {
+            out.write(contents);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static String path(File file) {
+        return file.getAbsolutePath().replace(File.separatorChar, '/');
+    }
+
+    private static void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (int i = 0; i < files.length; i++) {
+                delete(files[i]);
+            }
+        }
+        file.delete();
+    }
+}
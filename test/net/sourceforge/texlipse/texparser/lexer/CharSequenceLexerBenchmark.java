@@ -0,0 +1,95 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2026 by the TeXlapse Team.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package net.sourceforge.texlipse.texparser.lexer;
+
+import java.io.IOException;
+import java.io.PushbackReader;
+import java.io.StringReader;
+
+import net.sourceforge.texlipse.texparser.node.EOF;
+
+/**
+ * Compares the time the generated lexer and the
+ * <code>CharSequenceLexer</code> take to tokenize a generated document.
+ * Run as a Java application; the optional argument is the number of
+ * sections in the document.
+ */
+public class CharSequenceLexerBenchmark {
+
+    private static final int ROUNDS = 10;
+
+    /**
+     * Creates a document containing all kinds of tokens.
+     *
+     * @param sections The number of sections
+     * @return The document
+     */
+    static String createDocument(int sections) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("\\documentclass[a4paper,12pt]{article}\n");
+        sb.append("\\usepackage[utf8]{inputenc}\n");
+        sb.append("\\newcommand{\\note}[1]{\\textbf{#1}}\n");
+        sb.append("\\begin{document}\n\n");
+        for (int i = 0; i < sections; i++) {
+            sb.append("\\section{Section ").append(i).append("}\\label{sec:").append(i).append("}\n");
+            sb.append("% TODO check the numbers of section ").append(i).append('\n');
+            for (int j = 0; j < 5; j++) {
+                sb.append("Lorem ipsum dolor sit amet, consectetur adipiscing elit,\t sed do\n");
+                sb.append("eiusmod tempor incididunt ut labore et dolore magna aliqua~\\cite{key").append(j);
+                sb.append("}. Ut enim ad minim veniam, see Section~\\ref{sec:").append(i).append("}.\r\n");
+                sb.append("Na\u00efve caf\u00e9 r\u00e9sum\u00e9 \\note{quis nostrud} $x^2 + y_{").append(j);
+                sb.append("} = \\frac{1}{2}$ \\\\ \\emph[x]{exercitation} \\verb|\\ullamco| laboris.\n\n");
+            }
+            sb.append("\\begin{verbatim}\nint main() { return 0; }\n\\end{verbatim}\n");
+            sb.append("\\subsection*{Details}\n\\begin{itemize}\n\\item One\n\\item Two\n\\end{itemize}\n\n");
+        }
+        sb.append("\\end{document}\n");
+        return sb.toString();
+    }
+
+    private static int scan(Lexer lexer) throws LexerException, IOException {
+        int tokens = 0;
+        while (!(lexer.next() instanceof EOF)) {
+            tokens++;
+        }
+        return tokens;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int sections = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        String document = createDocument(sections);
+        System.out.println(document.length() + " characters");
+
+        long generated = Long.MAX_VALUE;
+        long dense = Long.MAX_VALUE;
+        long lazy = Long.MAX_VALUE;
+        for (int i = 0; i < ROUNDS; i++) {
+            long start = System.nanoTime();
+            int tokens = scan(new Lexer(new PushbackReader(new StringReader(document), 4096)));
+            long middle = System.nanoTime();
+            int tokens2 = scan(new CharSequenceLexer(document));
+            long end = System.nanoTime();
+            CharSequenceLexer lexer = new CharSequenceLexer(document);
+            lexer.setLazyText(true);
+            int tokens3 = scan(lexer);
+            long lazyEnd = System.nanoTime();
+            if (tokens != tokens2 || tokens != tokens3) {
+                throw new IllegalStateException(tokens + ", " + tokens2 + " and " + tokens3 + " tokens");
+            }
+            generated = Math.min(generated, middle - start);
+            dense = Math.min(dense, end - middle);
+            lazy = Math.min(lazy, lazyEnd - end);
+        }
+        System.out.println("generated lexer:     " + generated / 1000000 + " ms");
+        System.out.println("CharSequenceLexer:   " + dense / 1000000 + " ms");
+        System.out.println("with lazy text:      " + lazy / 1000000 + " ms");
+        System.out.println("speed-up:            " + (double) generated / dense);
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2026 by the TeXlapse Team.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package net.sourceforge.texlipse.texparser.lexer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.PushbackReader;
+import java.io.StringReader;
+
+import net.sourceforge.texlipse.texparser.node.EOF;
+import net.sourceforge.texlipse.texparser.node.Token;
+
+import org.junit.Test;
+
+/**
+ * Checks that the <code>CharSequenceLexer</code> returns the same tokens
+ * as the generated lexer.
+ */
+public class CharSequenceLexerTest {
+
+    private static void assertSameTokens(String input) throws IOException {
+        assertSameTokens(input, false);
+        assertSameTokens(input, true);
+    }
+
+    private static void assertSameTokens(String input, boolean lazyText) throws IOException {
+        Lexer expected = new Lexer(new PushbackReader(new StringReader(input), 4096));
+        CharSequenceLexer actual = new CharSequenceLexer(input);
+        actual.setLazyText(lazyText);
+        while (true) {
+            Token e;
+            try {
+                e = expected.next();
+            } catch (LexerException ex) {
+                try {
+                    actual.next();
+                    fail("Expected " + ex.getMessage());
+                } catch (LexerException ex2) {
+                    assertEquals(ex.getMessage(), ex2.getMessage());
+                }
+                return;
+            }
+            Token a;
+            try {
+                a = actual.next();
+            } catch (LexerException ex) {
+                fail("Unexpected " + ex.getMessage());
+                return;
+            }
+            String where = e.getClass().getName() + " at " + e.getLine() + "," + e.getPos();
+            assertEquals(where, e.getClass(), a.getClass());
+            assertEquals(where, e.getText().length(), actual.getTextLength(a));
+            assertEquals(where, e.getText(), actual.getText(a));
+            assertEquals(where, e.getLine(), a.getLine());
+            assertEquals(where, e.getPos(), a.getPos());
+            if (e instanceof EOF) {
+                return;
+            }
+        }
+    }
+
+    @Test
+    public void testDocument() throws IOException {
+        assertSameTokens(CharSequenceLexerBenchmark.createDocument(20));
+    }
+
+    @Test
+    public void testLineDelimiters() throws IOException {
+        String document = CharSequenceLexerBenchmark.createDocument(5);
+        assertSameTokens(document.replace("\n", "\r\n"));
+        assertSameTokens(document.replace("\n", "\r"));
+        assertSameTokens("a\r\n\r\rb\n\r\\section{x}\r");
+    }
+
+    @Test
+    public void testStates() throws IOException {
+        assertSameTokens("\\verb+a{b+ c \\verb*|x| \\begin{verbatim}\\x{\n}\\end{verbatim}d");
+        assertSameTokens("\\cite[p.~1]{a,b}\\ref{x}\\label{y}\\input{z}\\newcommand{\\x}[2]{#1}");
+        assertSameTokens("% TODO fix\n%comment\n\\iffalse skipped \\fi text");
+    }
+
+    @Test
+    public void testEndOfInput() throws IOException {
+        assertSameTokens("");
+        assertSameTokens("\\section{unclosed");
+        assertSameTokens("\\begin{verbatim}\nunclosed");
+        assertSameTokens("word\\");
+    }
+
+    @Test
+    public void testLazyText() throws IOException, LexerException {
+        CharSequenceLexer lexer = new CharSequenceLexer("word \\cmd");
+        lexer.setLazyText(true);
+        Token word = lexer.next();
+        assertNull(word.getText());
+        StringBuffer buffer = new StringBuffer("[");
+        lexer.appendText(word, buffer);
+        assertEquals("[word", buffer.toString());
+        assertEquals(4, lexer.getTextLength(word));
+        assertNull(word.getText());
+
+        Token whitespace = lexer.next();
+        try {
+            lexer.getText(word);
+            fail("The text of a previous token was created");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        assertEquals(" ", lexer.getText(whitespace));
+        assertEquals(" ", whitespace.getText());
+        assertEquals("\\cmd", lexer.getText(lexer.next()));
+    }
+}